@@ -0,0 +1,77 @@
+#!/bin/sh
+# AppCDS archive of the function app, run inside the function image.
+#
+#   app-cds.sh train [app dir] [archive]      training run, writes the archive
+#   app-cds.sh benchmark [app dir] [archive]  time-to-first-invocation with and without the archive
+#
+# Both run the function app from the CdsTraining agent of the Functions worker JVM, with the worker
+# options and class path, and the invocations of the training jar against a local stub of FdR1, the
+# storage and Application Insights. The archive is a static one, dumped from the classes the
+# training loaded with the worker class path alone: the function app classes are archived for the
+# class loader of the worker.
+set -eu
+
+COMMAND=${1:-train}
+APP_DIR=${2:-/home/site/wwwroot}
+ARCHIVE=${3:-/home/site/app-cds.jsa}
+RUNS=${RUNS:-5}
+WORKER_JAR=${WORKER_JAR:-/azure-functions-host/workers/java/azure-functions-java-worker.jar}
+# same options as the worker.config.json of the image, a different verification mode disables the archive
+WORKER_OPTS=${WORKER_OPTS:--XX:+TieredCompilation -XX:TieredStopAtLevel=1 -Djava.net.preferIPv4Stack=true}
+
+AGENT_JAR=${AGENT_JAR:-/home/site/cds-agent.jar}
+export CDS_TRAINING_JAR=${CDS_TRAINING_JAR:-/home/site/cds-training.jar}
+WORK_DIR=${WORK_DIR:-/tmp/app-cds}
+STUB=http://127.0.0.1:${CDS_STUB_PORT:-18080}
+# well-known key of the storage emulator, nothing leaves the container
+ACCOUNT="AccountName=devstoreaccount1;AccountKey=Eby8vdM02xNOcqFlqUwJPLlmEtlCDXJ1OUzFT50uSRZ6IFsuFq2UVErCz4I6tq/K1SZFPTOtr/KBHBeksoGMGw=="
+
+export TABLE_STORAGE_CONN_STRING="DefaultEndpointsProtocol=http;$ACCOUNT;TableEndpoint=$STUB/devstoreaccount1;"
+export FDR_SA_CONNECTION_STRING="DefaultEndpointsProtocol=http;$ACCOUNT;BlobEndpoint=$STUB/devstoreaccount1;"
+export ERROR_TABLE_NAME=cdstrainingerrors
+export BLOB_STORAGE_FDR3_CONTAINER=cds-training
+export FDR_FASE1_BASE_URL=$STUB
+export APPLICATIONINSIGHTS_CONNECTION_STRING="InstrumentationKey=00000000-0000-0000-0000-000000000000;IngestionEndpoint=$STUB/"
+
+# $1: extra JVM options; prints the time-to-first-invocation in ms
+first_invocation() {
+  # shellcheck disable=SC2086
+  java $WORKER_OPTS $1 -javaagent:"$AGENT_JAR=$APP_DIR" -jar "$WORKER_JAR" > "$WORK_DIR/run.log" 2>&1 || {
+    cat "$WORK_DIR/run.log" >&2
+    exit 1
+  }
+  sed -n 's/^time-to-first-invocation-ms=//p' "$WORK_DIR/run.log"
+}
+
+# $1: extra JVM options; prints the median of RUNS runs
+median() {
+  i=0
+  while [ "$i" -lt "$RUNS" ]; do
+    first_invocation "$1"
+    i=$((i + 1))
+  done | sort -n | sed -n "$(((RUNS + 1) / 2))p"
+}
+
+mkdir -p "$WORK_DIR"
+case "$COMMAND" in
+  train)
+    first_invocation "-Xlog:class+load=debug:file=$WORK_DIR/class-load.log" > /dev/null
+    java -cp "$AGENT_JAR" it.gov.pagopa.fdr.conversion.CdsTraining "$WORK_DIR/class-load.log" "$WORK_DIR/app.classlist"
+    java -Xshare:dump -XX:SharedClassListFile="$WORK_DIR/app.classlist" -XX:SharedArchiveFile="$ARCHIVE" \
+      -cp "$WORKER_JAR" > "$WORK_DIR/dump.log" 2>&1 || {
+      cat "$WORK_DIR/dump.log" >&2
+      exit 1
+    }
+    rm -rf "$WORK_DIR"
+    echo "AppCDS archive written to $ARCHIVE ($(du -h "$ARCHIVE" | cut -f1))"
+    ;;
+  benchmark)
+    without=$(median "-Xshare:auto")
+    with=$(median "-XX:SharedArchiveFile=$ARCHIVE -Xshare:auto")
+    echo "time-to-first-invocation median of $RUNS runs: without archive ${without} ms, with archive ${with} ms"
+    ;;
+  *)
+    echo "usage: $0 train|benchmark [app dir] [archive]" >&2
+    exit 2
+    ;;
+esac
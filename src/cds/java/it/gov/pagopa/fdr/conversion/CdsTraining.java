@@ -0,0 +1,172 @@
+package it.gov.pagopa.fdr.conversion;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Training run of the class-data sharing (AppCDS) archive of the function image.
+ *
+ * <p>As a Java agent of the Functions worker JVM, started with -Xlog:class+load=debug, it loads the
+ * function app as the worker does, by a class loader of its own over the app jars, converts one
+ * flow and dead-letters an invalid one against a local stub of FdR1, the storage and Application
+ * Insights, then exits. The JVM uptime at that point is printed as time-to-first-invocation-ms, for
+ * the startup benchmark.
+ *
+ * <p>As a main, it turns the class loading log of the training into the class list of a static
+ * archive. The function app classes are listed with their jar and super types, as classes of a
+ * custom loader, so the archive is dumped with the worker class path alone and the worker JVM
+ * takes them from the archive when its own loader defines them. The launcher references JDK
+ * classes only: it is packaged alone as the agent jar, and the training invocations of {@link
+ * CdsTrainingRun} in a jar of their own, added to the function app class loader. Both are built
+ * from src/cds by the cds profile for the cds-true image stage, outside the function app jar.
+ */
+public class CdsTraining {
+
+  private static final Pattern LOADED =
+      Pattern.compile("\\[class,load\\] (\\S+) source: (.+)$");
+  private static final Pattern KLASS =
+      Pattern.compile(
+          "klass: (0x\\p{XDigit}+) super: (0x\\p{XDigit}+)(?: interfaces:((?: 0x\\p{XDigit}+)+))? loader: \\[(.*)\\]");
+  private static final String NO_SUPER = "0x0000000000000000";
+  private static final Path TRAINING_JAR =
+      Path.of(System.getenv().getOrDefault("CDS_TRAINING_JAR", "/home/site/cds-training.jar"));
+  private static final List<String> BUILTIN_LOADERS =
+      List.of("'bootstrap'", "ClassLoaders$PlatformClassLoader", "ClassLoaders$AppClassLoader");
+
+  private CdsTraining() {}
+
+  /**
+   * Write the class list of the archive
+   *
+   * @param args class loading log of the training run, class list to write
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("usage: CdsTraining <class load log> <class list>");
+      System.exit(2);
+    }
+    List<String> classList = classList(Files.readAllLines(Path.of(args[0])));
+    Files.write(Path.of(args[1]), classList);
+    System.out.println(classList.size() + " classes listed in " + args[1]);
+  }
+
+  /**
+   * Agent entry point, never returns
+   *
+   * @param appDir function app directory
+   */
+  public static void premain(String appDir) throws Exception {
+    Path dir = Path.of(appDir == null || appDir.isBlank() ? "/home/site/wwwroot" : appDir);
+    int status = 0;
+    ClassLoader context = Thread.currentThread().getContextClassLoader();
+    // the system class loader holds the worker, which provides the functions core library
+    try (URLClassLoader app =
+        new URLClassLoader("function-app", appJars(dir), ClassLoader.getSystemClassLoader())) {
+      Thread.currentThread().setContextClassLoader(app);
+      // by name: the training run is in the function app class loader only
+      app.loadClass("it.gov.pagopa.fdr.conversion.CdsTrainingRun").getMethod("run").invoke(null);
+    } catch (Exception e) {
+      e.printStackTrace();
+      status = 1;
+    } finally {
+      Thread.currentThread().setContextClassLoader(context);
+    }
+    System.out.println(
+        "time-to-first-invocation-ms=" + ManagementFactory.getRuntimeMXBean().getUptime());
+    // the worker main is not meant to run
+    System.exit(status);
+  }
+
+  /**
+   * @param classLoadLog output of -Xlog:class+load=debug
+   * @return the class list: built-in loader classes by name, custom loader classes from a jar with
+   *     their source and super types. Hidden and generated classes are left out, as well as the
+   *     classes whose super types are not listed
+   */
+  static List<String> classList(List<String> classLoadLog) {
+    Map<String, Integer> ids = new HashMap<>();
+    Set<String> listed = new HashSet<>();
+    List<String> classList = new ArrayList<>();
+    for (int i = 0; i + 1 < classLoadLog.size(); i++) {
+      Matcher loaded = LOADED.matcher(classLoadLog.get(i));
+      Matcher klass = KLASS.matcher(classLoadLog.get(i + 1));
+      if (!loaded.find() || !klass.find()) {
+        continue;
+      }
+      String name = loaded.group(1).replace('.', '/');
+      String source = loaded.group(2);
+      if (name.contains("/0x") || name.contains("$$Lambda") || listed.contains(name)) {
+        continue;
+      }
+      String entry;
+      if (BUILTIN_LOADERS.stream().anyMatch(klass.group(4)::contains)) {
+        entry = name;
+      } else if (source.startsWith("file:") && source.endsWith(".jar")) {
+        entry = customLoaderEntry(name, source, klass, ids);
+      } else {
+        entry = null;
+      }
+      if (entry != null) {
+        int id = listed.size() + 1;
+        listed.add(name);
+        ids.put(klass.group(1), id);
+        // custom loader entries go on with their super types and source after the id
+        classList.add(name + " id: " + id + entry.substring(name.length()));
+      }
+    }
+    return classList;
+  }
+
+  private static String customLoaderEntry(
+      String name, String source, Matcher klass, Map<String, Integer> ids) {
+    StringBuilder entry = new StringBuilder(name);
+    Integer superId = ids.get(klass.group(2));
+    if (superId == null || NO_SUPER.equals(klass.group(2))) {
+      return null;
+    }
+    entry.append(" super: ").append(superId);
+    if (klass.group(3) != null) {
+      entry.append(" interfaces:");
+      for (String address : klass.group(3).trim().split(" ")) {
+        Integer interfaceId = ids.get(address);
+        if (interfaceId == null) {
+          return null;
+        }
+        entry.append(' ').append(interfaceId);
+      }
+    }
+    return entry.append(" source: ").append(Path.of(URI.create(source))).toString();
+  }
+
+  private static URL[] appJars(Path dir) throws IOException {
+    if (!Files.isRegularFile(TRAINING_JAR)) {
+      throw new IOException("Missing training jar " + TRAINING_JAR);
+    }
+    List<URL> jars = new ArrayList<>(List.of(TRAINING_JAR.toUri().toURL()));
+    for (Path jarDir : List.of(dir, dir.resolve("lib"))) {
+      if (!Files.isDirectory(jarDir)) {
+        continue;
+      }
+      try (Stream<Path> files = Files.list(jarDir)) {
+        for (Path jar : files.filter(f -> f.toString().endsWith(".jar")).sorted().toList()) {
+          jars.add(jar.toUri().toURL());
+        }
+      }
+    }
+    return jars.toArray(URL[]::new);
+  }
+}
@@ -0,0 +1,119 @@
+package it.gov.pagopa.fdr.conversion;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.RetryContext;
+import com.microsoft.azure.functions.RpcException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import it.gov.pagopa.fdr.conversion.client.ClientRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The training invocations of {@link CdsTraining}, loaded by the function app class loader only:
+ * the launcher must not reference the function app classes, which are not on the class path
+ */
+public class CdsTrainingRun {
+
+  private static final int STUB_PORT =
+      Integer.parseInt(System.getenv().getOrDefault("CDS_STUB_PORT", "18080"));
+  private static final Map<String, String> ELABORATE = Map.of("elaborate", "true");
+
+  private CdsTrainingRun() {}
+
+  /** Convert a flow and dead-letter an invalid one, run in the function app class loader */
+  public static void run() throws IOException {
+    HttpServer stub = HttpServer.create(new InetSocketAddress("127.0.0.1", STUB_PORT), 0);
+    stub.createContext("/", CdsTrainingRun::answer);
+    stub.start();
+    try {
+      FdrWarmupTrigger.warmUp();
+      FdrConversionBlobTrigger trigger = new FdrConversionBlobTrigger();
+      trigger.process(sampleFlow(), "cds-training-flow", ELABORATE, context());
+      // a permanent failure is dead-lettered at once
+      trigger.process(
+          gzip("{}".getBytes(StandardCharsets.UTF_8)),
+          "cds-training-invalid-flow",
+          ELABORATE,
+          context());
+      ClientRegistry.telemetryClient().close();
+    } finally {
+      stub.stop(0);
+    }
+  }
+
+  // not found on reads, so the flow is never found already converted, success on writes
+  private static void answer(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+      switch (exchange.getRequestMethod()) {
+        case "GET" -> exchange.sendResponseHeaders(404, -1);
+        case "HEAD" -> exchange.sendResponseHeaders(200, -1);
+        default -> exchange.sendResponseHeaders(204, -1);
+      }
+    }
+  }
+
+  private static byte[] sampleFlow() throws IOException {
+    try (InputStream sample = CdsTrainingRun.class.getResourceAsStream(FdrWarmupTrigger.SAMPLE_FLOW)) {
+      if (sample == null) {
+        throw new IOException("Missing sample flow " + FdrWarmupTrigger.SAMPLE_FLOW);
+      }
+      return gzip(sample.readAllBytes());
+    }
+  }
+
+  private static byte[] gzip(byte[] content) throws IOException {
+    ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+    try (OutputStream out = new GZIPOutputStream(gzipped)) {
+      out.write(content);
+    }
+    return gzipped.toByteArray();
+  }
+
+  private static ExecutionContext context() {
+    return new ExecutionContext() {
+      @Override
+      public Logger getLogger() {
+        return Logger.getLogger("cds-training");
+      }
+
+      @Override
+      public String getInvocationId() {
+        return "cds-training";
+      }
+
+      @Override
+      public String getFunctionName() {
+        return "BlobEventProcessor";
+      }
+
+      @Override
+      public RetryContext getRetryContext() {
+        return new RetryContext() {
+          @Override
+          public int getRetrycount() {
+            return 0;
+          }
+
+          @Override
+          public int getMaxretrycount() {
+            return 4;
+          }
+
+          @Override
+          public RpcException getException() {
+            return null;
+          }
+        };
+      }
+    };
+  }
+}
@@ -0,0 +1,87 @@
+package it.gov.pagopa.fdr.conversion;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.fdr.conversion.client.AppInsightTelemetryClient;
+import it.gov.pagopa.fdr.conversion.client.FdR1Client;
+import it.gov.pagopa.fdr.conversion.converter.Fdr3Payloads;
+import it.gov.pagopa.fdr.conversion.model.BlobData;
+import it.gov.pagopa.fdr.conversion.util.ConversionLedger;
+import it.gov.pagopa.fdr.conversion.util.Utils;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link FdrConversionBlobTrigger#process(BlobData, ExecutionContext)} against a local FdR1 stub
+ * draining the payload, so only the function overhead and the payload streaming are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FdrConversionBenchmark {
+
+  private static final Map<String, String> METADATA =
+      Map.of("elaborate", "true", "sessionId", "benchmark-session");
+
+  @Param({"16", "1024", "16384"})
+  int sizeKb;
+
+  private byte[] payload;
+  private FdrConversionBlobTrigger sut;
+  private ExecutionContext context;
+
+  @Setup
+  public void setup() {
+    payload = Fdr3Payloads.gzippedFlow(sizeKb);
+    FdR1Client stub =
+        (subscriptionKey, content) -> {
+          try {
+            content.transferTo(OutputStream.nullOutputStream());
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        };
+    // flows without ETag never reach the ledger
+    FdrConversionBlobTrigger.setClientsForTest(
+        stub,
+        new AppInsightTelemetryClient(),
+        new ConversionLedger(
+            () -> {
+              throw new IllegalStateException("Ledger not available in benchmarks");
+            },
+            0));
+    sut = new FdrConversionBlobTrigger();
+    context = Utils.createContext(0);
+  }
+
+  @Benchmark
+  public boolean process() throws IOException {
+    BlobData blobData =
+        BlobData.builder()
+            .fileName("benchmark.json.zip")
+            .metadata(METADATA)
+            .contentLength(payload.length)
+            .content(new ByteArrayInputStream(payload))
+            .build();
+    try (blobData) {
+      return sut.process(blobData, context);
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package it.gov.pagopa.fdr.conversion.converter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Inflating the gzipped FdR3 payloads, alone and through the local conversion to FdR1 XML */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Fdr3GzipBenchmark {
+
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  @Param({"16", "1024", "16384"})
+  int sizeKb;
+
+  private byte[] payload;
+  private final Fdr3ToFdr1XmlConverter converter = new Fdr3ToFdr1XmlConverter();
+
+  @Setup
+  public void setup() {
+    payload = Fdr3Payloads.gzippedFlow(sizeKb);
+  }
+
+  @Benchmark
+  public long inflate() throws IOException {
+    byte[] buffer = new byte[CHUNK_SIZE];
+    long total = 0;
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(payload), CHUNK_SIZE)) {
+      for (int n; (n = in.read(buffer)) > 0; ) {
+        total += n;
+      }
+    }
+    return total;
+  }
+
+  @Benchmark
+  public void convert(Blackhole blackhole) throws IOException {
+    OutputStream sink =
+        new OutputStream() {
+          @Override
+          public void write(int b) {
+            blackhole.consume(b);
+          }
+
+          @Override
+          public void write(byte[] b, int off, int len) {
+            blackhole.consume(len);
+          }
+        };
+    converter.convert(new GZIPInputStream(new ByteArrayInputStream(payload), CHUNK_SIZE), sink);
+  }
+}
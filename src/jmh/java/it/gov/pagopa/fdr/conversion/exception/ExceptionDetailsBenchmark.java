@@ -0,0 +1,24 @@
+package it.gov.pagopa.fdr.conversion.exception;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Serialisation of the alert details sent with every last-retry failure */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExceptionDetailsBenchmark {
+
+  @Benchmark
+  public String getExceptionDetails() {
+    return AlertAppException.getExceptionDetails("benchmark.json.zip", "benchmark-session", 4);
+  }
+}
@@ -0,0 +1,74 @@
+package it.gov.pagopa.fdr.conversion.util;
+
+import com.azure.data.tables.models.TableEntity;
+import com.microsoft.azure.functions.ExecutionContext;
+import feign.FeignException;
+import feign.Request;
+import it.gov.pagopa.fdr.conversion.model.ErrorEnum;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Construction of the dead-letter entity written by {@link StorageAccountUtil#sendToErrorTable},
+ * stack trace rendering included, without the Table write.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeadLetterEntityBenchmark {
+
+  private static final Map<String, String> METADATA =
+      Map.of(
+          "elaborate", "true",
+          "sessionId", "benchmark-session",
+          "insertedTimestamp", "2025-03-14T10:15:30");
+
+  private ExecutionContext context;
+  private Exception error;
+
+  @Setup
+  public void setup() {
+    context = Utils.createContext(4);
+    Request request =
+        Request.create(
+            Request.HttpMethod.POST,
+            "http://localhost:8080/convert/fdr3",
+            Map.of(),
+            Request.Body.empty(),
+            null);
+    error =
+        FeignException.errorStatus(
+            "FdR1Client#postConversion(String,InputStream)",
+            feign.Response.builder()
+                .status(500)
+                .headers(Map.of())
+                .body("{\"error\":\"internal\"}".getBytes())
+                .request(request)
+                .build());
+  }
+
+  @Benchmark
+  public TableEntity toErrorEntity() {
+    return StorageAccountUtil.toErrorEntity(
+        context.getInvocationId(),
+        "benchmark.json.zip",
+        METADATA,
+        error.getMessage(),
+        ErrorEnum.HTTP_ERROR,
+        error.getMessage(),
+        error);
+  }
+}
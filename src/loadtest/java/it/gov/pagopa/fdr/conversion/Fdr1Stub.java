@@ -0,0 +1,76 @@
+package it.gov.pagopa.fdr.conversion;
+
+import static org.mockserver.model.HttpRequest.request;
+import static org.mockserver.model.HttpResponse.response;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.Delay;
+
+/**
+ * MockServer standing in for FdR1: every conversion is answered after a random latency, a share of
+ * them with 503 or 429.
+ */
+public class Fdr1Stub implements AutoCloseable {
+
+  private final ClientAndServer server;
+  private final LongAdder ok = new LongAdder();
+  private final LongAdder serverErrors = new LongAdder();
+  private final LongAdder throttled = new LongAdder();
+
+  /**
+   * @param port listening port
+   * @param latencyMs base latency of every answer
+   * @param jitterMs random latency added to the base one
+   * @param errorRate share of 503 answers
+   * @param throttleRate share of 429 answers
+   */
+  public Fdr1Stub(int port, long latencyMs, long jitterMs, double errorRate, double throttleRate) {
+    server = ClientAndServer.startClientAndServer(port);
+    server
+        .when(request().withMethod("POST").withPath("/convert/fdr3"))
+        .respond(
+            request -> {
+              ThreadLocalRandom random = ThreadLocalRandom.current();
+              double draw = random.nextDouble();
+              int status;
+              if (draw < errorRate) {
+                status = 503;
+                serverErrors.increment();
+              } else if (draw < errorRate + throttleRate) {
+                status = 429;
+                throttled.increment();
+              } else {
+                status = 200;
+                ok.increment();
+              }
+              long delay = latencyMs + (jitterMs > 0 ? random.nextLong(jitterMs + 1) : 0);
+              return response()
+                  .withStatusCode(status)
+                  .withDelay(new Delay(TimeUnit.MILLISECONDS, delay));
+            });
+  }
+
+  public String getBaseUrl() {
+    return "http://localhost:" + server.getPort();
+  }
+
+  public long getOk() {
+    return ok.sum();
+  }
+
+  public long getServerErrors() {
+    return serverErrors.sum();
+  }
+
+  public long getThrottled() {
+    return throttled.sum();
+  }
+
+  @Override
+  public void close() {
+    server.stop();
+  }
+}
@@ -0,0 +1,248 @@
+package it.gov.pagopa.fdr.conversion;
+
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.options.BlobInputStreamOptions;
+import com.azure.storage.blob.specialized.BlobInputStream;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import it.gov.pagopa.fdr.conversion.client.AppInsightTelemetryClient;
+import it.gov.pagopa.fdr.conversion.client.FdR1ClientConfig;
+import it.gov.pagopa.fdr.conversion.client.FdR1HttpClient;
+import it.gov.pagopa.fdr.conversion.client.FdR1RateLimiter;
+import it.gov.pagopa.fdr.conversion.client.ResilientFdR1Client;
+import it.gov.pagopa.fdr.conversion.converter.Fdr3Payloads;
+import it.gov.pagopa.fdr.conversion.util.InMemoryTables;
+import it.gov.pagopa.fdr.conversion.util.Utils;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test of the blob trigger. Blob events are generated at a fixed rate and handled by a pool
+ * as large as {@code blobs.maxDegreeOfParallelism}, each event going through the real function
+ * classes: FdR1 client with breaker, limiter and rate budget, ledger and batched dead-letter
+ * writer. FdR1 is a MockServer injecting latency, 503 and 429, blobs and tables are in memory. The
+ * host retry policy is replayed with scaled-down delays.
+ *
+ * <p>Settings are system properties, see {@link Settings}. The report is printed and written to
+ * {@code target/loadtest-result.json}.
+ */
+public final class LoadTest {
+
+  private static final int MAX_RETRY_COUNT = 4;
+
+  private LoadTest() {}
+
+  /** Load test settings, read from the {@code loadtest.*} system properties */
+  record Settings(
+      double rate,
+      int durationSeconds,
+      int parallelism,
+      int blobSizeKb,
+      int fdr1Port,
+      long fdr1LatencyMs,
+      long fdr1JitterMs,
+      double fdr1ErrorRate,
+      double fdr1ThrottleRate,
+      long retryDelayMs) {
+
+    static Settings fromSystemProperties() {
+      return new Settings(
+          Double.parseDouble(System.getProperty("loadtest.rate", "20")),
+          Integer.parseInt(System.getProperty("loadtest.durationSeconds", "60")),
+          Integer.parseInt(System.getProperty("loadtest.parallelism", "16")),
+          Integer.parseInt(System.getProperty("loadtest.blobSizeKb", "512")),
+          Integer.parseInt(System.getProperty("loadtest.fdr1Port", "18080")),
+          Long.parseLong(System.getProperty("loadtest.fdr1LatencyMs", "200")),
+          Long.parseLong(System.getProperty("loadtest.fdr1JitterMs", "300")),
+          Double.parseDouble(System.getProperty("loadtest.fdr1ErrorRate", "0.05")),
+          Double.parseDouble(System.getProperty("loadtest.fdr1ThrottleRate", "0.02")),
+          Long.parseLong(System.getProperty("loadtest.retryDelayMs", "100")));
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    Settings settings = Settings.fromSystemProperties();
+    byte[] payload = Fdr3Payloads.gzippedFlow(settings.blobSizeKb());
+
+    try (Fdr1Stub fdr1 =
+        new Fdr1Stub(
+            settings.fdr1Port(),
+            settings.fdr1LatencyMs(),
+            settings.fdr1JitterMs(),
+            settings.fdr1ErrorRate(),
+            settings.fdr1ThrottleRate())) {
+      InMemoryTables tables = InMemoryTables.install();
+      AppInsightTelemetryClient telemetryClient = new AppInsightTelemetryClient();
+      FdR1ClientConfig config =
+          FdR1ClientConfig.fromEnv().toBuilder().baseUrl(fdr1.getBaseUrl()).build();
+      FdrConversionBlobTrigger.setClientsForTest(
+          new FdR1RateLimiter(config)
+              .limit(
+                  new ResilientFdR1Client(new FdR1HttpClient(config), config, telemetryClient),
+                  FdR1RateLimiter.Priority.LIVE),
+          telemetryClient,
+          tables.conversionLedger());
+      FdrConversionBlobTrigger trigger = new FdrConversionBlobTrigger();
+
+      Map<String, Object> report = run(settings, trigger, payload, tables);
+      report.put("fdr1Ok", fdr1.getOk());
+      report.put("fdr1ServerErrors", fdr1.getServerErrors());
+      report.put("fdr1Throttled", fdr1.getThrottled());
+
+      ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+      File result = new File("target/loadtest-result.json");
+      mapper.writeValue(result, report);
+      System.out.println(mapper.writeValueAsString(report));
+      System.out.println("Report written to " + result.getAbsolutePath());
+    }
+    System.exit(0);
+  }
+
+  private static Map<String, Object> run(
+      Settings settings, FdrConversionBlobTrigger trigger, byte[] payload, InMemoryTables tables)
+      throws InterruptedException {
+    ExecutorService workers = Executors.newFixedThreadPool(settings.parallelism());
+    ScheduledExecutorService producer = Executors.newSingleThreadScheduledExecutor();
+    ScheduledExecutorService heapSampler = Executors.newSingleThreadScheduledExecutor();
+
+    AtomicLong heapHighWater = new AtomicLong();
+    heapSampler.scheduleAtFixedRate(
+        () ->
+            heapHighWater.accumulateAndGet(
+                ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed(), Math::max),
+        0,
+        50,
+        TimeUnit.MILLISECONDS);
+
+    AtomicInteger events = new AtomicInteger();
+    LongAdder converted = new LongAdder();
+    LongAdder failed = new LongAdder();
+    LongAdder attempts = new LongAdder();
+    ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+
+    long start = System.nanoTime();
+    producer.scheduleAtFixedRate(
+        () -> {
+          int index = events.incrementAndGet();
+          long arrival = System.nanoTime();
+          workers.execute(
+              () -> {
+                boolean ok = handle(trigger, index, payload, settings, attempts);
+                if (ok) {
+                  converted.increment();
+                  latencies.add(System.nanoTime() - arrival);
+                } else {
+                  failed.increment();
+                }
+              });
+        },
+        0,
+        (long) (TimeUnit.SECONDS.toNanos(1) / settings.rate()),
+        TimeUnit.NANOSECONDS);
+
+    TimeUnit.SECONDS.sleep(settings.durationSeconds());
+    producer.shutdown();
+    producer.awaitTermination(1, TimeUnit.MINUTES);
+    workers.shutdown();
+    workers.awaitTermination(1, TimeUnit.HOURS);
+    double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+    heapSampler.shutdown();
+
+    List<Long> sorted = new ArrayList<>(latencies);
+    sorted.sort(null);
+    Map<String, Object> report = new LinkedHashMap<>();
+    report.put("settings", settings);
+    report.put("events", events.get());
+    report.put("converted", converted.sum());
+    report.put("deadLettered", failed.sum());
+    report.put("deadLetterRows", tables.getDeadLetters());
+    report.put("deadLetterRate", events.get() == 0 ? 0 : failed.sum() / (double) events.get());
+    report.put("attempts", attempts.sum());
+    report.put("throughputPerSecond", converted.sum() / elapsedSeconds);
+    report.put("latencyP50Ms", percentileMs(sorted, 50));
+    report.put("latencyP95Ms", percentileMs(sorted, 95));
+    report.put("latencyP99Ms", percentileMs(sorted, 99));
+    report.put("heapHighWaterMb", heapHighWater.get() / (1024 * 1024));
+    report.put("heapMaxMb", Runtime.getRuntime().maxMemory() / (1024 * 1024));
+    return report;
+  }
+
+  /** One blob event, retried as the host does with the exponential backoff of the function */
+  private static boolean handle(
+      FdrConversionBlobTrigger trigger,
+      int index,
+      byte[] payload,
+      Settings settings,
+      LongAdder attempts) {
+    BlobClient blobClient = blob(index, payload);
+    String blobName = "loadtest-" + index + ".json.zip";
+    for (int retry = 0; retry <= MAX_RETRY_COUNT; retry++) {
+      attempts.increment();
+      try {
+        return trigger.process(blobClient, blobName, Utils.createContext(retry));
+      } catch (Exception e) {
+        if (retry < MAX_RETRY_COUNT) {
+          sleep(settings.retryDelayMs() << retry);
+        }
+      }
+    }
+    // the last attempt has written the dead letter
+    return false;
+  }
+
+  private static BlobClient blob(int index, byte[] payload) {
+    BlobProperties properties = mock(BlobProperties.class);
+    when(properties.getETag()).thenReturn("\"0x" + Integer.toHexString(index) + "\"");
+    when(properties.getBlobSize()).thenReturn((long) payload.length);
+    when(properties.getMetadata())
+        .thenReturn(
+            Map.of(
+                "elaborate", "true",
+                "sessionId", UUID.randomUUID().toString(),
+                "insertedTimestamp", LocalDateTime.now().toString()));
+    BlobClient blobClient = mock(BlobClient.class);
+    when(blobClient.getProperties()).thenReturn(properties);
+    when(blobClient.openInputStream(any(BlobInputStreamOptions.class)))
+        .thenAnswer(
+            invocation ->
+                mock(BlobInputStream.class, delegatesTo(new ByteArrayInputStream(payload))));
+    return blobClient;
+  }
+
+  private static double percentileMs(List<Long> sorted, int percentile) {
+    if (sorted.isEmpty()) {
+      return 0;
+    }
+    int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+    return sorted.get(Math.max(0, index)) / 1e6;
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
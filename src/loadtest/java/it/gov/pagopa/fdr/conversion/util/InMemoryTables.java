@@ -0,0 +1,85 @@
+package it.gov.pagopa.fdr.conversion.util;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.azure.core.http.HttpResponse;
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.TableServiceClient;
+import com.azure.data.tables.models.TableEntity;
+import com.azure.data.tables.models.TableServiceException;
+import com.azure.data.tables.models.TableTransactionAction;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory stand-in of the dead-letter and ledger tables. The dead-letter table is installed in
+ * {@link StorageAccountUtil}, so the function writes its dead letters through the real batched
+ * writer.
+ */
+public class InMemoryTables {
+
+  private final Map<String, TableEntity> deadLetters = new ConcurrentHashMap<>();
+  private final Map<String, TableEntity> ledger = new ConcurrentHashMap<>();
+  private final HttpResponse notFound = mock(HttpResponse.class);
+
+  private InMemoryTables() {
+    when(notFound.getStatusCode()).thenReturn(404);
+  }
+
+  public static InMemoryTables install() {
+    InMemoryTables tables = new InMemoryTables();
+    TableServiceClient tableServiceClient = mock(TableServiceClient.class);
+    TableClient errorTable = tables.table(tables.deadLetters);
+    when(tableServiceClient.getTableClient(any())).thenReturn(errorTable);
+    StorageAccountUtil.setTableServiceClientForTest(tableServiceClient);
+    return tables;
+  }
+
+  public ConversionLedger conversionLedger() {
+    TableClient ledgerTable = table(ledger);
+    return new ConversionLedger(() -> ledgerTable, 10_000);
+  }
+
+  public int getDeadLetters() {
+    return deadLetters.size();
+  }
+
+  @SuppressWarnings("unchecked")
+  private TableClient table(Map<String, TableEntity> rows) {
+    TableClient table = mock(TableClient.class);
+    when(table.submitTransaction(anyList()))
+        .thenAnswer(
+            invocation -> {
+              for (TableTransactionAction action :
+                  (List<TableTransactionAction>) invocation.getArgument(0)) {
+                rows.put(key(action.getEntity()), action.getEntity());
+              }
+              return null;
+            });
+    when(table.upsertEntityWithResponse(any(), any(), any(), any()))
+        .thenAnswer(
+            invocation -> {
+              TableEntity entity = invocation.getArgument(0);
+              rows.put(key(entity), entity);
+              return null;
+            });
+    when(table.getEntityWithResponse(anyString(), anyString(), any(), any(), any()))
+        .thenAnswer(
+            invocation -> {
+              if (!rows.containsKey(invocation.getArgument(0) + "|" + invocation.getArgument(1))) {
+                throw new TableServiceException("Not found", notFound);
+              }
+              return null;
+            });
+    return table;
+  }
+
+  private static String key(TableEntity entity) {
+    return entity.getPartitionKey() + "|" + entity.getRowKey();
+  }
+}
@@ -0,0 +1,167 @@
+package it.gov.pagopa.fdr.conversion;
+
+import com.azure.storage.blob.BlobClient;
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.annotation.BindingName;
+import com.microsoft.azure.functions.annotation.Cardinality;
+import com.microsoft.azure.functions.annotation.FunctionName;
+import com.microsoft.azure.functions.annotation.ServiceBusQueueTrigger;
+import it.gov.pagopa.fdr.conversion.batch.BlobBatchConsumer;
+import it.gov.pagopa.fdr.conversion.batch.BlobNotificationSource;
+import it.gov.pagopa.fdr.conversion.batch.EventGridBatchNotificationSource;
+import it.gov.pagopa.fdr.conversion.client.ClientRegistry;
+import it.gov.pagopa.fdr.conversion.exception.FlowDeadLetteredException;
+import it.gov.pagopa.fdr.conversion.model.BlobNotification;
+import it.gov.pagopa.fdr.conversion.model.BlobNotificationResult;
+import java.util.List;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Batch alternative to the blob trigger: the BlobCreated events of the FdR3 container are routed
+ * by Event Grid to a queue and converted a batch at a time, without scanning the container. A
+ * failure is dead-lettered at once and left to the retry functions, since the messages of a batch
+ * are completed together. If a failed flow could not be dead-lettered, e.g. its blob properties or
+ * the dead-letter write failed, the invocation fails: the host abandons the batch and the queue
+ * delivers it again, the flows already converted are then found in the conversion ledger.
+ */
+@Slf4j
+public class FdrBlobBatchTrigger {
+
+  private static final String FN_NAME = "BlobNotificationBatchProcessor";
+  private static final String FDR3_FLOW_BLOB_CONTAINER_NAME =
+      System.getenv("BLOB_STORAGE_FDR3_CONTAINER");
+
+  private static BlobBatchConsumer sharedConsumer;
+
+  private final FdrConversionBlobTrigger processor;
+  private final Function<String, BlobClient> blobs;
+  private final BlobBatchConsumer consumer;
+  private final String container;
+
+  public FdrBlobBatchTrigger() {
+    this(
+        new FdrConversionBlobTrigger(),
+        blobName -> ClientRegistry.blobContainerClient().getBlobClient(blobName),
+        getSharedConsumer(),
+        FDR3_FLOW_BLOB_CONTAINER_NAME);
+  }
+
+  FdrBlobBatchTrigger(
+      FdrConversionBlobTrigger processor,
+      Function<String, BlobClient> blobs,
+      BlobBatchConsumer consumer,
+      String container) {
+    this.processor = processor;
+    this.blobs = blobs;
+    this.consumer = consumer;
+    this.container = container;
+  }
+
+  private static synchronized BlobBatchConsumer getSharedConsumer() {
+    // the consumer owns the worker pool
+    if (sharedConsumer == null) {
+      sharedConsumer = BlobBatchConsumer.fromEnv();
+    }
+    return sharedConsumer;
+  }
+
+  /**
+   * Convert the FdR3 flows notified by a batch of queue messages
+   *
+   * @param messages Event Grid BlobCreated events of the FdR3 container
+   * @param deliveryCounts deliveries of each message so far, this one included
+   * @param context function execution context
+   * @throws IllegalStateException if a failed flow has not been dead-lettered, to have the batch
+   *     delivered again
+   */
+  @FunctionName(FN_NAME)
+  public void process(
+      @ServiceBusQueueTrigger(
+              name = "Fdr3BlobNotifications",
+              queueName = "%FDR3_BLOB_NOTIFICATIONS_QUEUE%",
+              connection = "FDR3_BLOB_NOTIFICATIONS_CONNECTION_STRING",
+              cardinality = Cardinality.MANY,
+              dataType = "string")
+          String[] messages,
+      @BindingName("DeliveryCountArray") int[] deliveryCounts,
+      final ExecutionContext context) {
+    List<BlobNotificationResult> results =
+        consume(
+            new EventGridBatchNotificationSource(messages, deliveryCounts, container),
+            context);
+    long lost =
+        results.stream()
+            .filter(
+                r ->
+                    r.getOutcome() == BlobNotificationResult.Outcome.FAILED
+                        && r.getNotification().isLastDelivery()
+                        && !r.isDeadLettered())
+            .count();
+    if (lost > 0) {
+      throw new IllegalStateException(
+          lost + " failed flows not dead-lettered, the batch is left to a new delivery");
+    }
+  }
+
+  /**
+   * Convert every notification of the source
+   *
+   * @return the result of each delivery
+   */
+  List<BlobNotificationResult> consume(BlobNotificationSource source, ExecutionContext context) {
+    List<BlobNotificationResult> results =
+        consumer.consume(source, notification -> convert(notification, context));
+    log.info(
+        "[{}][id={}] Batch consumed, deliveries = {}, converted = {}, skipped = {}, failed = {}",
+        FN_NAME,
+        context.getInvocationId(),
+        results.size(),
+        count(results, BlobNotificationResult.Outcome.CONVERTED),
+        count(results, BlobNotificationResult.Outcome.SKIPPED),
+        count(results, BlobNotificationResult.Outcome.FAILED));
+    return results;
+  }
+
+  private BlobNotificationResult convert(BlobNotification notification, ExecutionContext context) {
+    BlobNotificationResult.BlobNotificationResultBuilder result =
+        BlobNotificationResult.builder().notification(notification);
+    try {
+      boolean converted =
+          processor.process(
+              blobs.apply(notification.getBlobName()),
+              notification.getBlobName(),
+              notification.getDeliveryCount() - 1,
+              notification.isLastDelivery(),
+              context);
+      return result
+          .outcome(
+              converted
+                  ? BlobNotificationResult.Outcome.CONVERTED
+                  : BlobNotificationResult.Outcome.SKIPPED)
+          .build();
+    } catch (FlowDeadLetteredException e) {
+      return result
+          .outcome(BlobNotificationResult.Outcome.FAILED)
+          .error(e.getCause().getMessage())
+          .deadLettered(true)
+          .build();
+    } catch (Exception e) {
+      log.error(
+          "[Exception][{}][id={}] Conversion of notified blob failed, message-id = {}, blob-name = {}, delivery = {}, class = {}, message = {}",
+          FN_NAME,
+          context.getInvocationId(),
+          notification.getMessageId(),
+          notification.getBlobName(),
+          notification.getDeliveryCount(),
+          e.getClass(),
+          e.getMessage());
+      return result.outcome(BlobNotificationResult.Outcome.FAILED).error(e.getMessage()).build();
+    }
+  }
+
+  private static long count(
+      List<BlobNotificationResult> results, BlobNotificationResult.Outcome outcome) {
+    return results.stream().filter(r -> r.getOutcome() == outcome).count();
+  }
+}
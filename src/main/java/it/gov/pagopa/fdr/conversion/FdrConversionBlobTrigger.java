@@ -2,17 +2,34 @@ package it.gov.pagopa.fdr.conversion;
 
 import static it.gov.pagopa.fdr.conversion.exception.AlertAppException.getExceptionDetails;
 
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.models.BlobRequestConditions;
+import com.azure.storage.blob.options.BlobInputStreamOptions;
 import com.microsoft.azure.functions.ExecutionContext;
 import com.microsoft.azure.functions.annotation.*;
-import feign.Feign;
-import feign.FeignException;
 import it.gov.pagopa.fdr.conversion.client.AppInsightTelemetryClient;
+import it.gov.pagopa.fdr.conversion.client.ClientRegistry;
 import it.gov.pagopa.fdr.conversion.client.FdR1Client;
+import it.gov.pagopa.fdr.conversion.converter.ConversionMode;
+import it.gov.pagopa.fdr.conversion.converter.Fdr3FlowValidator;
+import it.gov.pagopa.fdr.conversion.converter.GzipPayload;
+import it.gov.pagopa.fdr.conversion.exception.FailureClassifier;
+import it.gov.pagopa.fdr.conversion.exception.FlowDeadLetteredException;
+import it.gov.pagopa.fdr.conversion.metrics.SkippedBlobCounter;
+import it.gov.pagopa.fdr.conversion.metrics.StageMetrics;
+import it.gov.pagopa.fdr.conversion.model.BlobData;
 import it.gov.pagopa.fdr.conversion.model.ErrorEnum;
+import it.gov.pagopa.fdr.conversion.util.ConversionLedger;
 import it.gov.pagopa.fdr.conversion.util.StorageAccountUtil;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -24,22 +41,19 @@ public class FdrConversionBlobTrigger {
   private static final String SESSION_ID_METADATA_KEY = "sessionId";
 
   private final String fdrFase1ApiKey = System.getenv("FDR_FASE1_API_KEY");
+  // the local conversion validates the flow while converting it
+  private static final boolean PRE_VALIDATION =
+      ConversionMode.fromEnv() == ConversionMode.REMOTE
+          && Boolean.parseBoolean(System.getenv().getOrDefault("FDR3_PRE_VALIDATION", "true"));
+  private static final Fdr3FlowValidator VALIDATOR = new Fdr3FlowValidator();
 
-  private static FdR1Client fdR1Client;
-  private static AppInsightTelemetryClient aiTelemetryClient;
+  private static final AtomicBoolean INSTANCE_STARTED = new AtomicBoolean();
 
-  static {
-    if (aiTelemetryClient == null) {
-      aiTelemetryClient = new AppInsightTelemetryClient();
-    }
-    if (fdR1Client == null) {
-      fdR1Client = Feign.builder().target(FdR1Client.class, System.getenv("FDR_FASE1_BASE_URL"));
-    }
-  }
-
-  static void setClientsForTest(FdR1Client testFdR1Client, AppInsightTelemetryClient testAiTelemetryClient) {
-    fdR1Client = testFdR1Client;
-    aiTelemetryClient = testAiTelemetryClient;
+  static void setClientsForTest(
+      FdR1Client testFdR1Client,
+      AppInsightTelemetryClient testAiTelemetryClient,
+      ConversionLedger testConversionLedger) {
+    ClientRegistry.setClientsForTest(testFdR1Client, testAiTelemetryClient, testConversionLedger);
   }
 
   public FdrConversionBlobTrigger() {}
@@ -49,14 +63,17 @@ public class FdrConversionBlobTrigger {
    * The job of this function is to convert, i.e., store and save, the streams of FdR3 to FdR1. This
    * is done by calling the API provided by FdR1
    *
-   * @param content FDR3 flow from blob storage
+   * @param blobClient FDR3 flow blob client, only properties and metadata are read before the
+   *     elaborate check, the content is then streamed from it and never loaded in memory
    * @param blobName FDR3 flow blob name
-   * @param blobMetadata FDR3 flow blob metadata
    * @param context
    *     <p>Retry mechanism focus ExponentialBackoffRetry will perform N = 5 backoff retries
    *     multiplied by N = 1 retries via poisonBlobThreshold mechanism specified in the host.json,
    *     in total 5 retries and 1 write attempts on dead-letter that will overwrite the same record
-   *     in the table. Specifically these will be the retry index values = 0, 1, 2, 3, 4
+   *     in the table. Specifically these will be the retry index values = 0, 1, 2, 3, 4. A
+   *     permanent failure, e.g. an invalid flow or a 4xx response from FdR1, is written to the
+   *     dead-letter at once and not retried. A failure whose dead-letter write failed is always
+   *     thrown, so the flow is retried rather than lost
    */
   @FunctionName("BlobEventProcessor")
   @ExponentialBackoffRetry(
@@ -66,17 +83,164 @@ public class FdrConversionBlobTrigger {
   public boolean process(
           @BlobTrigger(
                   name = "Fdr3BlobTrigger",
-                  dataType = "binary",
                   path = "%BLOB_STORAGE_FDR3_CONTAINER%/{blobName}",
                   connection = "FDR_SA_CONNECTION_STRING")
-          byte[] content,
+          BlobClient blobClient,
           @BindingName("blobName") String blobName,
-          @BindingName("Metadata") Map<String, String> blobMetadata,
           final ExecutionContext context) throws IOException {
+    int retryIndex = retryIndex(context);
+    try {
+      return process(blobClient, blobName, retryIndex, retryIndex >= MAX_RETRY_COUNT, context);
+    } catch (FlowDeadLetteredException e) {
+      return notRetried(e);
+    }
+  }
+
+  /**
+   * Convert an FdR3 flow of the blob trigger or notified to the batch consumer, charged to the live
+   * share of the rate budget
+   *
+   * @param blobClient FDR3 flow blob client
+   * @param blobName FDR3 flow blob name
+   * @param retryIndex attempts before this one, i.e. host retries or notification deliveries
+   * @param lastAttempt true if the flow is not attempted again: a failure is then written to the
+   *     dead-letter, to be retried by the retry functions
+   * @param context function execution context
+   * @throws FlowDeadLetteredException if the conversion failed, on the last attempt or
+   *     permanently, and the flow has been dead-lettered. Any other failure has not been
+   *     dead-lettered
+   */
+  public boolean process(
+          BlobClient blobClient,
+          String blobName,
+          int retryIndex,
+          boolean lastAttempt,
+          final ExecutionContext context) throws IOException {
+    // Single HEAD request: metadata and size, the body is fetched only if the blob is elaborated
+    BlobProperties properties = blobClient.getProperties();
+    BlobInputStreamOptions streamOptions =
+            new BlobInputStreamOptions()
+                    .setRequestConditions(new BlobRequestConditions().setIfMatch(properties.getETag()));
+    return convert(
+            ClientRegistry.liveFdR1Client(),
+            () -> blobClient.openInputStream(streamOptions),
+            properties.getBlobSize(),
+            blobName,
+            properties.getETag(),
+            properties.getMetadata(),
+            retryIndex,
+            lastAttempt,
+            context.getInvocationId());
+  }
+
+  /**
+   * Convert an FdR3 flow streamed from the blob storage, used by the retry functions. The call to
+   * FdR1 is charged to the retry share of the rate budget
+   *
+   * @param blobData FDR3 flow blob, its content is streamed to FdR1
+   * @param context function execution context
+   */
+  public boolean process(BlobData blobData, final ExecutionContext context) throws IOException {
+    int retryIndex = retryIndex(context);
+    try {
+      return convert(
+              ClientRegistry.retryFdR1Client(),
+              blobData::getContent,
+              blobData.getContentLength(),
+              blobData.getFileName(),
+              blobData.getETag(),
+              blobData.getMetadata(),
+              retryIndex,
+              retryIndex >= MAX_RETRY_COUNT,
+              context.getInvocationId());
+    } catch (FlowDeadLetteredException e) {
+      return notRetried(e);
+    }
+  }
+
+  /**
+   * Convert an FdR3 flow streamed from the blob storage by a retry job running in background, after
+   * the invocation that started it returned: the invocation is referenced by its id only. A failure
+   * is thrown and the dead-letter entry kept, as for the retry functions
+   *
+   * @param blobData FDR3 flow blob, its content is streamed to FdR1
+   * @param invocationId id of the invocation that started the job
+   */
+  public boolean process(BlobData blobData, String invocationId) throws IOException {
+    return convert(
+            ClientRegistry.retryFdR1Client(),
+            blobData::getContent,
+            blobData.getContentLength(),
+            blobData.getFileName(),
+            blobData.getETag(),
+            blobData.getMetadata(),
+            -1,
+            false,
+            invocationId);
+  }
+
+  /**
+   * Convert an FdR3 flow already available in memory
+   *
+   * @param content FDR3 flow content
+   * @param blobName FDR3 flow blob name
+   * @param blobMetadata FDR3 flow blob metadata
+   * @param context function execution context
+   */
+  public boolean process(
+          byte[] content,
+          String blobName,
+          Map<String, String> blobMetadata,
+          final ExecutionContext context) throws IOException {
+    int retryIndex = retryIndex(context);
+    try {
+      return convert(
+              ClientRegistry.retryFdR1Client(),
+              () -> new ByteArrayInputStream(content),
+              content.length,
+              blobName,
+              ConversionLedger.contentVersion(content),
+              blobMetadata,
+              retryIndex,
+              retryIndex >= MAX_RETRY_COUNT,
+              context.getInvocationId());
+    } catch (FlowDeadLetteredException e) {
+      return notRetried(e);
+    }
+  }
 
-    int retryIndex =
-            context.getRetryContext() == null ? -1 : context.getRetryContext().getRetrycount();
-    String iid = context.getInvocationId();
+  // a permanent failure already dead-lettered ends the invocation, the host retries are skipped
+  private static boolean notRetried(FlowDeadLetteredException e) {
+    if (e.isPermanent()) {
+      return false;
+    }
+    throw e;
+  }
+
+  // started by the first invocation of the instance, loading the class has no side effect
+  private static void startInstance() {
+    if (INSTANCE_STARTED.compareAndSet(false, true)) {
+      StageMetrics.startPublishing(ClientRegistry::telemetryClient);
+      // no-op once the readiness probe started it, the fallback of instances without the probe
+      FdrWarmupTrigger.warmUpInBackground();
+    }
+  }
+
+  private static int retryIndex(ExecutionContext context) {
+    return context.getRetryContext() == null ? -1 : context.getRetryContext().getRetrycount();
+  }
+
+  private boolean convert(
+          FdR1Client client,
+          Supplier<InputStream> content,
+          long contentLength,
+          String blobName,
+          String version,
+          Map<String, String> blobMetadata,
+          int retryIndex,
+          boolean lastAttempt,
+          String iid) throws IOException {
+    startInstance();
 
     log.info(
             "[{}] Triggered, id = {}, blob-name = {}, blob-metadata = {}, retry = {}",
@@ -85,27 +249,56 @@ public class FdrConversionBlobTrigger {
             blobName,
             blobMetadata,
             retryIndex);
+    StageMetrics.recordReceived(contentLength, retryIndex);
 
     // Ignore the blob if it does not contain the elaborate key or if it isn't true
     if (!Boolean.parseBoolean(blobMetadata.getOrDefault(ELABORATE_KEY, "false"))) {
+      SkippedBlobCounter.record(contentLength);
+      StageMetrics.recordSkipped();
       log.info(
-              "[{}] Skipped, id = {}, blob-name = {}, blob-metadata = {}, retry = {}",
+              "[{}] Skipped, id = {}, blob-name = {}, blob-metadata = {}, retry = {}, skipped-blobs = {}, skipped-bytes = {}",
               FN_NAME,
               iid,
               blobName,
               blobMetadata,
-              retryIndex);
+              retryIndex,
+              SkippedBlobCounter.getSkippedBlobs(),
+              SkippedBlobCounter.getSkippedBytes());
       return false;
     }
 
-    // Retry is configured at function level, we always make the exception throw to trigger that retry
-    try {
-        fdR1Client.postConversion(fdrFase1ApiKey, content);
+    // A flow already converted is not posted again, e.g. trigger re-fired after a restart or manual retry
+    if (version != null && ClientRegistry.conversionLedger().isConverted(blobName, version)) {
+      log.info(
+              "[{}] Already converted, id = {}, blob-name = {}, version = {}, retry = {}",
+              FN_NAME,
+              iid,
+              blobName,
+              version,
+              retryIndex);
+      return true;
+    }
+
+    // Retry is configured at function level, we always make the exception throw to trigger that retry.
+    // The content is opened only here, after the elaborate check, and streamed to FdR1
+    // A plain or double-gzipped payload is normalized to a single gzip layer while it is streamed
+    try (GzipPayload payload = GzipPayload.of(content.get())) {
+        long start = System.nanoTime();
+        try {
+          upload(client, fdrFase1ApiKey, payload);
+        } finally {
+          StageMetrics.recordFdR1Call(System.nanoTime() - start);
+        }
+        StageMetrics.recordProcessed(contentLength);
+        logNormalizedPayload(payload, iid);
         log.info(
                 "[{}][id={}] Successful conversion call to FdR1",
                 FN_NAME,
-                context.getInvocationId()
+                iid
         );
+        if (version != null) {
+          ClientRegistry.conversionLedger().recordConverted(blobName, version);
+        }
 
     } catch (Exception | Error e) {
       log.error(
@@ -114,35 +307,81 @@ public class FdrConversionBlobTrigger {
               iid,
               e.getClass(),
               e.getMessage());
-      // Get error type
-      ErrorEnum errorType =
-              (e instanceof FeignException) ? ErrorEnum.HTTP_ERROR : ErrorEnum.GENERIC_ERROR;
-      // Last retry check
-      if (retryIndex >= MAX_RETRY_COUNT) {
-        sendToDeadLetter(context, blobName, blobMetadata, e.getMessage(), errorType, e.getMessage(), e);
+      ErrorEnum errorType = FailureClassifier.classify(e);
+      // A permanent failure of a host invocation skips the remaining backoff retries, the retry
+      // functions (no retry context) get the exception and keep their dead-letter entry
+      boolean failFast = errorType.isPermanent() && retryIndex >= 0;
+      if (lastAttempt || failFast) {
+        boolean deadLettered = sendToDeadLetter(
+                iid,
+                blobName,
+                blobMetadata,
+                e.getMessage(),
+                errorType,
+                e.getMessage(),
+                e,
+                failFast ? "PERMANENT_FAILURE" : "LAST_RETRY");
         String exceptionDetails =
                 getExceptionDetails(blobName, blobMetadata.get(SESSION_ID_METADATA_KEY), retryIndex);
 
-        aiTelemetryClient.createCustomEventForAlert(exceptionDetails, e);
+        ClientRegistry.telemetryClient().createCustomEventForAlert(exceptionDetails, e);
+        // a flow the dead-letter did not take is thrown to be retried, never dropped
+        if (deadLettered) {
+          throw new FlowDeadLetteredException(blobName, e, failFast);
+        }
       }
       throw e;
     }
     return true;
   }
 
-  // Check retry index and save to dead-letter if max-retry has been reached
-  private static void sendToDeadLetter(
-      ExecutionContext context,
+  /** Upload a normalized payload, also run by the warm-up against an in-process FdR1 stub */
+  static void upload(FdR1Client client, String subscriptionKey, GzipPayload payload) {
+    // an invalid flow aborts the upload as soon as it is found and is never retried
+    client.postConversion(subscriptionKey, PRE_VALIDATION ? VALIDATOR.validating(payload) : payload);
+  }
+
+  private static void logNormalizedPayload(GzipPayload payload, String iid) {
+    if (payload.getFormat() == GzipPayload.Format.PLAIN) {
+      StageMetrics.recordCompression(
+              payload.getRawBytes(), payload.getCompressedBytes(), payload.getCompressionNanos());
+      log.info(
+              "[{}][id={}] Plain payload gzipped, raw-bytes = {}, gzip-bytes = {}, compression-ms = {}",
+              FN_NAME,
+              iid,
+              payload.getRawBytes(),
+              payload.getCompressedBytes(),
+              TimeUnit.NANOSECONDS.toMillis(payload.getCompressionNanos()));
+    } else if (payload.getFormat() == GzipPayload.Format.DOUBLE_GZIP) {
+      log.info("[{}][id={}] Double-gzipped payload unwrapped once", FN_NAME, iid);
+    }
+  }
+
+  // Save to dead-letter once max-retry has been reached or the failure is permanent
+  private static boolean sendToDeadLetter(
+      String iid,
       String blob,
       Map<String, String> metadata,
       String message,
       ErrorEnum errorEnum,
       String response,
-      Object error) {
+      Object error,
+      String reason) {
     log.warn(
-        "[ALERT][{}][LAST_RETRY][DEAD-LETTER] Performed last retry for event ingestion: InvocationId [{}]",
+        "[ALERT][{}][{}][DEAD-LETTER] Performed last retry for event ingestion: InvocationId [{}], error-type [{}]",
         FN_NAME,
-        context.getInvocationId());
-    StorageAccountUtil.sendToErrorTable(context, blob, metadata, message, errorEnum, response, error);
+        reason,
+        iid,
+        errorEnum);
+    if (!StorageAccountUtil.sendToErrorTable(iid, blob, metadata, message, errorEnum, response, error)) {
+      log.error(
+          "[ALERT][{}][{}][DEAD-LETTER] Dead-letter write failed: InvocationId [{}], blob [{}]",
+          FN_NAME,
+          reason,
+          iid,
+          blob);
+      return false;
+    }
+    return true;
   }
 }
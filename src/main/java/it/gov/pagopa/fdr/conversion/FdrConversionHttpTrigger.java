@@ -42,8 +42,10 @@ public class FdrConversionHttpTrigger {
             .build();
       }
 
-      boolean processed =
-          this.processor.process(blobData.getContent(), blobName, blobData.getMetadata(), context);
+      boolean processed;
+      try (blobData) {
+        processed = this.processor.process(blobData, context);
+      }
       if (processed) {
         removeEntity(context, blobData.getMetadata());
         return request.createResponseBuilder(HttpStatus.OK).body(HttpStatus.OK.toString()).build();
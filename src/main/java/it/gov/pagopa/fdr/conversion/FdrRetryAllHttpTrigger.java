@@ -1,34 +1,51 @@
 package it.gov.pagopa.fdr.conversion;
 
-import static it.gov.pagopa.fdr.conversion.util.StorageAccountUtil.removeEntity;
-
-import com.azure.core.http.rest.PagedIterable;
-import com.azure.core.http.rest.PagedResponse;
-import com.azure.data.tables.models.TableEntity;
 import com.microsoft.azure.functions.*;
 import com.microsoft.azure.functions.annotation.AuthorizationLevel;
+import com.microsoft.azure.functions.annotation.BindingName;
 import com.microsoft.azure.functions.annotation.FunctionName;
 import com.microsoft.azure.functions.annotation.HttpTrigger;
-import it.gov.pagopa.fdr.conversion.model.BlobData;
-import it.gov.pagopa.fdr.conversion.model.ErrorTableColumns;
-import it.gov.pagopa.fdr.conversion.util.StorageAccountUtil;
-import java.util.Map;
+import com.microsoft.azure.functions.annotation.TimerTrigger;
+import it.gov.pagopa.fdr.conversion.model.DeadLetterFilter;
+import it.gov.pagopa.fdr.conversion.model.RetryJob;
+import it.gov.pagopa.fdr.conversion.retry.RetryJobRunner;
 import java.util.Optional;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public class FdrRetryAllHttpTrigger {
 
-  private final FdrConversionBlobTrigger processor;
+  private static RetryJobRunner sharedRunner;
+
+  private final RetryJobRunner runner;
 
   public FdrRetryAllHttpTrigger(FdrConversionBlobTrigger processor) {
-    this.processor = processor;
+    this(getSharedRunner(processor));
+  }
+
+  FdrRetryAllHttpTrigger(RetryJobRunner runner) {
+    this.runner = runner;
   }
 
   public FdrRetryAllHttpTrigger() {
-    this.processor = new FdrConversionBlobTrigger();
+    this(new FdrConversionBlobTrigger());
+  }
+
+  private static synchronized RetryJobRunner getSharedRunner(FdrConversionBlobTrigger processor) {
+    // the runner owns the worker pools and the jobs running in background
+    if (sharedRunner == null) {
+      sharedRunner = RetryJobRunner.fromEnv(processor);
+    }
+    return sharedRunner;
   }
 
+  /**
+   * Start a background job retrying the dead-letter entities selected by the optional query
+   * parameters fromDay and toDay (yyyy-MM-dd), errorType, createdAfter and createdBefore
+   * (yyyy-MM-ddTHH:mm:ss, UTC)
+   *
+   * @return 202 with the job, its progress is exposed by ErrorRetryJobStatusFunction
+   */
   @FunctionName("ErrorRetryAllFunction")
   public HttpResponseMessage process(
       @HttpTrigger(
@@ -38,39 +55,26 @@ public class FdrRetryAllHttpTrigger {
               authLevel = AuthorizationLevel.ANONYMOUS)
           HttpRequestMessage<Optional<String>> request,
       final ExecutionContext context) {
+    DeadLetterFilter filter;
     try {
-      PagedIterable<TableEntity> entities = StorageAccountUtil.getTableEntities();
-      assert entities != null;
-
-      // Iterate through the pages of results
-      for (PagedResponse<TableEntity> page : entities.iterableByPage()) {
-        // For each page, process the retry
-        for (TableEntity e : page.getElements()) {
-          Map<String, Object> properties = e.getProperties();
-          String blobName = (String) properties.get(ErrorTableColumns.COLUMN_FIELD_BLOB);
-          BlobData blobData = StorageAccountUtil.getBlobContent(blobName);
-
-          assert blobData != null;
-          boolean processed =
-              this.processor.process(
-                  blobData.getContent(), blobName, blobData.getMetadata(), context);
-          if (processed) removeEntity(context, blobData.getMetadata());
-
-          log.info(
-              "[fn=ErrorRetryAllFunction][id={}] Retry table entity processed = {}, PartitionKey = {}, RowKey = {}, Properties = {}, blobName = {}",
-              context.getInvocationId(),
-              processed,
-              e.getPartitionKey(),
-              e.getRowKey(),
-              properties,
-              blobName);
-        }
-      }
-
-      return request.createResponseBuilder(HttpStatus.OK).body(HttpStatus.OK.toString()).build();
+      filter = DeadLetterFilter.fromQueryParameters(request.getQueryParameters());
+    } catch (IllegalArgumentException e) {
+      return request
+          .createResponseBuilder(HttpStatus.BAD_REQUEST)
+          .body(e.getMessage())
+          .build();
+    }
+    try {
+      RetryJob job = runner.start(filter, context);
+      return request
+          .createResponseBuilder(HttpStatus.ACCEPTED)
+          .header("Content-Type", "application/json")
+          .header("Location", "errors/retry/" + job.getJobId())
+          .body(job)
+          .build();
     } catch (Exception e) {
       log.error(
-          "[Exception][id={}] Error while FDR3 ErrorRetryFunction execution, class = {}, message = {}",
+          "[Exception][id={}] Error while FDR3 ErrorRetryAllFunction execution, class = {}, message = {}",
           context.getInvocationId(),
           e.getClass(),
           e.getMessage());
@@ -78,9 +82,38 @@ public class FdrRetryAllHttpTrigger {
           .createResponseBuilder(HttpStatus.INTERNAL_SERVER_ERROR)
           .body(HttpStatus.INTERNAL_SERVER_ERROR.toString())
           .build();
-    } catch (AssertionError e) {
+    }
+  }
+
+  @FunctionName("ErrorRetryJobStatusFunction")
+  public HttpResponseMessage status(
+      @HttpTrigger(
+              name = "ErrorRetryJobStatusFunctionHttpTrigger",
+              methods = {HttpMethod.GET},
+              route = "errors/retry/{jobId}",
+              authLevel = AuthorizationLevel.ANONYMOUS)
+          HttpRequestMessage<Optional<String>> request,
+      @BindingName("jobId") String jobId,
+      final ExecutionContext context) {
+    try {
+      return runner
+          .get(jobId)
+          .map(
+              job ->
+                  request
+                      .createResponseBuilder(HttpStatus.OK)
+                      .header("Content-Type", "application/json")
+                      .body(job)
+                      .build())
+          .orElseGet(
+              () ->
+                  request
+                      .createResponseBuilder(HttpStatus.NOT_FOUND)
+                      .body(HttpStatus.NOT_FOUND.toString())
+                      .build());
+    } catch (Exception e) {
       log.error(
-          "[AssertionError][id={}] Error while FDR3 ErrorRetryFunction execution, class = {}, message = {}",
+          "[Exception][id={}] Error while FDR3 ErrorRetryJobStatusFunction execution, class = {}, message = {}",
           context.getInvocationId(),
           e.getClass(),
           e.getMessage());
@@ -90,4 +123,20 @@ public class FdrRetryAllHttpTrigger {
           .build();
     }
   }
+
+  /** Resume the retry-all jobs left running by an instance that has been stopped */
+  @FunctionName("ErrorRetryJobResumeFunction")
+  public void resume(
+      @TimerTrigger(name = "ErrorRetryJobResumeTimer", schedule = "0 */5 * * * *") String timerInfo,
+      final ExecutionContext context) {
+    try {
+      runner.resumeStale(context);
+    } catch (Exception e) {
+      log.error(
+          "[Exception][id={}] Error while FDR3 ErrorRetryJobResumeFunction execution, class = {}, message = {}",
+          context.getInvocationId(),
+          e.getClass(),
+          e.getMessage());
+    }
+  }
 }
@@ -0,0 +1,119 @@
+package it.gov.pagopa.fdr.conversion;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import com.microsoft.azure.functions.annotation.FunctionName;
+import com.microsoft.azure.functions.annotation.WarmupTrigger;
+import it.gov.pagopa.fdr.conversion.client.ClientRegistry;
+import it.gov.pagopa.fdr.conversion.client.FdR1Client;
+import it.gov.pagopa.fdr.conversion.converter.ConversionMode;
+import it.gov.pagopa.fdr.conversion.converter.GzipPayload;
+import it.gov.pagopa.fdr.conversion.converter.LocalConversionFdR1Client;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Warm-up of a new instance: every client is created, the connections to FdR1 and the storage are
+ * opened and a sample flow goes once through the conversion hot path against an in-process FdR1
+ * stub, so classes are loaded and the JIT has started before the first real blob. It runs once per
+ * instance, from the warmup trigger where the plan has it. Elsewhere it runs in background, started
+ * as soon as the worker is up by the readiness probe calling {@link Info}, or at the latest by the
+ * first conversion of the instance. FDR_WARMUP_ENABLED=false turns the background warm-up off.
+ */
+@Slf4j
+public class FdrWarmupTrigger {
+
+  /** Duration of the warm-up */
+  public static final String WARMUP_DURATION = "FDR_JSON_TO_XML_WARMUP_MS";
+  /** JVM uptime when the warm-up completes, i.e. when the instance is ready */
+  public static final String COLD_START_DURATION = "FDR_JSON_TO_XML_COLD_START_MS";
+
+  static final String SAMPLE_FLOW = "/warmup/fdr3-flow.json";
+  private static final boolean ENABLED =
+      Boolean.parseBoolean(System.getenv().getOrDefault("FDR_WARMUP_ENABLED", "true"));
+
+  private static final AtomicBoolean BACKGROUND_STARTED = new AtomicBoolean();
+
+  private static boolean warmedUp;
+
+  @FunctionName("Warmup")
+  public void run(
+      @WarmupTrigger(name = "warmupContext") Object warmupContext,
+      final ExecutionContext context) {
+    log.info("[Warmup][id={}] Instance warm-up requested", context.getInvocationId());
+    warmUp();
+  }
+
+  /** Start the warm-up on a background thread, if enabled and not already started */
+  static void warmUpInBackground() {
+    if (!ENABLED || !BACKGROUND_STARTED.compareAndSet(false, true)) {
+      return;
+    }
+    Thread thread = new Thread(FdrWarmupTrigger::warmUp, "instance-warmup");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /** Warm the instance up, once: later calls return at once */
+  static synchronized void warmUp() {
+    if (warmedUp) {
+      return;
+    }
+    warmedUp = true;
+    long start = System.nanoTime();
+    ClientRegistry.warmUp();
+    try {
+      exerciseHotPath();
+    } catch (IOException | RuntimeException e) {
+      log.warn(
+          "[Warmup] Sample flow conversion failed, class = {}, message = {}",
+          e.getClass(),
+          e.getMessage());
+    }
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    long uptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+    ClientRegistry.telemetryClient().trackMetric(WARMUP_DURATION, elapsedMillis);
+    ClientRegistry.telemetryClient().trackMetric(COLD_START_DURATION, uptimeMillis);
+    log.info("[Warmup] Instance warmed up in {} ms, {} ms after the JVM start", elapsedMillis, uptimeMillis);
+  }
+
+  /**
+   * Upload the sample flow as the conversion does, with the normalization, the validation and, in
+   * local mode, the XML conversion, to a stub that reads and discards the body
+   */
+  static void exerciseHotPath() throws IOException {
+    byte[] flow;
+    try (InputStream sample = FdrWarmupTrigger.class.getResourceAsStream(SAMPLE_FLOW)) {
+      if (sample == null) {
+        throw new IOException("Missing warm-up sample flow " + SAMPLE_FLOW);
+      }
+      flow = sample.readAllBytes();
+    }
+    FdR1Client stub =
+        (subscriptionKey, payload) -> {
+          try (InputStream in = payload) {
+            in.transferTo(OutputStream.nullOutputStream());
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        };
+    FdR1Client client =
+        ConversionMode.fromEnv() == ConversionMode.LOCAL
+            ? new LocalConversionFdR1Client(stub)
+            : stub;
+    try (GzipPayload payload = GzipPayload.of(new ByteArrayInputStream(flow))) {
+      FdrConversionBlobTrigger.upload(client, null, payload);
+    }
+  }
+
+  static synchronized void resetForTest() {
+    warmedUp = false;
+    BACKGROUND_STARTED.set(false);
+  }
+}
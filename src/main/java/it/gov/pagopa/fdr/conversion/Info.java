@@ -4,6 +4,7 @@ import com.microsoft.azure.functions.*;
 import com.microsoft.azure.functions.annotation.AuthorizationLevel;
 import com.microsoft.azure.functions.annotation.FunctionName;
 import com.microsoft.azure.functions.annotation.HttpTrigger;
+import it.gov.pagopa.fdr.conversion.converter.ConversionMode;
 import it.gov.pagopa.fdr.conversion.model.AppInfo;
 import java.io.InputStream;
 import java.util.Optional;
@@ -16,6 +17,8 @@ public class Info {
 
   private static final String ENVIRONMENT =
       System.getenv().getOrDefault("APP_ENVIRONMENT", "azure-fn");
+  // a half-configured instance fails its readiness probe instead of posting flows
+  private static final String CONFIGURATION_ERROR = configurationError();
 
   @FunctionName("Info")
   public HttpResponseMessage run(
@@ -26,6 +29,18 @@ public class Info {
               authLevel = AuthorizationLevel.ANONYMOUS)
           HttpRequestMessage<Optional<String>> request,
       final ExecutionContext context) {
+    if (CONFIGURATION_ERROR != null) {
+      log.error(
+          "[Info][id={}] Invalid configuration: {}",
+          context.getInvocationId(),
+          CONFIGURATION_ERROR);
+      return request
+          .createResponseBuilder(HttpStatus.SERVICE_UNAVAILABLE)
+          .body(CONFIGURATION_ERROR)
+          .build();
+    }
+    // called by the readiness probe as soon as the worker is up, before the first blob
+    FdrWarmupTrigger.warmUpInBackground();
 
     return request
         .createResponseBuilder(HttpStatus.OK)
@@ -34,6 +49,15 @@ public class Info {
         .build();
   }
 
+  private static String configurationError() {
+    try {
+      ConversionMode.fromEnv();
+      return null;
+    } catch (IllegalArgumentException | IllegalStateException e) {
+      return e.getMessage();
+    }
+  }
+
   public synchronized AppInfo getInfo() {
     String version = null;
     String name = null;
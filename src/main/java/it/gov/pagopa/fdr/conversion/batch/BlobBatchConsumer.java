@@ -0,0 +1,124 @@
+package it.gov.pagopa.fdr.conversion.batch;
+
+import it.gov.pagopa.fdr.conversion.model.BlobNotification;
+import it.gov.pagopa.fdr.conversion.model.BlobNotificationResult;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+
+/**
+ * Drains a {@link BlobNotificationSource} batch by batch with a bounded number of concurrent
+ * conversions. Each notification runs its metadata check, download and FdR1 call on a worker while
+ * the next ones are dispatched, the next batch is received as soon as a worker is free, and each
+ * notification is settled with its own {@link BlobNotificationResult}, so a single failure never
+ * aborts the batch.
+ */
+public class BlobBatchConsumer {
+
+  public static final String PARALLELISM = "BLOB_BATCH_PARALLELISM";
+  public static final String BATCH_SIZE = "BLOB_BATCH_SIZE";
+  private static final int DEFAULT_PARALLELISM = 8;
+  private static final int DEFAULT_BATCH_SIZE = 32;
+
+  private final int parallelism;
+  private final int batchSize;
+  private final Executor workers;
+
+  /**
+   * @param parallelism max number of notifications converted at the same time
+   * @param batchSize max number of notifications received at once
+   * @param workers executor running the conversions, it should provide at least {@code
+   *     parallelism} threads
+   */
+  public BlobBatchConsumer(int parallelism, int batchSize, Executor workers) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Blob batch parallelism must be positive: " + parallelism);
+    }
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Blob batch size must be positive: " + batchSize);
+    }
+    this.parallelism = parallelism;
+    this.batchSize = batchSize;
+    this.workers = workers;
+  }
+
+  public static BlobBatchConsumer fromEnv() {
+    int parallelism =
+        Integer.parseInt(
+            System.getenv().getOrDefault(PARALLELISM, String.valueOf(DEFAULT_PARALLELISM)));
+    int batchSize =
+        Integer.parseInt(
+            System.getenv().getOrDefault(BATCH_SIZE, String.valueOf(DEFAULT_BATCH_SIZE)));
+    return new BlobBatchConsumer(
+        parallelism, batchSize, Executors.newFixedThreadPool(parallelism, daemon("fdr-blob-batch")));
+  }
+
+  /**
+   * Convert every notification of the source, until it is drained and no conversion is running.
+   * Notifications delivered again after a failure are received and converted in the same run
+   *
+   * @param source notifications to convert
+   * @param conversion conversion of a single notification, expected to report its failures as a
+   *     {@link BlobNotificationResult} rather than throwing
+   * @return the results of every delivery, in dispatch order
+   */
+  public List<BlobNotificationResult> consume(
+      BlobNotificationSource source,
+      Function<BlobNotification, BlobNotificationResult> conversion) {
+    Semaphore slots = new Semaphore(parallelism);
+    List<CompletableFuture<BlobNotificationResult>> results = new ArrayList<>();
+    List<CompletableFuture<BlobNotificationResult>> running = new ArrayList<>();
+    while (true) {
+      List<BlobNotification> batch = source.receive(batchSize);
+      if (batch.isEmpty()) {
+        running.removeIf(CompletableFuture::isDone);
+        if (running.isEmpty()) {
+          break;
+        }
+        // a running conversion may fail and have its notification delivered again
+        CompletableFuture.allOf(running.toArray(CompletableFuture[]::new)).join();
+        continue;
+      }
+      for (BlobNotification notification : batch) {
+        acquire(slots);
+        CompletableFuture<BlobNotificationResult> result =
+            CompletableFuture.supplyAsync(() -> conversion.apply(notification), workers)
+                .whenComplete(
+                    (r, e) -> {
+                      try {
+                        if (r != null) {
+                          source.settle(r);
+                        }
+                      } finally {
+                        slots.release();
+                      }
+                    });
+        results.add(result);
+        running.add(result);
+      }
+    }
+    return results.stream().map(CompletableFuture::join).toList();
+  }
+
+  private static void acquire(Semaphore slots) {
+    try {
+      slots.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for a blob batch worker", e);
+    }
+  }
+
+  private static ThreadFactory daemon(String name) {
+    return r -> {
+      Thread t = new Thread(r, name);
+      t.setDaemon(true);
+      return t;
+    };
+  }
+}
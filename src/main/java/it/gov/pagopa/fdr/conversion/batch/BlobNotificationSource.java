@@ -0,0 +1,25 @@
+package it.gov.pagopa.fdr.conversion.batch;
+
+import it.gov.pagopa.fdr.conversion.model.BlobNotification;
+import it.gov.pagopa.fdr.conversion.model.BlobNotificationResult;
+import java.util.List;
+
+/**
+ * Notifications of new FdR3 flow blobs, received in batches by the {@link BlobBatchConsumer}.
+ * Implementations must be thread-safe: the notifications of a batch are settled by the conversion
+ * workers while the next batch is being received.
+ */
+public interface BlobNotificationSource {
+
+  /**
+   * @param maxNotifications max size of the batch
+   * @return the next notifications, empty if none is available
+   */
+  List<BlobNotification> receive(int maxNotifications);
+
+  /**
+   * Settle a received notification with its outcome. A failed notification may be delivered again,
+   * unless it was on its last delivery
+   */
+  void settle(BlobNotificationResult result);
+}
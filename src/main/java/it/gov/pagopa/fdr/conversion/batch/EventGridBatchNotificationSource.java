@@ -0,0 +1,81 @@
+package it.gov.pagopa.fdr.conversion.batch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.gov.pagopa.fdr.conversion.model.BlobNotification;
+import it.gov.pagopa.fdr.conversion.model.BlobNotificationResult;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Batch of queue messages carrying the Event Grid BlobCreated events of a container, in the Event
+ * Grid or the CloudEvents schema. The messages are settled together by the host when the
+ * invocation returns, so the source never delivers a notification again and every notification is
+ * on its last delivery: a failure is left to the dead-letter. Events of other types or containers and malformed messages are logged and dropped.
+ */
+@Slf4j
+public class EventGridBatchNotificationSource implements BlobNotificationSource {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final String BLOB_CREATED = "Microsoft.Storage.BlobCreated";
+
+  private final Deque<BlobNotification> notifications = new ArrayDeque<>();
+
+  /**
+   * @param messages bodies of the queue messages, each with an event or an array of events
+   * @param deliveryCounts deliveries of each message so far, null if not known
+   * @param container container of the FdR3 flows
+   */
+  public EventGridBatchNotificationSource(
+      String[] messages, int[] deliveryCounts, String container) {
+    String blobsPrefix = "/blobServices/default/containers/" + container + "/blobs/";
+    for (int i = 0; i < messages.length; i++) {
+      String message = messages[i];
+      int deliveryCount =
+          deliveryCounts != null && i < deliveryCounts.length ? deliveryCounts[i] : 1;
+      try {
+        JsonNode root = MAPPER.readTree(message);
+        for (JsonNode event : root.isArray() ? root : List.of(root)) {
+          String type = event.path(event.has("eventType") ? "eventType" : "type").asText();
+          String subject = event.path("subject").asText();
+          if (!BLOB_CREATED.equals(type) || !subject.startsWith(blobsPrefix)) {
+            log.info(
+                "[EventGridBatchNotificationSource] Event ignored, type = {}, subject = {}",
+                type,
+                subject);
+            continue;
+          }
+          notifications.add(
+              BlobNotification.builder()
+                  .messageId(event.path("id").asText())
+                  .blobName(subject.substring(blobsPrefix.length()))
+                  .deliveryCount(deliveryCount)
+                  .lastDelivery(true)
+                  .build());
+        }
+      } catch (Exception e) {
+        log.error(
+            "[EventGridBatchNotificationSource] Malformed message dropped, class = {}, message = {}",
+            e.getClass(),
+            e.getMessage());
+      }
+    }
+  }
+
+  @Override
+  public synchronized List<BlobNotification> receive(int maxNotifications) {
+    List<BlobNotification> batch = new ArrayList<>();
+    while (batch.size() < maxNotifications && !notifications.isEmpty()) {
+      batch.add(notifications.poll());
+    }
+    return batch;
+  }
+
+  @Override
+  public void settle(BlobNotificationResult result) {
+    // completed with the whole batch by the host
+  }
+}
@@ -0,0 +1,78 @@
+package it.gov.pagopa.fdr.conversion.batch;
+
+import it.gov.pagopa.fdr.conversion.model.BlobNotification;
+import it.gov.pagopa.fdr.conversion.model.BlobNotificationResult;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * In-memory queue of notifications, for tests and local runs. A failed notification is queued
+ * again, as a queue would deliver it after its lock expired, until it reaches the max deliveries or
+ * its flow is dead-lettered.
+ */
+public class InMemoryBlobNotificationSource implements BlobNotificationSource {
+
+  private final int maxDeliveries;
+  private final Deque<BlobNotification> queue = new ArrayDeque<>();
+  private final List<BlobNotificationResult> settled = new ArrayList<>();
+  private long published;
+
+  /**
+   * @param maxDeliveries deliveries of a notification, the first one included
+   */
+  public InMemoryBlobNotificationSource(int maxDeliveries) {
+    if (maxDeliveries < 1) {
+      throw new IllegalArgumentException("Max deliveries must be positive: " + maxDeliveries);
+    }
+    this.maxDeliveries = maxDeliveries;
+  }
+
+  /** Queue the notification of a blob */
+  public synchronized void publish(String blobName) {
+    published++;
+    queue.add(
+        BlobNotification.builder()
+            .messageId(String.valueOf(published))
+            .blobName(blobName)
+            .deliveryCount(1)
+            .lastDelivery(maxDeliveries == 1)
+            .build());
+  }
+
+  @Override
+  public synchronized List<BlobNotification> receive(int maxNotifications) {
+    List<BlobNotification> batch = new ArrayList<>();
+    while (batch.size() < maxNotifications && !queue.isEmpty()) {
+      batch.add(queue.poll());
+    }
+    return batch;
+  }
+
+  @Override
+  public synchronized void settle(BlobNotificationResult result) {
+    settled.add(result);
+    BlobNotification notification = result.getNotification();
+    if (result.getOutcome() == BlobNotificationResult.Outcome.FAILED
+        && !result.isDeadLettered()
+        && !notification.isLastDelivery()) {
+      int deliveryCount = notification.getDeliveryCount() + 1;
+      queue.add(
+          notification.toBuilder()
+              .deliveryCount(deliveryCount)
+              .lastDelivery(deliveryCount >= maxDeliveries)
+              .build());
+    }
+  }
+
+  /** Results of every delivery settled so far, in settlement order */
+  public synchronized List<BlobNotificationResult> getSettled() {
+    return List.copyOf(settled);
+  }
+
+  /** Notifications waiting to be received */
+  public synchronized int size() {
+    return queue.size();
+  }
+}
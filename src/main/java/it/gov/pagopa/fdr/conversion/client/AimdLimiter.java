@@ -0,0 +1,113 @@
+package it.gov.pagopa.fdr.conversion.client;
+
+import java.time.Duration;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+/**
+ * Adaptive limit of the calls in flight, additive increase and multiplicative decrease. Every call
+ * faster than the latency threshold raises the limit by 1/limit, so the limit grows by one per
+ * window of calls; a call that fails or exceeds the threshold cuts it by the backoff ratio.
+ */
+public class AimdLimiter {
+
+  private static final double BACKOFF_RATIO = 0.75;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final long latencyThresholdNanos;
+  private final IntConsumer onLimitChange;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition released = lock.newCondition();
+  private double limit;
+  private int inFlight;
+
+  /**
+   * @param minLimit lowest limit, calls are never fully blocked
+   * @param maxLimit highest and initial limit
+   * @param latencyThreshold latency above which a call is a congestion signal
+   * @param onLimitChange notified when the integer limit changes
+   */
+  public AimdLimiter(
+      int minLimit, int maxLimit, Duration latencyThreshold, IntConsumer onLimitChange) {
+    if (minLimit < 1 || maxLimit < minLimit) {
+      throw new IllegalArgumentException("Invalid limits: " + minLimit + ", " + maxLimit);
+    }
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.latencyThresholdNanos = latencyThreshold.toNanos();
+    this.onLimitChange = onLimitChange;
+    this.limit = maxLimit;
+  }
+
+  /**
+   * Wait for a slot under the current limit
+   *
+   * @return false if no slot was available before the timeout
+   */
+  public boolean acquire(Duration timeout) throws InterruptedException {
+    long remaining = timeout.toNanos();
+    lock.lock();
+    try {
+      while (inFlight >= (int) limit) {
+        if (remaining <= 0) {
+          return false;
+        }
+        remaining = released.awaitNanos(remaining);
+      }
+      inFlight++;
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Release the slot and adapt the limit to the outcome of the call
+   *
+   * @param latencyNanos response time of the call
+   * @param congested true if the call failed because of the backend
+   */
+  public void release(long latencyNanos, boolean congested) {
+    int before;
+    int after;
+    lock.lock();
+    try {
+      inFlight--;
+      before = (int) limit;
+      if (congested || latencyNanos > latencyThresholdNanos) {
+        limit = Math.max(minLimit, Math.floor(limit * BACKOFF_RATIO));
+      } else if (2 * (inFlight + 1) >= before) {
+        // raise only when at least half of the limit is in use, a mostly idle client keeps its limit
+        limit = Math.min(maxLimit, limit + 1 / limit);
+      }
+      after = (int) limit;
+      released.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    if (after != before) {
+      onLimitChange.accept(after);
+    }
+  }
+
+  public int getLimit() {
+    lock.lock();
+    try {
+      return (int) limit;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getInFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
@@ -2,23 +2,63 @@ package it.gov.pagopa.fdr.conversion.client;
 
 import com.microsoft.applicationinsights.TelemetryClient;
 import com.microsoft.applicationinsights.TelemetryConfiguration;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
 
-/** Azure Application Insight Telemetry client */
+/**
+ * Azure Application Insight Telemetry client. Telemetry is queued and sent by a background sender
+ * in batches, so tracking never blocks the invocation: when the queue is nearly full metrics are
+ * dropped to leave room for alerts, when it is full alerts are dropped too. Drops are counted and
+ * sent as the FDR_JSON_TO_XML_TELEMETRY_DROPPED metric, the queue is drained on shutdown.
+ */
+@Slf4j
 public class AppInsightTelemetryClient {
 
+  static final String METRIC_DROPPED = "FDR_JSON_TO_XML_TELEMETRY_DROPPED";
+
+  private static final String ALERT_EVENT_NAME = "FDR_JSON_TO_XML_ALERT";
+  private static final String ALERT_TYPE = "FDR_JSON_TO_XML_ERROR";
+  private static final String ALERT_TITLE = "FdrJsonToXml last retry";
+  private static final int BATCH_SIZE = 100;
+  private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(5);
+  private static final int QUEUE_CAPACITY =
+      Integer.parseInt(System.getenv().getOrDefault("TELEMETRY_QUEUE_CAPACITY", "10000"));
+
   private final String connectionString = System.getenv("APPLICATIONINSIGHTS_CONNECTION_STRING");
 
   private final TelemetryClient telemetryClient;
+  private final BlockingQueue<Consumer<TelemetryClient>> queue;
+  // above this size only alerts are queued
+  private final int metricsHighWater;
+  private final LongAdder dropped = new LongAdder();
+  private final Thread sender;
+  // drops already reported, read and written by the sender only
+  private long droppedReported;
+  private volatile boolean closed;
 
   public AppInsightTelemetryClient() {
     TelemetryConfiguration aDefault = TelemetryConfiguration.createDefault();
     aDefault.setConnectionString(connectionString);
     this.telemetryClient = new TelemetryClient(aDefault);
+    this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    this.metricsHighWater = QUEUE_CAPACITY * 8 / 10;
+    this.sender = startSender();
+    Runtime.getRuntime().addShutdownHook(new Thread(this::close, "telemetry-shutdown"));
   }
 
-  AppInsightTelemetryClient(TelemetryClient telemetryClient) {
+  AppInsightTelemetryClient(TelemetryClient telemetryClient, int queueCapacity) {
     this.telemetryClient = telemetryClient;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.metricsHighWater = queueCapacity * 8 / 10;
+    this.sender = startSender();
   }
 
   /**
@@ -28,31 +68,126 @@ public class AppInsightTelemetryClient {
    * @param e exception added to the custom event
    */
   public void createCustomEventForAlert(String details, Object e) {
-    Map<String, String> props;
+    String cause;
     if (e instanceof Exception) {
       Exception ex = (Exception) e;
-      props =
-              Map.of(
-                      "type",
-                      "FDR_JSON_TO_XML_ERROR",
-                      "title",
-                      "FdrJsonToXml last retry",
-                      "details",
-                      details,
-                      "cause",
-                      ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage());
+      cause = ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage();
     } else {
-      props =
-              Map.of(
-                      "type",
-                      "FDR_JSON_TO_XML_ERROR",
-                      "title",
-                      "FdrJsonToXml last retry",
-                      "details",
-                      details,
-                      "cause",
-                      "Out-of-Memory");
-    }
-    this.telemetryClient.trackEvent("FDR_JSON_TO_XML_ALERT", props, null);
+      cause = "Out-of-Memory";
+    }
+    // the properties are built by the sender, off the invocation thread
+    enqueue(
+        client ->
+            client.trackEvent(
+                ALERT_EVENT_NAME,
+                Map.of(
+                    "type", ALERT_TYPE,
+                    "title", ALERT_TITLE,
+                    "details", details,
+                    "cause", String.valueOf(cause)),
+                null),
+        true);
+  }
+
+  /**
+   * Track the current value of a custom metric on Application Insight
+   *
+   * @param name metric name
+   * @param value current value
+   */
+  public void trackMetric(String name, double value) {
+    enqueue(client -> client.trackMetric(name, value), false);
+  }
+
+  /**
+   * Track a metric pre-aggregated over an interval on Application Insight
+   *
+   * @param name metric name
+   * @param sum sum of the values recorded in the interval
+   * @param count number of values recorded in the interval
+   * @param min lowest value recorded in the interval
+   * @param max highest value recorded in the interval
+   */
+  public void trackAggregate(String name, double sum, long count, double min, double max) {
+    enqueue(
+        client ->
+            client.trackMetric(
+                name, sum, (int) Math.min(count, Integer.MAX_VALUE), min, max, null, null),
+        false);
+  }
+
+  /**
+   * Stop the sender, send the queued telemetry and flush the SDK channel. Telemetry tracked after
+   * the close is dropped
+   */
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    sender.interrupt();
+    try {
+      sender.join(SHUTDOWN_TIMEOUT.toMillis());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    telemetryClient.flush();
+  }
+
+  long getDropped() {
+    return dropped.sum();
+  }
+
+  private void enqueue(Consumer<TelemetryClient> telemetry, boolean alert) {
+    if (closed || (!alert && queue.size() >= metricsHighWater) || !queue.offer(telemetry)) {
+      dropped.increment();
+    }
+  }
+
+  private Thread startSender() {
+    Thread thread = new Thread(this::send, "telemetry-sender");
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  private void send() {
+    List<Consumer<TelemetryClient>> batch = new ArrayList<>(BATCH_SIZE);
+    while (!closed) {
+      try {
+        Consumer<TelemetryClient> first = queue.poll(1, TimeUnit.SECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        queue.drainTo(batch, BATCH_SIZE - 1);
+        sendBatch(batch);
+      } catch (InterruptedException e) {
+        // closing: fall through to the final drain
+        break;
+      }
+    }
+    while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+      sendBatch(batch);
+    }
+  }
+
+  private void sendBatch(List<Consumer<TelemetryClient>> batch) {
+    for (Consumer<TelemetryClient> telemetry : batch) {
+      try {
+        telemetry.accept(telemetryClient);
+      } catch (RuntimeException e) {
+        log.warn(
+            "[AppInsightTelemetryClient] Telemetry not sent, class = {}, message = {}",
+            e.getClass(),
+            e.getMessage());
+      }
+    }
+    batch.clear();
+    long droppedTotal = dropped.sum();
+    if (droppedTotal > droppedReported) {
+      telemetryClient.trackMetric(METRIC_DROPPED, droppedTotal - droppedReported);
+      droppedReported = droppedTotal;
+    }
   }
 }
@@ -0,0 +1,139 @@
+package it.gov.pagopa.fdr.conversion.client;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Count-based circuit breaker. It opens when the failure rate of the last calls reaches the
+ * threshold, rejects every call while open and, once the open time elapses, lets a limited number
+ * of probe calls through: the circuit closes if all of them succeed and opens again at the first
+ * failure.
+ */
+public class CircuitBreaker {
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final int window;
+  private final int failureRatePercent;
+  private final long openNanos;
+  private final int halfOpenCalls;
+  private final LongSupplier nanoTime;
+  private final Consumer<State> onTransition;
+
+  // ring buffer of the outcomes of the last calls while closed, true if failed
+  private final boolean[] outcomes;
+  private int cursor;
+  private int recorded;
+  private int failures;
+
+  private State state = State.CLOSED;
+  private long openedAt;
+  private int probesStarted;
+  private int probesSucceeded;
+
+  /**
+   * @param window calls the failure rate is computed on, the circuit never opens before
+   * @param failureRatePercent failure rate opening the circuit
+   * @param openTime time the circuit stays open before probing
+   * @param halfOpenCalls probe calls let through while half-open
+   * @param nanoTime time source
+   * @param onTransition notified of every state change
+   */
+  public CircuitBreaker(
+      int window,
+      int failureRatePercent,
+      Duration openTime,
+      int halfOpenCalls,
+      LongSupplier nanoTime,
+      Consumer<State> onTransition) {
+    if (window < 1 || halfOpenCalls < 1 || failureRatePercent < 1 || failureRatePercent > 100) {
+      throw new IllegalArgumentException("Invalid circuit breaker settings");
+    }
+    this.window = window;
+    this.failureRatePercent = failureRatePercent;
+    this.openNanos = openTime.toNanos();
+    this.halfOpenCalls = halfOpenCalls;
+    this.nanoTime = nanoTime;
+    this.onTransition = onTransition;
+    this.outcomes = new boolean[window];
+  }
+
+  /**
+   * @return true if the call can be performed, its outcome must then be reported
+   */
+  public synchronized boolean tryAcquirePermission() {
+    if (state == State.OPEN && nanoTime.getAsLong() - openedAt >= openNanos) {
+      transition(State.HALF_OPEN);
+    }
+    if (state == State.HALF_OPEN) {
+      if (probesStarted >= halfOpenCalls) {
+        return false;
+      }
+      probesStarted++;
+      return true;
+    }
+    return state == State.CLOSED;
+  }
+
+  public synchronized void onSuccess() {
+    if (state == State.HALF_OPEN) {
+      if (++probesSucceeded >= halfOpenCalls) {
+        transition(State.CLOSED);
+      }
+    } else if (state == State.CLOSED) {
+      record(false);
+    }
+  }
+
+  public synchronized void onFailure() {
+    if (state == State.HALF_OPEN) {
+      transition(State.OPEN);
+    } else if (state == State.CLOSED) {
+      record(true);
+      if (recorded >= window && failures * 100 >= failureRatePercent * window) {
+        transition(State.OPEN);
+      }
+    }
+  }
+
+  /** The permitted call has not been performed, a probe slot is given back */
+  public synchronized void onCancelled() {
+    if (state == State.HALF_OPEN && probesStarted > 0) {
+      probesStarted--;
+    }
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  private void record(boolean failed) {
+    if (recorded == window && outcomes[cursor]) {
+      failures--;
+    }
+    outcomes[cursor] = failed;
+    if (failed) {
+      failures++;
+    }
+    cursor = (cursor + 1) % window;
+    recorded = Math.min(recorded + 1, window);
+  }
+
+  private void transition(State next) {
+    state = next;
+    cursor = 0;
+    recorded = 0;
+    failures = 0;
+    probesStarted = 0;
+    probesSucceeded = 0;
+    if (next == State.OPEN) {
+      openedAt = nanoTime.getAsLong();
+    }
+    onTransition.accept(next);
+  }
+}
@@ -0,0 +1,177 @@
+package it.gov.pagopa.fdr.conversion.client;
+
+import com.azure.data.tables.TableAsyncClient;
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.TableClientBuilder;
+import com.azure.data.tables.TableServiceClient;
+import com.azure.data.tables.TableServiceClientBuilder;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.BlobServiceClientBuilder;
+import it.gov.pagopa.fdr.conversion.converter.ConversionMode;
+import it.gov.pagopa.fdr.conversion.converter.LocalConversionFdR1Client;
+import it.gov.pagopa.fdr.conversion.util.ConversionLedger;
+import it.gov.pagopa.fdr.conversion.util.Lazy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Clients shared by all the invocations of an instance. Each client is created on its first use,
+ * once even when concurrent invocations reach it together, and read without locking afterwards, so
+ * the host can run several conversions in parallel. Clients are thread-safe and never rebuilt.
+ */
+@Slf4j
+public class ClientRegistry {
+
+  private static final String TABLE_CONNECTION_STRING = System.getenv("TABLE_STORAGE_CONN_STRING");
+  private static final String BLOB_CONNECTION_STRING = System.getenv("FDR_SA_CONNECTION_STRING");
+  private static final String ERROR_TABLE_NAME = System.getenv("ERROR_TABLE_NAME");
+  private static final String FDR3_FLOW_BLOB_CONTAINER_NAME =
+      System.getenv("BLOB_STORAGE_FDR3_CONTAINER");
+
+  private static final Lazy<AppInsightTelemetryClient> TELEMETRY_CLIENT =
+      new Lazy<>(AppInsightTelemetryClient::new);
+  private static final Lazy<FdR1Clients> FDR1_CLIENTS = new Lazy<>(ClientRegistry::newFdR1Clients);
+  private static final Lazy<ConversionLedger> CONVERSION_LEDGER =
+      new Lazy<>(ConversionLedger::fromEnv);
+  private static final Lazy<TableServiceClient> TABLE_SERVICE_CLIENT =
+      new Lazy<>(
+          () ->
+              new TableServiceClientBuilder().connectionString(TABLE_CONNECTION_STRING).buildClient());
+  private static final Lazy<TableClient> ERROR_TABLE_CLIENT =
+      new Lazy<>(
+          () -> {
+            tableServiceClient().createTableIfNotExists(ERROR_TABLE_NAME);
+            return tableServiceClient().getTableClient(ERROR_TABLE_NAME);
+          });
+  private static final Lazy<BlobContainerClient> BLOB_CONTAINER_CLIENT =
+      new Lazy<>(
+          () ->
+              new BlobServiceClientBuilder()
+                  .connectionString(BLOB_CONNECTION_STRING)
+                  .buildClient()
+                  .getBlobContainerClient(FDR3_FLOW_BLOB_CONTAINER_NAME));
+  private static final Lazy<TableAsyncClient> ERROR_TABLE_ASYNC_CLIENT =
+      new Lazy<>(
+          () ->
+              new TableClientBuilder()
+                  .connectionString(TABLE_CONNECTION_STRING)
+                  .tableName(ERROR_TABLE_NAME)
+                  .buildAsyncClient());
+
+  private ClientRegistry() {}
+
+  /** FdR1 client of the blob trigger, charged to the live share of the rate budget */
+  public static FdR1Client liveFdR1Client() {
+    return FDR1_CLIENTS.get().live();
+  }
+
+  /** FdR1 client of the retry functions, charged to the retry share of the rate budget */
+  public static FdR1Client retryFdR1Client() {
+    return FDR1_CLIENTS.get().retry();
+  }
+
+  public static AppInsightTelemetryClient telemetryClient() {
+    return TELEMETRY_CLIENT.get();
+  }
+
+  public static ConversionLedger conversionLedger() {
+    return CONVERSION_LEDGER.get();
+  }
+
+  public static TableServiceClient tableServiceClient() {
+    return TABLE_SERVICE_CLIENT.get();
+  }
+
+  /** Dead-letter table client, the table is created on the first use */
+  public static TableClient errorTableClient() {
+    return ERROR_TABLE_CLIENT.get();
+  }
+
+  /** Container of the FdR3 flows */
+  public static BlobContainerClient blobContainerClient() {
+    return BLOB_CONTAINER_CLIENT.get();
+  }
+
+  /** Non-blocking dead-letter table client, the table is expected to exist */
+  public static TableAsyncClient errorTableAsyncClient() {
+    return ERROR_TABLE_ASYNC_CLIENT.get();
+  }
+
+  /**
+   * Create every client and open the connections to FdR1, the Table and the Blob storage, so the
+   * first flow of the instance finds them ready. A failing step is logged and left to the first
+   * invocation, which creates the client again
+   */
+  public static void warmUp() {
+    warmUp("telemetry", ClientRegistry::telemetryClient);
+    warmUp(
+        "FdR1",
+        () -> {
+          FdR1Clients clients = FDR1_CLIENTS.get();
+          if (clients.http() != null) {
+            clients.http().prime();
+          }
+        });
+    warmUp("conversion ledger", ClientRegistry::conversionLedger);
+    // creating the dead-letter table client is a round trip to the Table storage
+    warmUp("dead-letter table", ClientRegistry::errorTableClient);
+    warmUp("FdR3 container", () -> blobContainerClient().exists());
+  }
+
+  private static void warmUp(String client, WarmUpStep step) {
+    try {
+      step.run();
+    } catch (Exception e) {
+      log.warn(
+          "[ClientRegistry] Warm-up of the {} client failed, class = {}, message = {}",
+          client,
+          e.getClass(),
+          e.getMessage());
+    }
+  }
+
+  /** Replace the clients of the conversion, the same FdR1 client serves live and retries */
+  public static void setClientsForTest(
+      FdR1Client testFdR1Client,
+      AppInsightTelemetryClient testTelemetryClient,
+      ConversionLedger testConversionLedger) {
+    FDR1_CLIENTS.set(new FdR1Clients(testFdR1Client, testFdR1Client, null));
+    TELEMETRY_CLIENT.set(testTelemetryClient);
+    CONVERSION_LEDGER.set(testConversionLedger);
+  }
+
+  /** Replace the Table service, the dead-letter table client is taken from it again */
+  public static void setTableServiceClientForTest(TableServiceClient testTableServiceClient) {
+    TABLE_SERVICE_CLIENT.set(testTableServiceClient);
+    ERROR_TABLE_CLIENT.set(null);
+  }
+
+  private static FdR1Clients newFdR1Clients() {
+    FdR1ClientConfig fdR1ClientConfig =
+        ConversionMode.fromEnv() == ConversionMode.LOCAL
+            ? FdR1ClientConfig.fromEnv().toXmlUploadConfig()
+            : FdR1ClientConfig.fromEnv();
+    // a single budget shared by the blob trigger and the retry functions
+    FdR1RateLimiter rateLimiter = new FdR1RateLimiter(fdR1ClientConfig);
+    FdR1HttpClient http = new FdR1HttpClient(fdR1ClientConfig);
+    FdR1Client httpClient = new ResilientFdR1Client(http, fdR1ClientConfig, telemetryClient());
+    return new FdR1Clients(
+        conversionClient(rateLimiter.limit(httpClient, FdR1RateLimiter.Priority.LIVE)),
+        conversionClient(rateLimiter.limit(httpClient, FdR1RateLimiter.Priority.RETRY)),
+        http);
+  }
+
+  // the breaker and the limiters guard the HTTP calls only, a local conversion failure is not an FdR1 failure
+  private static FdR1Client conversionClient(FdR1Client httpClient) {
+    return ConversionMode.fromEnv() == ConversionMode.LOCAL
+        ? new LocalConversionFdR1Client(httpClient)
+        : httpClient;
+  }
+
+  // http is the bare connection pool, null when the clients are replaced by a test
+  private record FdR1Clients(FdR1Client live, FdR1Client retry, FdR1HttpClient http) {}
+
+  @FunctionalInterface
+  private interface WarmUpStep {
+    void run() throws Exception;
+  }
+}
@@ -1,16 +1,9 @@
 package it.gov.pagopa.fdr.conversion.client;
 
-import feign.Headers;
-import feign.Param;
-import feign.RequestLine;
+import java.io.InputStream;
 
 public interface FdR1Client {
 
-    // Call POST /convert/fdr3 with byte array
-    @RequestLine("POST /convert/fdr3")
-    @Headers({
-            "Content-Type: application/zip",
-            "Ocp-Apim-Subscription-Key: {subscriptionKey}"
-    })
-    void postConversion(@Param("subscriptionKey") String subscriptionKey, byte[] payload);
-}
\ No newline at end of file
+    // Call POST /convert/fdr3 streaming the gzip payload, the stream is read once and never buffered as a whole
+    void postConversion(String subscriptionKey, InputStream payload);
+}
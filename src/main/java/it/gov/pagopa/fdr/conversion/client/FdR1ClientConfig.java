@@ -0,0 +1,156 @@
+package it.gov.pagopa.fdr.conversion.client;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+
+/** Transport settings of the FdR1 client, read from the app settings */
+@Getter
+@Builder(toBuilder = true)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class FdR1ClientConfig {
+
+  public static final String BASE_URL = "FDR_FASE1_BASE_URL";
+  public static final String HTTP_VERSION = "FDR_FASE1_HTTP_VERSION";
+  public static final String CONNECT_TIMEOUT_MS = "FDR_FASE1_CONNECT_TIMEOUT_MS";
+  public static final String READ_TIMEOUT_MS = "FDR_FASE1_READ_TIMEOUT_MS";
+  public static final String DEADLINE_MS = "FDR_FASE1_DEADLINE_MS";
+  public static final String POOL_MAX_CONNECTIONS = "FDR_FASE1_POOL_MAX_CONNECTIONS";
+  public static final String POOL_KEEPALIVE_SECONDS = "FDR_FASE1_POOL_KEEPALIVE_SECONDS";
+  public static final String XML_UPLOAD_PATH = "FDR_FASE1_XML_PATH";
+  public static final String BREAKER_WINDOW = "FDR_FASE1_BREAKER_WINDOW";
+  public static final String BREAKER_FAILURE_RATE = "FDR_FASE1_BREAKER_FAILURE_RATE";
+  public static final String BREAKER_OPEN_SECONDS = "FDR_FASE1_BREAKER_OPEN_SECONDS";
+  public static final String BREAKER_HALF_OPEN_CALLS = "FDR_FASE1_BREAKER_HALF_OPEN_CALLS";
+  public static final String LIMIT_LATENCY_MS = "FDR_FASE1_LIMIT_LATENCY_MS";
+  public static final String RATE_LIMIT_RPS = "FDR_FASE1_RATE_LIMIT_RPS";
+  public static final String RATE_LIMIT_BYTES_PER_SECOND = "FDR_FASE1_RATE_LIMIT_BYTES_PER_SECOND";
+  public static final String RATE_LIMIT_LIVE_SHARE = "FDR_FASE1_RATE_LIMIT_LIVE_SHARE";
+
+  private final String baseUrl;
+
+  @Builder.Default private final String path = "/convert/fdr3";
+
+  @Builder.Default private final String contentType = "application/zip";
+
+  /** Content-Encoding of the request body, none if null */
+  private final String contentEncoding;
+
+  /** Path of the FdR1 endpoint receiving the XML flows produced by the local conversion */
+  private final String xmlUploadPath;
+
+  /** HTTP_2 is negotiated via ALPN and falls back to HTTP/1.1 if the gateway does not offer it */
+  @Builder.Default private final HttpClient.Version httpVersion = HttpClient.Version.HTTP_2;
+
+  /** Max time to establish the TCP/TLS connection */
+  @Builder.Default private final Duration connectTimeout = Duration.ofSeconds(5);
+
+  /** Max time from the start of the exchange to the response headers */
+  @Builder.Default private final Duration readTimeout = Duration.ofSeconds(60);
+
+  /** Max time of the whole call, upload and response body included */
+  @Builder.Default private final Duration deadline = Duration.ofSeconds(120);
+
+  /** Max connections kept in the pool and max calls in flight on this instance */
+  @Builder.Default private final int maxConnections = 16;
+
+  /** Idle time after which a pooled connection is closed */
+  @Builder.Default private final Duration keepAlive = Duration.ofSeconds(120);
+
+  /** Calls the circuit breaker failure rate is computed on */
+  @Builder.Default private final int breakerWindow = 20;
+
+  /** Failure rate percentage opening the circuit */
+  @Builder.Default private final int breakerFailureRate = 50;
+
+  /** Time the circuit stays open, calls fail fast meanwhile */
+  @Builder.Default private final Duration breakerOpenTime = Duration.ofSeconds(30);
+
+  /** Probe calls let through when the open time elapses */
+  @Builder.Default private final int breakerHalfOpenCalls = 2;
+
+  /**
+   * Time from the end of the upload to the response shrinking the concurrency limit, which grows
+   * back up to maxConnections
+   */
+  @Builder.Default private final Duration limitLatencyThreshold = Duration.ofSeconds(30);
+
+  /** Calls per second to FdR1 from this instance, unlimited if 0 */
+  private final double rateLimitRequestsPerSecond;
+
+  /** Payload bytes per second to FdR1 from this instance, unlimited if 0 */
+  private final long rateLimitBytesPerSecond;
+
+  /** Percentage of the rate budget reserved to the live traffic, the retries use the rest */
+  @Builder.Default private final int rateLimitLiveShare = 30;
+
+  public static FdR1ClientConfig fromEnv() {
+    return fromEnv(System.getenv());
+  }
+
+  static FdR1ClientConfig fromEnv(Map<String, String> env) {
+    FdR1ClientConfig defaults = FdR1ClientConfig.builder().build();
+    return FdR1ClientConfig.builder()
+        .baseUrl(env.get(BASE_URL))
+        .xmlUploadPath(env.get(XML_UPLOAD_PATH))
+        .httpVersion(
+            HttpClient.Version.valueOf(
+                env.getOrDefault(HTTP_VERSION, defaults.getHttpVersion().name())))
+        .connectTimeout(millis(env, CONNECT_TIMEOUT_MS, defaults.getConnectTimeout()))
+        .readTimeout(millis(env, READ_TIMEOUT_MS, defaults.getReadTimeout()))
+        .deadline(millis(env, DEADLINE_MS, defaults.getDeadline()))
+        .maxConnections(
+            Integer.parseInt(
+                env.getOrDefault(
+                    POOL_MAX_CONNECTIONS, String.valueOf(defaults.getMaxConnections()))))
+        .keepAlive(
+            Duration.ofSeconds(
+                Long.parseLong(
+                    env.getOrDefault(
+                        POOL_KEEPALIVE_SECONDS,
+                        String.valueOf(defaults.getKeepAlive().toSeconds())))))
+        .breakerWindow(integer(env, BREAKER_WINDOW, defaults.getBreakerWindow()))
+        .breakerFailureRate(integer(env, BREAKER_FAILURE_RATE, defaults.getBreakerFailureRate()))
+        .breakerOpenTime(
+            Duration.ofSeconds(
+                Long.parseLong(
+                    env.getOrDefault(
+                        BREAKER_OPEN_SECONDS,
+                        String.valueOf(defaults.getBreakerOpenTime().toSeconds())))))
+        .breakerHalfOpenCalls(
+            integer(env, BREAKER_HALF_OPEN_CALLS, defaults.getBreakerHalfOpenCalls()))
+        .limitLatencyThreshold(
+            millis(env, LIMIT_LATENCY_MS, defaults.getLimitLatencyThreshold()))
+        .rateLimitRequestsPerSecond(Double.parseDouble(env.getOrDefault(RATE_LIMIT_RPS, "0")))
+        .rateLimitBytesPerSecond(
+            Long.parseLong(env.getOrDefault(RATE_LIMIT_BYTES_PER_SECOND, "0")))
+        .rateLimitLiveShare(
+            integer(env, RATE_LIMIT_LIVE_SHARE, defaults.getRateLimitLiveShare()))
+        .build();
+  }
+
+  /** Same transport settings, targeting the upload of gzipped FdR1 XML flows */
+  public FdR1ClientConfig toXmlUploadConfig() {
+    if (xmlUploadPath == null) {
+      throw new IllegalStateException(XML_UPLOAD_PATH + " is required by the local conversion");
+    }
+    return toBuilder()
+        .path(xmlUploadPath)
+        .contentType("application/xml")
+        .contentEncoding("gzip")
+        .build();
+  }
+
+  private static int integer(Map<String, String> env, String key, int defaultValue) {
+    return Integer.parseInt(env.getOrDefault(key, String.valueOf(defaultValue)));
+  }
+
+  private static Duration millis(Map<String, String> env, String key, Duration defaultValue) {
+    String value = env.get(key);
+    return value == null ? defaultValue : Duration.ofMillis(Long.parseLong(value));
+  }
+}
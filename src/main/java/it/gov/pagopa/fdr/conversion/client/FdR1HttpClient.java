@@ -0,0 +1,184 @@
+package it.gov.pagopa.fdr.conversion.client;
+
+import feign.FeignException;
+import feign.Request;
+import feign.Response;
+import feign.RetryableException;
+import it.gov.pagopa.fdr.conversion.exception.InvalidFdr3FlowException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * FdR1 client on top of the JDK HttpClient. The payload is published straight from the source
+ * stream with chunked transfer encoding, so the heap never holds the whole flow. Non-2xx responses
+ * and I/O failures are mapped to {@link FeignException} to keep the error contract of the former
+ * Feign proxy.
+ *
+ * <p>A single instance must be shared: it owns the keep-alive pool, so TLS sessions to the
+ * gateway are reused across flows, and bounds the calls in flight to the pool size.
+ */
+public class FdR1HttpClient implements FdR1Client {
+
+  private static final String METHOD_KEY = "FdR1Client#postConversion(String,InputStream)";
+  private static final String POOL_SIZE_PROPERTY = "jdk.httpclient.connectionPoolSize";
+  private static final String KEEPALIVE_PROPERTY = "jdk.httpclient.keepalive.timeout";
+
+  private final HttpClient httpClient;
+  private final FdR1ClientConfig config;
+  private final URI uri;
+  private final Semaphore inFlight;
+
+  public FdR1HttpClient(String baseUrl) {
+    this(FdR1ClientConfig.builder().baseUrl(baseUrl).build());
+  }
+
+  public FdR1HttpClient(FdR1ClientConfig config) {
+    this(newHttpClient(config), config);
+  }
+
+  FdR1HttpClient(HttpClient httpClient, FdR1ClientConfig config) {
+    this.httpClient = httpClient;
+    this.config = config;
+    this.uri = URI.create(config.getBaseUrl() + config.getPath());
+    this.inFlight = new Semaphore(config.getMaxConnections(), true);
+  }
+
+  private static HttpClient newHttpClient(FdR1ClientConfig config) {
+    // The JDK pool is tuned through system properties, read once when the first client is built
+    setPropertyIfAbsent(POOL_SIZE_PROPERTY, String.valueOf(config.getMaxConnections()));
+    setPropertyIfAbsent(KEEPALIVE_PROPERTY, String.valueOf(config.getKeepAlive().toSeconds()));
+    return HttpClient.newBuilder()
+        .version(config.getHttpVersion())
+        .connectTimeout(config.getConnectTimeout())
+        .build();
+  }
+
+  private static void setPropertyIfAbsent(String key, String value) {
+    if (System.getProperty(key) == null) {
+      System.setProperty(key, value);
+    }
+  }
+
+  @Override
+  public void postConversion(String subscriptionKey, InputStream payload) {
+    HttpRequest.Builder builder =
+        HttpRequest.newBuilder(uri)
+            .timeout(config.getReadTimeout())
+            .header("Content-Type", config.getContentType())
+            // unknown length: the body is sent with Transfer-Encoding: chunked
+            .POST(HttpRequest.BodyPublishers.ofInputStream(() -> payload));
+    if (config.getContentEncoding() != null) {
+      builder.header("Content-Encoding", config.getContentEncoding());
+    }
+    if (subscriptionKey != null) {
+      builder.header("Ocp-Apim-Subscription-Key", subscriptionKey);
+    }
+
+    HttpResponse<byte[]> response = send(builder.build());
+    if (response.statusCode() / 100 != 2) {
+      throw FeignException.errorStatus(METHOD_KEY, toFeignResponse(response));
+    }
+  }
+
+  /**
+   * Open a pooled connection to FdR1 with a HEAD request, so the TLS handshake with the gateway is
+   * not paid by the first flow. The response status does not matter, the connection is kept alive
+   *
+   * @return the response status
+   */
+  public int prime() throws IOException {
+    HttpRequest request =
+        HttpRequest.newBuilder(uri)
+            .timeout(config.getReadTimeout())
+            .method("HEAD", HttpRequest.BodyPublishers.noBody())
+            .build();
+    try {
+      return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while priming the FdR1 connection", e);
+    }
+  }
+
+  private HttpResponse<byte[]> send(HttpRequest request) {
+    long deadline = System.nanoTime() + config.getDeadline().toNanos();
+    boolean acquired = false;
+    CompletableFuture<HttpResponse<byte[]>> future = null;
+    try {
+      acquired = inFlight.tryAcquire(config.getDeadline().toNanos(), TimeUnit.NANOSECONDS);
+      if (!acquired) {
+        throw retryable("No FdR1 connection available before the deadline", null);
+      }
+      future = httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+      return future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      future.cancel(true);
+      throw retryable("FdR1 call deadline exceeded", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      // the payload stream rejected the flow, FdR1 is not at fault
+      InvalidFdr3FlowException invalidFlow = invalidFlow(cause);
+      if (invalidFlow != null) {
+        throw invalidFlow;
+      }
+      if (cause instanceof IOException) {
+        throw retryable(cause.getMessage(), cause);
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new IllegalStateException(cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      if (future != null) {
+        future.cancel(true);
+      }
+      throw retryable("Interrupted", e);
+    } finally {
+      if (acquired) {
+        inFlight.release();
+      }
+    }
+  }
+
+  private static InvalidFdr3FlowException invalidFlow(Throwable failure) {
+    for (Throwable t = failure; t != null && t != t.getCause(); t = t.getCause()) {
+      if (t instanceof InvalidFdr3FlowException invalidFlow) {
+        return invalidFlow;
+      }
+    }
+    return null;
+  }
+
+  private RetryableException retryable(String message, Throwable cause) {
+    return new RetryableException(
+        -1, message, Request.HttpMethod.POST, cause, (Long) null, feignRequest());
+  }
+
+  private Request feignRequest() {
+    return Request.create(
+        Request.HttpMethod.POST, uri.toString(), Map.of(), Request.Body.empty(), null);
+  }
+
+  private Response toFeignResponse(HttpResponse<byte[]> response) {
+    Map<String, Collection<String>> headers = new HashMap<>(response.headers().map());
+    return Response.builder()
+        .status(response.statusCode())
+        .headers(headers)
+        .body(response.body())
+        .request(feignRequest())
+        .build();
+  }
+}
@@ -0,0 +1,114 @@
+package it.gov.pagopa.fdr.conversion.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests/s and bytes/s budget of the calls to FdR1, shared by every entry point of the instance.
+ * Live traffic (blob trigger) has a reserved share of the budget, the retries consume only what is
+ * left, so a retry-all drain cannot exhaust the subscription quota of the live flows. The bytes
+ * are taken while the payload is streamed, the flow is never read ahead. A zero budget is
+ * unlimited.
+ */
+public class FdR1RateLimiter {
+
+  public enum Priority {
+    LIVE,
+    RETRY
+  }
+
+  private final FdR1ClientConfig config;
+  private final TokenBucket requests;
+  private final TokenBucket bytes;
+
+  public FdR1RateLimiter(FdR1ClientConfig config) {
+    this.config = config;
+    this.requests =
+        config.getRateLimitRequestsPerSecond() > 0
+            ? new TokenBucket(
+                config.getRateLimitRequestsPerSecond(),
+                config.getRateLimitLiveShare(),
+                System::nanoTime)
+            : null;
+    this.bytes =
+        config.getRateLimitBytesPerSecond() > 0
+            ? new TokenBucket(
+                config.getRateLimitBytesPerSecond(), config.getRateLimitLiveShare(), System::nanoTime)
+            : null;
+  }
+
+  /**
+   * @return the client whose calls are charged to this budget with the given priority
+   */
+  public FdR1Client limit(FdR1Client delegate, Priority priority) {
+    boolean useReserve = priority == Priority.LIVE;
+    return (subscriptionKey, payload) -> {
+      if (requests != null && !acquire(requests, 1, useReserve)) {
+        throw ResilientFdR1Client.retryable(
+            config, "FdR1 rate limit reached before the deadline, call not performed");
+      }
+      delegate.postConversion(
+          subscriptionKey, bytes == null ? payload : new ThrottledInputStream(payload, useReserve));
+    };
+  }
+
+  private boolean acquire(TokenBucket bucket, long amount, boolean useReserve) {
+    long deadline = System.nanoTime() + config.getDeadline().toNanos();
+    try {
+      long wait;
+      while ((wait = bucket.tryAcquire(amount, useReserve)) > 0) {
+        if (System.nanoTime() + wait > deadline) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.sleep(wait);
+      }
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Charges the byte tokens of every chunk once read, before handing it over, so only the bytes the
+   * reads return are charged: short reads and the end of the stream cost nothing
+   */
+  private final class ThrottledInputStream extends FilterInputStream {
+
+    private final boolean useReserve;
+    private final int maxChunk;
+
+    private ThrottledInputStream(InputStream in, boolean useReserve) {
+      super(in);
+      this.useReserve = useReserve;
+      this.maxChunk = (int) Math.min(Integer.MAX_VALUE, bytes.maxAmount(useReserve));
+    }
+
+    @Override
+    public int read() throws IOException {
+      int read = super.read();
+      if (read >= 0) {
+        take(1);
+      }
+      return read;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, Math.min(len, maxChunk));
+      if (read > 0) {
+        take(read);
+      }
+      return read;
+    }
+
+    private void take(int amount) throws IOException {
+      if (!acquire(bytes, amount, useReserve)) {
+        throw new InterruptedIOException("FdR1 byte budget not available before the deadline");
+      }
+    }
+  }
+}
@@ -0,0 +1,164 @@
+package it.gov.pagopa.fdr.conversion.client;
+
+import feign.FeignException;
+import feign.Request;
+import feign.RetryableException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * FdR1 client guarded by a circuit breaker and an adaptive concurrency limit. While FdR1 is
+ * failing the calls fail fast with a {@link RetryableException}, without touching the network, so
+ * the function retries do not pile up on a degraded backend; while FdR1 is slow the calls in
+ * flight shrink. Only the failures of FdR1 count: timeouts, I/O errors, 429 and 5xx. A rejected
+ * flow (4xx) is a healthy answer.
+ *
+ * <p>The latency fed to the limit runs from the last read of the payload to the response: the
+ * upload is paced by the blob download, the normalization and the rate budget of this instance,
+ * so a large flow or a tight byte budget does not read as a slow FdR1.
+ */
+@Slf4j
+public class ResilientFdR1Client implements FdR1Client {
+
+  static final String METRIC_CIRCUIT_STATE = "FDR1_CIRCUIT_STATE";
+  static final String METRIC_CONCURRENCY_LIMIT = "FDR1_CONCURRENCY_LIMIT";
+
+  private final FdR1Client delegate;
+  private final FdR1ClientConfig config;
+  private final CircuitBreaker circuitBreaker;
+  private final AimdLimiter limiter;
+
+  /**
+   * @param delegate client performing the calls
+   * @param config breaker and limiter settings, the limit is bounded by the pool size
+   * @param telemetryClient receives the breaker state and the limit on every change
+   */
+  public ResilientFdR1Client(
+      FdR1Client delegate, FdR1ClientConfig config, AppInsightTelemetryClient telemetryClient) {
+    this.delegate = delegate;
+    this.config = config;
+    this.circuitBreaker =
+        new CircuitBreaker(
+            config.getBreakerWindow(),
+            config.getBreakerFailureRate(),
+            config.getBreakerOpenTime(),
+            config.getBreakerHalfOpenCalls(),
+            System::nanoTime,
+            state -> {
+              log.warn("[FdR1Client] Circuit {}", state);
+              telemetryClient.trackMetric(METRIC_CIRCUIT_STATE, state.ordinal());
+            });
+    this.limiter =
+        new AimdLimiter(
+            1,
+            config.getMaxConnections(),
+            config.getLimitLatencyThreshold(),
+            limit -> {
+              log.info("[FdR1Client] Concurrency limit {}", limit);
+              telemetryClient.trackMetric(METRIC_CONCURRENCY_LIMIT, limit);
+            });
+  }
+
+  @Override
+  public void postConversion(String subscriptionKey, InputStream payload) {
+    if (!circuitBreaker.tryAcquirePermission()) {
+      throw retryable("FdR1 circuit open, call not performed");
+    }
+    boolean acquired = false;
+    UploadTimedInputStream upload = new UploadTimedInputStream(payload);
+    boolean congested = false;
+    try {
+      acquired = limiter.acquire(config.getDeadline());
+      if (!acquired) {
+        throw retryable("FdR1 concurrency limit reached before the deadline");
+      }
+      upload.start();
+      delegate.postConversion(subscriptionKey, upload);
+    } catch (FeignException e) {
+      congested = isBackendFailure(e);
+      throw e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw retryable("Interrupted");
+    } finally {
+      if (!acquired) {
+        circuitBreaker.onCancelled();
+      } else {
+        limiter.release(System.nanoTime() - upload.getLastReadNanos(), congested);
+        if (congested) {
+          circuitBreaker.onFailure();
+        } else {
+          circuitBreaker.onSuccess();
+        }
+      }
+    }
+  }
+
+  public CircuitBreaker.State getCircuitState() {
+    return circuitBreaker.getState();
+  }
+
+  public int getConcurrencyLimit() {
+    return limiter.getLimit();
+  }
+
+  /** Payload recording when the transport last read it, the end of the upload once drained */
+  private static final class UploadTimedInputStream extends FilterInputStream {
+
+    private volatile long lastReadNanos = System.nanoTime();
+
+    UploadTimedInputStream(InputStream in) {
+      super(in);
+    }
+
+    void start() {
+      lastReadNanos = System.nanoTime();
+    }
+
+    long getLastReadNanos() {
+      return lastReadNanos;
+    }
+
+    @Override
+    public int read() throws IOException {
+      try {
+        return super.read();
+      } finally {
+        lastReadNanos = System.nanoTime();
+      }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      try {
+        return super.read(b, off, len);
+      } finally {
+        lastReadNanos = System.nanoTime();
+      }
+    }
+  }
+
+  static boolean isBackendFailure(FeignException e) {
+    return e.status() < 0 || e.status() == 429 || e.status() >= 500;
+  }
+
+  private RetryableException retryable(String message) {
+    return retryable(config, message);
+  }
+
+  /** Call not performed or failed before a response, retried by the function retry policy */
+  static RetryableException retryable(FdR1ClientConfig config, String message) {
+    Request request =
+        Request.create(
+            Request.HttpMethod.POST,
+            config.getBaseUrl() + config.getPath(),
+            Map.of(),
+            Request.Body.empty(),
+            null);
+    return new RetryableException(
+        -1, message, Request.HttpMethod.POST, (Throwable) null, (Long) null, request);
+  }
+}
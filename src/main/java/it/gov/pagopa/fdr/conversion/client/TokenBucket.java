@@ -0,0 +1,65 @@
+package it.gov.pagopa.fdr.conversion.client;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket refilled at a constant rate. Part of the capacity is reserved: callers without
+ * access to the reserve can take tokens only while the bucket holds more than the reserved amount,
+ * so they consume the leftover capacity and leave the reserve to the others.
+ */
+public class TokenBucket {
+
+  private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+  private final double tokensPerNano;
+  private final double capacity;
+  private final double reserved;
+  private final LongSupplier nanoTime;
+
+  private double tokens;
+  private long refilledAt;
+
+  /**
+   * @param tokensPerSecond refill rate
+   * @param reservedShare percentage of the rate reserved to the callers with access to the reserve
+   * @param nanoTime time source
+   */
+  public TokenBucket(double tokensPerSecond, int reservedShare, LongSupplier nanoTime) {
+    if (tokensPerSecond <= 0 || reservedShare < 0 || reservedShare >= 100) {
+      throw new IllegalArgumentException("Invalid token bucket settings");
+    }
+    this.tokensPerNano = tokensPerSecond / NANOS_PER_SECOND;
+    this.reserved = tokensPerSecond * reservedShare / 100;
+    // a second of burst on top of the reserve, at least one token for the unreserved callers
+    this.capacity = Math.max(tokensPerSecond, 1) + reserved;
+    this.nanoTime = nanoTime;
+    this.tokens = capacity;
+    this.refilledAt = nanoTime.getAsLong();
+  }
+
+  /**
+   * Take the tokens if available
+   *
+   * @param amount tokens to take, at most {@link #maxAmount(boolean)}
+   * @param useReserve true if the caller may take the reserved tokens
+   * @return 0 if the tokens have been taken, otherwise the nanoseconds to wait before they can be
+   */
+  public synchronized long tryAcquire(long amount, boolean useReserve) {
+    long now = nanoTime.getAsLong();
+    tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+    refilledAt = now;
+    double available = tokens - (useReserve ? 0 : reserved);
+    if (available >= amount) {
+      tokens -= amount;
+      return 0;
+    }
+    return (long) Math.ceil((amount - available) / tokensPerNano);
+  }
+
+  /**
+   * @return largest amount a single acquisition can take
+   */
+  public long maxAmount(boolean useReserve) {
+    return (long) (capacity - (useReserve ? 0 : reserved));
+  }
+}
@@ -0,0 +1,160 @@
+package it.gov.pagopa.fdr.conversion.converter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory pipe between one producer thread and one consumer thread, holding at most {@code
+ * maxChunks} chunks. Unlike the JDK piped streams it does not depend on the identity of the
+ * threads, which matters because the HTTP client reads the body from its own pool. A producer
+ * failure is reported to the consumer instead of a silent end of stream.
+ */
+class BoundedPipe {
+
+  private static final byte[] EOF = new byte[0];
+  private static final long OFFER_WAIT_MS = 100;
+
+  private final BlockingQueue<byte[]> chunks;
+  private final int chunkSize;
+  private volatile boolean readerClosed;
+  private volatile Throwable failure;
+
+  BoundedPipe(int chunkSize, int maxChunks) {
+    this.chunkSize = chunkSize;
+    this.chunks = new ArrayBlockingQueue<>(maxChunks);
+  }
+
+  /** Abort the pipe, the consumer gets an IOException with the failure as cause */
+  void fail(Throwable t) {
+    failure = t;
+    chunks.clear();
+    chunks.offer(EOF);
+  }
+
+  Throwable getFailure() {
+    return failure;
+  }
+
+  OutputStream sink() {
+    return new OutputStream() {
+      private byte[] buffer = new byte[chunkSize];
+      private int position;
+      private boolean closed;
+
+      @Override
+      public void write(int b) throws IOException {
+        if (position == buffer.length) {
+          push();
+        }
+        buffer[position++] = (byte) b;
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+          if (position == buffer.length) {
+            push();
+          }
+          int n = Math.min(len, buffer.length - position);
+          System.arraycopy(b, off, buffer, position, n);
+          position += n;
+          off += n;
+          len -= n;
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        if (closed || failure != null) {
+          return;
+        }
+        closed = true;
+        if (position > 0) {
+          push();
+        }
+        enqueue(EOF);
+      }
+
+      private void push() throws IOException {
+        byte[] chunk = position == buffer.length ? buffer : Arrays.copyOf(buffer, position);
+        enqueue(chunk);
+        buffer = new byte[chunkSize];
+        position = 0;
+      }
+    };
+  }
+
+  InputStream source() {
+    return new InputStream() {
+      private byte[] current = new byte[0];
+      private int position;
+      private boolean ended;
+
+      @Override
+      public int read() throws IOException {
+        byte[] one = new byte[1];
+        int n = read(one, 0, 1);
+        return n < 0 ? -1 : one[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+          return 0;
+        }
+        while (position == current.length) {
+          if (ended) {
+            return -1;
+          }
+          current = take();
+          position = 0;
+          if (current == EOF) {
+            ended = true;
+          }
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+      }
+
+      @Override
+      public void close() {
+        readerClosed = true;
+        chunks.clear();
+      }
+
+      private byte[] take() throws IOException {
+        try {
+          byte[] chunk = chunks.take();
+          if (failure != null) {
+            throw new IOException("Pipe producer failed", failure);
+          }
+          return chunk;
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while reading from pipe");
+        }
+      }
+    };
+  }
+
+  private void enqueue(byte[] chunk) throws IOException {
+    try {
+      do {
+        if (readerClosed) {
+          throw new IOException("Pipe closed by the consumer");
+        }
+      } while (!chunks.offer(chunk, OFFER_WAIT_MS, TimeUnit.MILLISECONDS));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while writing to pipe");
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package it.gov.pagopa.fdr.conversion.converter;
+
+import it.gov.pagopa.fdr.conversion.client.FdR1ClientConfig;
+import java.util.Map;
+
+/** Where the FdR3 to FdR1 conversion is performed, selected per deployment */
+public enum ConversionMode {
+  /** The gzipped FdR3 flow is sent to the FdR1 conversion endpoint */
+  REMOTE,
+  /**
+   * The FdR3 flow is converted in process and the FdR1 XML flow is sent to FdR1, to the path of
+   * FDR_FASE1_XML_PATH
+   */
+  LOCAL;
+
+  public static final String CONVERSION_MODE = "FDR_CONVERSION_MODE";
+
+  public static ConversionMode fromEnv() {
+    return fromEnv(System.getenv());
+  }
+
+  /**
+   * @throws IllegalStateException if LOCAL is selected without the path of the FdR1 endpoint
+   *     receiving the XML flows, so a half-configured instance fails before posting any flow
+   */
+  static ConversionMode fromEnv(Map<String, String> env) {
+    ConversionMode mode = ConversionMode.valueOf(env.getOrDefault(CONVERSION_MODE, REMOTE.name()));
+    String xmlUploadPath = env.get(FdR1ClientConfig.XML_UPLOAD_PATH);
+    if (mode == LOCAL && (xmlUploadPath == null || !xmlUploadPath.startsWith("/"))) {
+      throw new IllegalStateException(
+          CONVERSION_MODE
+              + "=LOCAL requires "
+              + FdR1ClientConfig.XML_UPLOAD_PATH
+              + ", the path of the FdR1 endpoint receiving the XML flows, found: "
+              + xmlUploadPath);
+    }
+    return mode;
+  }
+}
@@ -0,0 +1,171 @@
+package it.gov.pagopa.fdr.conversion.converter;
+
+import it.gov.pagopa.fdr.conversion.exception.InvalidFdr3FlowException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming validation of the FdR3 flow, with the same structure, required fields and totals rules
+ * of the local conversion: the JSON is parsed token by token and the FdR1 XML is discarded, so the
+ * memory used does not depend on the flow size.
+ *
+ * <p>{@link #validating(InputStream)} validates the gzipped flow while it is uploaded: the bytes
+ * read by the HTTP client are copied to a validator thread through a bounded pipe. An invalid flow
+ * fails the next read, so the upload is aborted before its end and FdR1 never receives a complete
+ * body.
+ */
+public class Fdr3FlowValidator {
+
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final int MAX_CHUNKS = 16;
+
+  private static final ExecutorService VALIDATORS =
+      Executors.newCachedThreadPool(
+          r -> {
+            Thread t = new Thread(r, "fdr3-validator");
+            t.setDaemon(true);
+            return t;
+          });
+
+  private final Fdr3ToFdr1XmlConverter converter = new Fdr3ToFdr1XmlConverter();
+
+  /**
+   * Validate a flow
+   *
+   * @param fdr3Json FdR3 flow as plain (not compressed) JSON
+   * @throws InvalidFdr3FlowException if the flow is malformed, truncated or inconsistent
+   */
+  public void validate(InputStream fdr3Json) throws IOException {
+    try {
+      converter.convert(fdr3Json, OutputStream.nullOutputStream());
+    } catch (InvalidFdr3FlowException e) {
+      throw e;
+    } catch (IOException e) {
+      // malformed or truncated JSON or gzip
+      throw new InvalidFdr3FlowException("Invalid FdR3 flow: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * @param gzipPayload gzipped FdR3 flow
+   * @return the same bytes, failing with {@link InvalidFdr3FlowException} as soon as the flow is
+   *     found invalid and at the latest in place of the end of stream
+   */
+  public InputStream validating(InputStream gzipPayload) {
+    return new ValidatingInputStream(gzipPayload);
+  }
+
+  private Void validateGzip(InputStream gzipFdr3) throws IOException {
+    try (InputStream in = gzipFdr3) {
+      GZIPInputStream json;
+      try {
+        // the parser closes its source, the pipe must stay open to be drained
+        json = new GZIPInputStream(new NonClosingInputStream(in), CHUNK_SIZE);
+      } catch (IOException e) {
+        throw new InvalidFdr3FlowException("Invalid FdR3 gzip: " + e.getMessage(), e);
+      }
+      validate(json);
+      // consume what follows the JSON, so the copy never blocks on a full pipe
+      in.transferTo(OutputStream.nullOutputStream());
+    }
+    return null;
+  }
+
+  private final class ValidatingInputStream extends FilterInputStream {
+
+    private final BoundedPipe pipe = new BoundedPipe(CHUNK_SIZE, MAX_CHUNKS);
+    private final OutputStream copy = pipe.sink();
+    private final Future<Void> validation;
+    private boolean ended;
+
+    private ValidatingInputStream(InputStream in) {
+      super(in);
+      this.validation = VALIDATORS.submit(() -> validateGzip(pipe.source()));
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] single = new byte[1];
+      int read = read(single, 0, 1);
+      return read < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (validation.isDone() && !ended) {
+        // the validator ended before the upload, only a failure gets here
+        awaitValidation();
+      }
+      int read = super.read(b, off, len);
+      if (read < 0) {
+        if (!ended) {
+          ended = true;
+          closeCopy();
+          awaitValidation();
+        }
+        return read;
+      }
+      try {
+        copy.write(b, off, read);
+      } catch (IOException e) {
+        // the validator closed the pipe: it failed
+        awaitValidation();
+        throw e;
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      // skipped bytes would not be validated
+      byte[] skipped = new byte[(int) Math.min(n, CHUNK_SIZE)];
+      int read = read(skipped, 0, skipped.length);
+      return Math.max(read, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!validation.isDone()) {
+        pipe.fail(new CancellationException("Upload closed before the end of the flow"));
+        validation.cancel(true);
+      }
+      super.close();
+    }
+
+    private void closeCopy() throws IOException {
+      try {
+        copy.close();
+      } catch (IOException e) {
+        // the validator closed the pipe, its outcome is checked next
+      }
+    }
+
+    private void awaitValidation() throws IOException {
+      try {
+        validation.get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof InvalidFdr3FlowException invalid) {
+          throw invalid;
+        }
+        throw new IOException("FdR3 validation failed", cause);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for the FdR3 validation", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,306 @@
+package it.gov.pagopa.fdr.conversion.converter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import it.gov.pagopa.fdr.conversion.exception.InvalidFdr3FlowException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAccessor;
+import java.util.HashMap;
+import java.util.Map;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Streaming converter from the FdR3 JSON flow to the FdR1 XML flow (FlussoRiversamento).
+ *
+ * <p>The JSON is read token by token and every payment is written as soon as it is parsed, so the
+ * memory used does not depend on the number of payments. The FdR1 header carries the totals before
+ * the payments, therefore the FdR3 totals must precede the payments array, as FdR3 serializes
+ * them. The declared totals are checked against the streamed payments at the end.
+ */
+public class Fdr3ToFdr1XmlConverter {
+
+  static final String FDR1_NAMESPACE = "http://www.digitpa.gov.it/schemas/2011/Pagamenti/";
+  static final ZoneId FDR1_ZONE = ZoneId.of("Europe/Rome");
+
+  private static final String FDR1_VERSION = "1.0";
+  private static final String RECEIVER_ID_TYPE = "G";
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+  private static final XMLOutputFactory XML_FACTORY = XMLOutputFactory.newFactory();
+  private static final DateTimeFormatter FDR1_DATE_TIME =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+  private static final Map<String, String> SENDER_ID_TYPES =
+      Map.of("LEGAL_PERSON", "G", "ABI_CODE", "A", "BIC_CODE", "B");
+  private static final Map<String, String> PAYMENT_OUTCOMES =
+      Map.of(
+          "EXECUTED", "0",
+          "REVOKED", "3",
+          "STAND_IN", "4",
+          "STAND_IN_NO_RPT", "8",
+          "NO_RPT", "9");
+
+  /**
+   * Convert an FdR3 flow
+   *
+   * @param fdr3Json FdR3 flow as plain (not compressed) JSON
+   * @param fdr1Xml destination of the FdR1 XML flow, not closed
+   * @throws InvalidFdr3FlowException if the flow cannot be converted because of its content
+   */
+  public void convert(InputStream fdr3Json, OutputStream fdr1Xml) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(fdr3Json)) {
+      XMLStreamWriter writer = XML_FACTORY.createXMLStreamWriter(fdr1Xml, "UTF-8");
+      convert(parser, writer);
+      writer.flush();
+      writer.close();
+    } catch (XMLStreamException e) {
+      throw new IOException("FdR1 XML write failed", e);
+    }
+  }
+
+  private void convert(JsonParser parser, XMLStreamWriter writer)
+      throws IOException, XMLStreamException {
+    expect(parser.nextToken(), JsonToken.START_OBJECT, "flow");
+    Map<String, String> header = new HashMap<>();
+    boolean paymentsWritten = false;
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      switch (field) {
+        case "sender", "receiver" -> readObject(parser, value, field + ".", header);
+        case "payments" -> {
+          expect(value, JsonToken.START_ARRAY, field);
+          writeHeader(writer, header);
+          writePayments(parser, writer, header);
+          paymentsWritten = true;
+        }
+        default -> {
+          if (value.isScalarValue()) {
+            header.put(field, parser.getValueAsString());
+          } else {
+            parser.skipChildren();
+          }
+        }
+      }
+    }
+    if (!paymentsWritten) {
+      throw new InvalidFdr3FlowException("FdR3 flow without payments");
+    }
+    writer.writeEndElement();
+    writer.writeEndDocument();
+  }
+
+  private void writeHeader(XMLStreamWriter writer, Map<String, String> header)
+      throws XMLStreamException {
+    writer.writeStartDocument("UTF-8", "1.0");
+    writer.writeStartElement("FlussoRiversamento");
+    writer.writeDefaultNamespace(FDR1_NAMESPACE);
+    element(writer, "versioneOggetto", FDR1_VERSION);
+    element(writer, "identificativoFlusso", required(header, "fdr"));
+    element(writer, "dataOraFlusso", dateTime(required(header, "fdrDate")));
+    element(writer, "identificativoUnivocoRegolamento", required(header, "regulation"));
+    element(writer, "dataRegolamento", date(required(header, "regulationDate")));
+
+    writer.writeStartElement("istitutoMittente");
+    writer.writeStartElement("identificativoUnivocoMittente");
+    element(writer, "tipoIdentificativoUnivoco", mapped(SENDER_ID_TYPES, header, "sender.type"));
+    element(writer, "codiceIdentificativoUnivoco", required(header, "sender.id"));
+    writer.writeEndElement();
+    optionalElement(writer, "denominazioneMittente", header.get("sender.pspName"));
+    writer.writeEndElement();
+
+    optionalElement(writer, "codiceBicBancaDiRiversamento", header.get("bicCodePouringBank"));
+
+    writer.writeStartElement("istitutoRicevente");
+    writer.writeStartElement("identificativoUnivocoRicevente");
+    element(writer, "tipoIdentificativoUnivoco", RECEIVER_ID_TYPE);
+    element(writer, "codiceIdentificativoUnivoco", required(header, "receiver.organizationId"));
+    writer.writeEndElement();
+    optionalElement(writer, "denominazioneRicevente", header.get("receiver.organizationName"));
+    writer.writeEndElement();
+
+    element(writer, "numeroTotalePagamenti", String.valueOf(declaredTotPayments(header)));
+    element(writer, "importoTotalePagamenti", amount(declaredSumPayments(header)));
+  }
+
+  private void writePayments(JsonParser parser, XMLStreamWriter writer, Map<String, String> header)
+      throws IOException, XMLStreamException {
+    long count = 0;
+    BigDecimal sum = BigDecimal.ZERO;
+    Map<String, String> payment = new HashMap<>();
+
+    JsonToken token;
+    while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+      payment.clear();
+      readObject(parser, token, "", payment);
+      BigDecimal pay = decimal(payment, "pay");
+
+      writer.writeStartElement("datiSingoliPagamenti");
+      element(writer, "identificativoUnivocoVersamento", required(payment, "iuv"));
+      element(writer, "identificativoUnivocoRiscossione", required(payment, "iur"));
+      element(writer, "indiceDatiSingoloPagamento", required(payment, "idTransfer"));
+      element(writer, "singoloImportoPagato", amount(pay));
+      element(
+          writer, "codiceEsitoSingoloPagamento", mapped(PAYMENT_OUTCOMES, payment, "payStatus"));
+      element(writer, "dataEsitoSingoloPagamento", date(required(payment, "payDate")));
+      writer.writeEndElement();
+
+      count++;
+      sum = sum.add(pay);
+    }
+
+    if (count != declaredTotPayments(header)) {
+      throw new InvalidFdr3FlowException(
+          String.format("Declared %d payments but found %d", declaredTotPayments(header), count));
+    }
+    if (sum.compareTo(declaredSumPayments(header)) != 0) {
+      throw new InvalidFdr3FlowException(
+          String.format("Declared payments sum %s but found %s", declaredSumPayments(header), sum));
+    }
+  }
+
+  /** Read the scalar fields of a flat object, nested objects are skipped */
+  private static void readObject(
+      JsonParser parser, JsonToken start, String prefix, Map<String, String> into)
+      throws IOException {
+    expect(start, JsonToken.START_OBJECT, prefix.isEmpty() ? "payment" : prefix);
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      if (value.isScalarValue()) {
+        into.put(prefix + field, parser.getValueAsString());
+      } else {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  private static long declaredTotPayments(Map<String, String> header) {
+    String total = header.getOrDefault("computedTotPayments", header.get("totPayments"));
+    if (total == null) {
+      throw new InvalidFdr3FlowException("Missing payments total before the payments list");
+    }
+    try {
+      return Long.parseLong(total);
+    } catch (NumberFormatException e) {
+      throw new InvalidFdr3FlowException("Invalid payments total " + total, e);
+    }
+  }
+
+  private static BigDecimal declaredSumPayments(Map<String, String> header) {
+    String sum = header.getOrDefault("computedSumPayments", header.get("sumPayments"));
+    if (sum == null) {
+      throw new InvalidFdr3FlowException("Missing payments sum before the payments list");
+    }
+    try {
+      return new BigDecimal(sum);
+    } catch (NumberFormatException e) {
+      throw new InvalidFdr3FlowException("Invalid payments sum " + sum, e);
+    }
+  }
+
+  private static BigDecimal decimal(Map<String, String> values, String key) {
+    try {
+      return new BigDecimal(required(values, key));
+    } catch (NumberFormatException e) {
+      throw new InvalidFdr3FlowException("Invalid amount in field " + key, e);
+    }
+  }
+
+  private static String dateTime(String value) {
+    return FDR1_DATE_TIME.format(localDateTime(value));
+  }
+
+  private static String date(String value) {
+    return localDateTime(value).toLocalDate().toString();
+  }
+
+  /**
+   * FdR3 dates come either as ISO strings or as epoch seconds with a decimal part for the nanos,
+   * FdR1 dates are local to Italy
+   */
+  static LocalDateTime localDateTime(String value) {
+    try {
+      if (value.indexOf('-') < 0) {
+        // FdR1 dates have no fraction of second, the nanos are dropped
+        long epochSeconds = new BigDecimal(value).longValue();
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSeconds), FDR1_ZONE);
+      }
+      if (value.length() == 10) {
+        return LocalDate.parse(value).atStartOfDay();
+      }
+      TemporalAccessor parsed =
+          DateTimeFormatter.ISO_DATE_TIME.parseBest(
+              value, OffsetDateTime::from, LocalDateTime::from);
+      LocalDateTime local =
+          parsed instanceof OffsetDateTime offsetDateTime
+              ? offsetDateTime.atZoneSameInstant(FDR1_ZONE).toLocalDateTime()
+              : (LocalDateTime) parsed;
+      return local.truncatedTo(ChronoUnit.SECONDS);
+    } catch (NumberFormatException | DateTimeParseException e) {
+      throw new InvalidFdr3FlowException("Invalid date " + value, e);
+    }
+  }
+
+  private static String amount(BigDecimal value) {
+    try {
+      return value.setScale(2, RoundingMode.UNNECESSARY).toPlainString();
+    } catch (ArithmeticException e) {
+      throw new InvalidFdr3FlowException("Amount with more than 2 decimals " + value, e);
+    }
+  }
+
+  private static String required(Map<String, String> values, String key) {
+    String value = values.get(key);
+    if (value == null || value.isEmpty()) {
+      throw new InvalidFdr3FlowException("Missing required field " + key);
+    }
+    return value;
+  }
+
+  private static String mapped(
+      Map<String, String> mapping, Map<String, String> values, String key) {
+    String value = required(values, key);
+    String code = mapping.get(value);
+    if (code == null) {
+      throw new InvalidFdr3FlowException("Unsupported value " + value + " in field " + key);
+    }
+    return code;
+  }
+
+  private static void expect(JsonToken actual, JsonToken expected, String what) {
+    if (actual != expected) {
+      throw new InvalidFdr3FlowException(
+          String.format("Unexpected %s for %s, expected %s", actual, what, expected));
+    }
+  }
+
+  private static void element(XMLStreamWriter writer, String name, String value)
+      throws XMLStreamException {
+    writer.writeStartElement(name);
+    writer.writeCharacters(value);
+    writer.writeEndElement();
+  }
+
+  private static void optionalElement(XMLStreamWriter writer, String name, String value)
+      throws XMLStreamException {
+    if (value != null && !value.isEmpty()) {
+      element(writer, name, value);
+    }
+  }
+}
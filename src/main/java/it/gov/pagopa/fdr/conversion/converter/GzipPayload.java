@@ -0,0 +1,224 @@
+package it.gov.pagopa.fdr.conversion.converter;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * FdR3 payload normalized to a single gzip layer, as FdR1 expects it. The format is sniffed from
+ * the magic bytes: a gzip payload is sent as is, a double-gzipped one is unwrapped once and a plain
+ * one is gzipped while it is read, without buffering the flow. The compression statistics are
+ * available once the payload has been read.
+ */
+public class GzipPayload extends FilterInputStream {
+
+  /** Format of the payload as found in the blob */
+  public enum Format {
+    GZIP,
+    DOUBLE_GZIP,
+    PLAIN
+  }
+
+  private static final int GZIP_MAGIC_0 = 0x1f;
+  private static final int GZIP_MAGIC_1 = 0x8b;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // outer gzip header plus the inflater input needed to read the first inner bytes
+  private static final int SNIFF_LIMIT = 8 * 1024;
+  private static final int DEFAULT_LEVEL =
+      Integer.parseInt(System.getenv().getOrDefault("FDR3_COMPRESSION_LEVEL", "6"));
+
+  private final Format format;
+  private final DeflatingInputStream deflating;
+  private final InputStream blob;
+
+  private GzipPayload(
+      InputStream in, Format format, DeflatingInputStream deflating, InputStream blob) {
+    super(in);
+    this.format = format;
+    this.deflating = deflating;
+    this.blob = blob;
+  }
+
+  /**
+   * Normalize a payload with the FDR3_COMPRESSION_LEVEL compression level
+   *
+   * @param payload FdR3 payload as stored in the blob
+   */
+  public static GzipPayload of(InputStream payload) throws IOException {
+    return of(payload, DEFAULT_LEVEL);
+  }
+
+  /**
+   * Normalize a payload
+   *
+   * @param payload FdR3 payload as stored in the blob
+   * @param level deflate level used for a plain payload, 1 (fastest) to 9 (smallest)
+   */
+  public static GzipPayload of(InputStream payload, int level) throws IOException {
+    BufferedInputStream buffered = new BufferedInputStream(payload, BUFFER_SIZE);
+    if (!startsWithGzipMagic(buffered)) {
+      DeflatingInputStream deflating = new DeflatingInputStream(buffered, level);
+      return new GzipPayload(deflating, Format.PLAIN, deflating, buffered);
+    }
+    buffered.mark(SNIFF_LIMIT);
+    GZIPInputStream inner = null;
+    try {
+      // GZIPInputStream reads the header in its constructor, two inner bytes need one input fill
+      inner = new GZIPInputStream(new NonClosingInputStream(buffered), 512);
+      byte[] innerMagic = inner.readNBytes(2);
+      if (isGzipMagic(innerMagic)) {
+        PushbackInputStream unwrapped = new PushbackInputStream(inner, innerMagic.length);
+        unwrapped.unread(innerMagic);
+        return new GzipPayload(unwrapped, Format.DOUBLE_GZIP, null, buffered);
+      }
+    } catch (IOException e) {
+      // not a valid gzip stream after all, sent as it is and left to FdR1 to reject
+    }
+    if (inner != null) {
+      // releases the sniffing inflater, the blob stays open
+      inner.close();
+    }
+    buffered.reset();
+    return new GzipPayload(buffered, Format.GZIP, null, buffered);
+  }
+
+  private static boolean startsWithGzipMagic(BufferedInputStream in) throws IOException {
+    in.mark(2);
+    byte[] magic = in.readNBytes(2);
+    in.reset();
+    return isGzipMagic(magic);
+  }
+
+  private static boolean isGzipMagic(byte[] magic) {
+    return magic.length == 2
+        && (magic[0] & 0xff) == GZIP_MAGIC_0
+        && (magic[1] & 0xff) == GZIP_MAGIC_1;
+  }
+
+  public Format getFormat() {
+    return format;
+  }
+
+  /** Bytes of the plain payload read so far, 0 if the payload was not compressed here */
+  public long getRawBytes() {
+    return deflating == null ? 0 : deflating.rawBytes;
+  }
+
+  /** Gzip bytes produced so far, 0 if the payload was not compressed here */
+  public long getCompressedBytes() {
+    return deflating == null ? 0 : deflating.compressedBytes;
+  }
+
+  /** Time spent compressing, 0 if the payload was not compressed here */
+  public long getCompressionNanos() {
+    return deflating == null ? 0 : deflating.compressionNanos;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      // the unwrapping inflater does not close the blob stream
+      blob.close();
+    }
+  }
+
+  /** Pull-based gzip compressor: the source is deflated as the stream is read */
+  private static final class DeflatingInputStream extends InputStream {
+
+    private static final byte[] HEADER = {
+      (byte) GZIP_MAGIC_0, (byte) GZIP_MAGIC_1, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    private final InputStream source;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] input = new byte[BUFFER_SIZE];
+    private byte[] trailer;
+    private int headerPosition;
+    private int trailerPosition;
+    private long rawBytes;
+    private long compressedBytes;
+    private long compressionNanos;
+
+    private DeflatingInputStream(InputStream source, int level) {
+      this.source = source;
+      this.deflater = new Deflater(level, true);
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] single = new byte[1];
+      int read = read(single, 0, 1);
+      return read < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (headerPosition < HEADER.length) {
+        int n = Math.min(len, HEADER.length - headerPosition);
+        System.arraycopy(HEADER, headerPosition, b, off, n);
+        headerPosition += n;
+        compressedBytes += n;
+        return n;
+      }
+      while (!deflater.finished()) {
+        if (deflater.needsInput()) {
+          int n = source.read(input);
+          if (n < 0) {
+            deflater.finish();
+          } else {
+            crc.update(input, 0, n);
+            rawBytes += n;
+            deflater.setInput(input, 0, n);
+          }
+        }
+        long start = System.nanoTime();
+        int deflated = deflater.deflate(b, off, len);
+        compressionNanos += System.nanoTime() - start;
+        if (deflated > 0) {
+          compressedBytes += deflated;
+          return deflated;
+        }
+      }
+      return readTrailer(b, off, len);
+    }
+
+    private int readTrailer(byte[] b, int off, int len) {
+      if (trailer == null) {
+        trailer = new byte[8];
+        writeIntLe(trailer, 0, crc.getValue());
+        writeIntLe(trailer, 4, rawBytes);
+      }
+      if (trailerPosition == trailer.length) {
+        return -1;
+      }
+      int n = Math.min(len, trailer.length - trailerPosition);
+      System.arraycopy(trailer, trailerPosition, b, off, n);
+      trailerPosition += n;
+      compressedBytes += n;
+      return n;
+    }
+
+    private static void writeIntLe(byte[] b, int off, long value) {
+      for (int i = 0; i < 4; i++) {
+        b[off + i] = (byte) (value >>> (8 * i));
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      deflater.end();
+      source.close();
+    }
+  }
+}
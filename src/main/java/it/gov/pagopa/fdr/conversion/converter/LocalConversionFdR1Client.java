@@ -0,0 +1,95 @@
+package it.gov.pagopa.fdr.conversion.converter;
+
+import it.gov.pagopa.fdr.conversion.client.FdR1Client;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * FdR1 client that converts the FdR3 flow in process. The gzipped FdR3 JSON is converted by a
+ * converter thread and the gzipped FdR1 XML is uploaded while it is being produced, through a
+ * bounded pipe: the memory used per flow is constant.
+ */
+public class LocalConversionFdR1Client implements FdR1Client {
+
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final int MAX_CHUNKS = 16;
+
+  private static final ExecutorService CONVERTERS =
+      Executors.newCachedThreadPool(
+          r -> {
+            Thread t = new Thread(r, "fdr-xml-converter");
+            t.setDaemon(true);
+            return t;
+          });
+
+  private final FdR1Client xmlUploader;
+  private final Fdr3ToFdr1XmlConverter converter;
+
+  /**
+   * @param xmlUploader client posting the gzipped FdR1 XML flow
+   */
+  public LocalConversionFdR1Client(FdR1Client xmlUploader) {
+    this.xmlUploader = xmlUploader;
+    this.converter = new Fdr3ToFdr1XmlConverter();
+  }
+
+  @Override
+  public void postConversion(String subscriptionKey, InputStream payload) {
+    BoundedPipe pipe = new BoundedPipe(CHUNK_SIZE, MAX_CHUNKS);
+    Future<Void> conversion = CONVERTERS.submit(() -> convert(payload, pipe));
+
+    try (InputStream xml = pipe.source()) {
+      xmlUploader.postConversion(subscriptionKey, xml);
+    } catch (IOException | RuntimeException e) {
+      // the upload failure is just the consequence of a conversion failure, if any
+      Throwable conversionFailure = pipe.getFailure();
+      conversion.cancel(true);
+      rethrow(conversionFailure);
+      rethrow(e);
+    }
+    try {
+      conversion.get();
+    } catch (ExecutionException e) {
+      rethrow(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the FdR1 XML conversion", e);
+    }
+  }
+
+  private Void convert(InputStream payload, BoundedPipe pipe) throws IOException {
+    try {
+      // the sink must be closed only on success, closing it marks the end of the XML flow
+      OutputStream xml = new GZIPOutputStream(pipe.sink(), CHUNK_SIZE);
+      converter.convert(new GZIPInputStream(payload, CHUNK_SIZE), xml);
+      xml.close();
+      return null;
+    } catch (IOException | RuntimeException | Error e) {
+      pipe.fail(e);
+      throw e;
+    }
+  }
+
+  private static void rethrow(Throwable failure) {
+    if (failure instanceof RuntimeException runtimeException) {
+      throw runtimeException;
+    }
+    if (failure instanceof Error error) {
+      throw error;
+    }
+    if (failure instanceof IOException ioException) {
+      throw new UncheckedIOException(ioException);
+    }
+    if (failure != null) {
+      throw new IllegalStateException(failure);
+    }
+  }
+}
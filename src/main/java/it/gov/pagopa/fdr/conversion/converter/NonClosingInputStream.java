@@ -0,0 +1,17 @@
+package it.gov.pagopa.fdr.conversion.converter;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+
+/** Keeps the underlying stream open when a decoder on top of it is closed */
+class NonClosingInputStream extends FilterInputStream {
+
+  NonClosingInputStream(InputStream in) {
+    super(in);
+  }
+
+  @Override
+  public void close() {
+    // the underlying stream is closed by its owner
+  }
+}
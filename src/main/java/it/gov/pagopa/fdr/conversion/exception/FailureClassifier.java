@@ -0,0 +1,54 @@
+package it.gov.pagopa.fdr.conversion.exception;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import feign.FeignException;
+import feign.RetryableException;
+import it.gov.pagopa.fdr.conversion.model.ErrorEnum;
+import java.util.Set;
+import java.util.zip.ZipException;
+
+/**
+ * Classify a conversion failure from the exception type and the FdR1 response status, walking the
+ * cause chain since the local conversion wraps the converter failures
+ */
+public class FailureClassifier {
+
+    // 4xx statuses that may succeed on a later attempt
+    private static final Set<Integer> TRANSIENT_CLIENT_STATUSES = Set.of(408, 425, 429);
+    private static final int MAX_CAUSE_DEPTH = 10;
+
+    private FailureClassifier() {}
+
+    public static ErrorEnum classify(Throwable failure) {
+        // an invalid flow aborts the upload, so it may be wrapped in an FdR1 call failure
+        Throwable current = failure;
+        for (int depth = 0; current != null && depth < MAX_CAUSE_DEPTH; depth++) {
+            if (current instanceof InvalidFdr3FlowException
+                    || current instanceof JsonProcessingException
+                    || current instanceof ZipException) {
+                return ErrorEnum.INVALID_FLOW;
+            }
+            current = current.getCause();
+        }
+        current = failure;
+        for (int depth = 0; current != null && depth < MAX_CAUSE_DEPTH; depth++) {
+            if (current instanceof FeignException feignException) {
+                return classify(feignException);
+            }
+            current = current.getCause();
+        }
+        return ErrorEnum.GENERIC_ERROR;
+    }
+
+    private static ErrorEnum classify(FeignException e) {
+        int status = e.status();
+        if (e instanceof RetryableException || status < 400 || status >= 500
+                || TRANSIENT_CLIENT_STATUSES.contains(status)) {
+            return ErrorEnum.HTTP_ERROR;
+        }
+        if (status == 401 || status == 403) {
+            return ErrorEnum.HTTP_AUTH_ERROR;
+        }
+        return ErrorEnum.HTTP_CLIENT_ERROR;
+    }
+}
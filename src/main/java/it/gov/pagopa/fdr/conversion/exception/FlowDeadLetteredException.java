@@ -0,0 +1,20 @@
+package it.gov.pagopa.fdr.conversion.exception;
+
+/**
+ * The conversion of a flow failed, on its last attempt or permanently, and the flow has been written
+ * to the dead-letter table, where the retry functions find it
+ */
+public class FlowDeadLetteredException extends RuntimeException {
+
+    private final boolean permanent;
+
+    public FlowDeadLetteredException(String blobName, Throwable cause, boolean permanent) {
+        super("Flow " + blobName + " dead-lettered, conversion failed: " + cause.getMessage(), cause);
+        this.permanent = permanent;
+    }
+
+    /** True if the failure is permanent and the flow has been dead-lettered before its last attempt */
+    public boolean isPermanent() {
+        return permanent;
+    }
+}
@@ -0,0 +1,15 @@
+package it.gov.pagopa.fdr.conversion.exception;
+
+/**
+ * The FdR3 flow content is malformed or inconsistent, retrying the same blob will always fail
+ */
+public class InvalidFdr3FlowException extends RuntimeException {
+
+    public InvalidFdr3FlowException(String message) {
+        super(message);
+    }
+
+    public InvalidFdr3FlowException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,9 @@
+package it.gov.pagopa.fdr.conversion.exception;
+
+/** The retry-all job has been resumed by another instance, this one must stop working on it */
+public class RetryJobLeaseLostException extends RuntimeException {
+
+    public RetryJobLeaseLostException(String jobId) {
+        super("Retry-all job " + jobId + " has been taken over by another instance");
+    }
+}
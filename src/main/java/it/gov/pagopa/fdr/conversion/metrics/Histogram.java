@@ -0,0 +1,144 @@
+package it.gov.pagopa.fdr.conversion.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values with log-linear buckets: exact up to 15, then 8
+ * buckets per power of two, so a percentile is within 12.5% of the recorded value. Recording is a
+ * handful of atomic increments, the interval is read and cleared by {@link #snapshotAndReset()}; a
+ * value recorded while the snapshot is taken may be counted in the next interval.
+ */
+public class Histogram {
+
+  private static final int LINEAR_BUCKETS = 16;
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int FIRST_EXPONENT = 4;
+  static final int BUCKETS = LINEAR_BUCKETS + (Long.SIZE - 1 - FIRST_EXPONENT) * SUB_BUCKETS;
+
+  private final String name;
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+  public Histogram(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Record a value
+   *
+   * @param value recorded value, negative values are recorded as 0
+   */
+  public void record(long value) {
+    long v = Math.max(0, value);
+    counts.incrementAndGet(bucket(v));
+    sum.add(v);
+    min.accumulateAndGet(v, Math::min);
+    max.accumulateAndGet(v, Math::max);
+  }
+
+  /** Read the values recorded since the previous snapshot and start a new interval */
+  public Snapshot snapshotAndReset() {
+    long[] intervalCounts = new long[BUCKETS];
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      intervalCounts[i] = counts.getAndSet(i, 0);
+      count += intervalCounts[i];
+    }
+    return new Snapshot(
+        name,
+        count,
+        sum.sumThenReset(),
+        min.getAndSet(Long.MAX_VALUE),
+        max.getAndSet(Long.MIN_VALUE),
+        intervalCounts);
+  }
+
+  static int bucket(long value) {
+    if (value < LINEAR_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return LINEAR_BUCKETS + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + subBucket;
+  }
+
+  // highest value falling in the bucket
+  static long upperBound(int bucket) {
+    if (bucket < LINEAR_BUCKETS) {
+      return bucket;
+    }
+    int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + FIRST_EXPONENT;
+    long subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+    long lowerBound = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    long width = 1L << (exponent - SUB_BUCKET_BITS);
+    return lowerBound + (width - 1);
+  }
+
+  /** Values recorded in one interval */
+  public static final class Snapshot {
+
+    private final String name;
+    private final long count;
+    private final long sum;
+    private final long min;
+    private final long max;
+    private final long[] counts;
+
+    private Snapshot(String name, long count, long sum, long min, long max, long[] counts) {
+      this.name = name;
+      this.count = count;
+      this.sum = sum;
+      this.min = min;
+      this.max = max;
+      this.counts = counts;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getSum() {
+      return sum;
+    }
+
+    public long getMin() {
+      return count == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+      return count == 0 ? 0 : max;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the value below which the given share of the interval values falls, 0 if empty
+     */
+    public long getPercentile(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return Math.min(Math.max(upperBound(i), getMin()), getMax());
+        }
+      }
+      return getMax();
+    }
+  }
+}
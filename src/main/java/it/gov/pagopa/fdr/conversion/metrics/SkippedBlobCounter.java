@@ -0,0 +1,32 @@
+package it.gov.pagopa.fdr.conversion.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Instance-wide counters of the blobs skipped because not marked for elaboration */
+public class SkippedBlobCounter {
+
+  private static final LongAdder SKIPPED_BLOBS = new LongAdder();
+  private static final LongAdder SKIPPED_BYTES = new LongAdder();
+
+  private SkippedBlobCounter() {}
+
+  /**
+   * Record a skipped blob
+   *
+   * @param bytes size of the blob content that has not been downloaded, negative if unknown
+   */
+  public static void record(long bytes) {
+    SKIPPED_BLOBS.increment();
+    if (bytes > 0) {
+      SKIPPED_BYTES.add(bytes);
+    }
+  }
+
+  public static long getSkippedBlobs() {
+    return SKIPPED_BLOBS.sum();
+  }
+
+  public static long getSkippedBytes() {
+    return SKIPPED_BYTES.sum();
+  }
+}
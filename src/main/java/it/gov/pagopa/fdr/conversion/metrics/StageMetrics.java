@@ -0,0 +1,179 @@
+package it.gov.pagopa.fdr.conversion.metrics;
+
+import it.gov.pagopa.fdr.conversion.client.AppInsightTelemetryClient;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Instance-wide histograms and counters of the conversion stages. Recording only updates memory,
+ * every flush interval the aggregates are sent to Application Insights as pre-aggregated metrics,
+ * which are not subject to the trace sampling of the host.
+ */
+@Slf4j
+public class StageMetrics {
+
+  public static final String BLOB_SIZE = "FDR3_BLOB_SIZE_BYTES";
+  public static final String FDR1_CALL_LATENCY = "FDR1_CALL_LATENCY_MS";
+  public static final String DEAD_LETTER_WRITE_LATENCY = "DEAD_LETTER_WRITE_LATENCY_MS";
+  public static final String RETRY_INDEX = "FDR3_RETRY_INDEX";
+  public static final String COMPRESSION_RATIO = "FDR3_COMPRESSION_RATIO_PERCENT";
+  public static final String COMPRESSION_TIME = "FDR3_COMPRESSION_TIME_MS";
+  public static final String PROCESSED_BLOBS = "FDR3_PROCESSED_BLOBS";
+  public static final String SKIPPED_BLOBS = "FDR3_SKIPPED_BLOBS";
+  public static final String PROCESSED_BYTES_PER_SECOND = "FDR3_PROCESSED_BYTES_PER_SECOND";
+
+  private static final double[] PERCENTILES = {50, 95, 99};
+  private static final Duration DEFAULT_FLUSH_INTERVAL =
+      Duration.ofSeconds(
+          Long.parseLong(System.getenv().getOrDefault("METRICS_FLUSH_INTERVAL_SECONDS", "60")));
+
+  private static final Histogram BLOB_SIZE_HISTOGRAM = new Histogram(BLOB_SIZE);
+  private static final Histogram FDR1_CALL_LATENCY_HISTOGRAM = new Histogram(FDR1_CALL_LATENCY);
+  private static final Histogram DEAD_LETTER_WRITE_LATENCY_HISTOGRAM =
+      new Histogram(DEAD_LETTER_WRITE_LATENCY);
+  private static final Histogram RETRY_INDEX_HISTOGRAM = new Histogram(RETRY_INDEX);
+  private static final Histogram COMPRESSION_RATIO_HISTOGRAM = new Histogram(COMPRESSION_RATIO);
+  private static final Histogram COMPRESSION_TIME_HISTOGRAM = new Histogram(COMPRESSION_TIME);
+  private static final List<Histogram> HISTOGRAMS =
+      List.of(
+          BLOB_SIZE_HISTOGRAM,
+          FDR1_CALL_LATENCY_HISTOGRAM,
+          DEAD_LETTER_WRITE_LATENCY_HISTOGRAM,
+          RETRY_INDEX_HISTOGRAM,
+          COMPRESSION_RATIO_HISTOGRAM,
+          COMPRESSION_TIME_HISTOGRAM);
+
+  private static final LongAdder PROCESSED = new LongAdder();
+  private static final LongAdder PROCESSED_BYTES = new LongAdder();
+  private static final LongAdder SKIPPED = new LongAdder();
+
+  private static ScheduledExecutorService publisher;
+  private static long lastFlushNanos = System.nanoTime();
+
+  private StageMetrics() {}
+
+  /**
+   * Record an invocation of the conversion
+   *
+   * @param bytes size of the blob, negative if unknown
+   * @param retryIndex retry index of the invocation, negative if not retried by the host
+   */
+  public static void recordReceived(long bytes, int retryIndex) {
+    if (bytes >= 0) {
+      BLOB_SIZE_HISTOGRAM.record(bytes);
+    }
+    RETRY_INDEX_HISTOGRAM.record(Math.max(0, retryIndex));
+  }
+
+  /** Record a blob skipped because not marked for elaboration */
+  public static void recordSkipped() {
+    SKIPPED.increment();
+  }
+
+  /**
+   * Record a blob converted by FdR1
+   *
+   * @param bytes size of the blob, negative if unknown
+   */
+  public static void recordProcessed(long bytes) {
+    PROCESSED.increment();
+    if (bytes > 0) {
+      PROCESSED_BYTES.add(bytes);
+    }
+  }
+
+  /** Record the duration of a call to FdR1, failed calls included */
+  public static void recordFdR1Call(long elapsedNanos) {
+    FDR1_CALL_LATENCY_HISTOGRAM.record(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+  }
+
+  /** Record the duration of a dead-letter write, failed writes included */
+  public static void recordDeadLetterWrite(long elapsedNanos) {
+    DEAD_LETTER_WRITE_LATENCY_HISTOGRAM.record(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+  }
+
+  /**
+   * Record a plain payload gzipped before the upload
+   *
+   * @param rawBytes plain payload size
+   * @param compressedBytes gzip size
+   * @param elapsedNanos time spent compressing
+   */
+  public static void recordCompression(long rawBytes, long compressedBytes, long elapsedNanos) {
+    if (rawBytes > 0) {
+      COMPRESSION_RATIO_HISTOGRAM.record(compressedBytes * 100 / rawBytes);
+    }
+    COMPRESSION_TIME_HISTOGRAM.record(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+  }
+
+  /**
+   * Start flushing the metrics every METRICS_FLUSH_INTERVAL_SECONDS, once per instance
+   *
+   * @param telemetryClient client receiving the metrics, read on every flush
+   */
+  public static synchronized void startPublishing(
+      Supplier<AppInsightTelemetryClient> telemetryClient) {
+    if (publisher != null) {
+      return;
+    }
+    publisher =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "stage-metrics-publisher");
+              thread.setDaemon(true);
+              return thread;
+            });
+    long interval = DEFAULT_FLUSH_INTERVAL.toMillis();
+    publisher.scheduleAtFixedRate(
+        () -> {
+          try {
+            flush(telemetryClient.get());
+          } catch (RuntimeException e) {
+            log.warn(
+                "[StageMetrics] Metrics flush failed, class = {}, message = {}",
+                e.getClass(),
+                e.getMessage());
+          }
+        },
+        interval,
+        interval,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Send the aggregates recorded since the previous flush and start a new interval. An empty
+   * histogram sends nothing, counters are always sent so that a quiet instance reports zero
+   */
+  static synchronized void flush(AppInsightTelemetryClient telemetryClient) {
+    long now = System.nanoTime();
+    double elapsedSeconds = Math.max(1e-3, (now - lastFlushNanos) / 1e9);
+    lastFlushNanos = now;
+
+    for (Histogram histogram : HISTOGRAMS) {
+      Histogram.Snapshot snapshot = histogram.snapshotAndReset();
+      if (snapshot.getCount() == 0) {
+        continue;
+      }
+      telemetryClient.trackAggregate(
+          snapshot.getName(),
+          snapshot.getSum(),
+          snapshot.getCount(),
+          snapshot.getMin(),
+          snapshot.getMax());
+      for (double percentile : PERCENTILES) {
+        telemetryClient.trackMetric(
+            snapshot.getName() + "_P" + (int) percentile, snapshot.getPercentile(percentile));
+      }
+    }
+    telemetryClient.trackMetric(PROCESSED_BLOBS, PROCESSED.sumThenReset());
+    telemetryClient.trackMetric(SKIPPED_BLOBS, SKIPPED.sumThenReset());
+    telemetryClient.trackMetric(
+        PROCESSED_BYTES_PER_SECOND, PROCESSED_BYTES.sumThenReset() / elapsedSeconds);
+  }
+}
@@ -2,15 +2,31 @@ package it.gov.pagopa.fdr.conversion.model;
 
 import lombok.*;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 
+/**
+ * Blob fetched with a single download: metadata and ETag come with the first block of the content,
+ * the remaining blocks are streamed while reading. Must be closed if the content is not consumed.
+ */
 @Builder(toBuilder = true)
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
-public class BlobData {
+public class BlobData implements Closeable {
     private String fileName;
-    private byte[] content;
+    private InputStream content;
+    private long contentLength;
+    private String eTag;
     private Map<String, String> metadata;
-}
\ No newline at end of file
+
+    @Override
+    public void close() throws IOException {
+        if (content != null) {
+            content.close();
+        }
+    }
+}
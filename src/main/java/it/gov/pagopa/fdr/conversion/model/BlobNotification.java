@@ -0,0 +1,19 @@
+package it.gov.pagopa.fdr.conversion.model;
+
+import lombok.*;
+
+/** Notification of a new FdR3 flow blob, received by the batch consumer */
+@Getter
+@Builder(toBuilder = true)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@ToString
+public class BlobNotification {
+
+    /** Id of the message, unique within the source */
+    private String messageId;
+    private String blobName;
+    /** Deliveries of the message so far, this one included */
+    private int deliveryCount;
+    /** True if the source does not deliver the message again after a failure */
+    private boolean lastDelivery;
+}
@@ -0,0 +1,26 @@
+package it.gov.pagopa.fdr.conversion.model;
+
+import lombok.*;
+
+/** Outcome of the conversion of the blob of a single notification */
+@Getter
+@Builder(toBuilder = true)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@ToString
+public class BlobNotificationResult {
+
+    public enum Outcome {
+        /** Converted, or already converted before */
+        CONVERTED,
+        /** Not marked for elaboration, or dead-lettered as a permanent failure */
+        SKIPPED,
+        /** Blob missing or conversion failed, dead-lettered on the last delivery */
+        FAILED
+    }
+
+    private BlobNotification notification;
+    private Outcome outcome;
+    private String error;
+    /** True if the failed flow has been written to the dead-letter table */
+    private boolean deadLettered;
+}
@@ -0,0 +1,91 @@
+package it.gov.pagopa.fdr.conversion.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import lombok.*;
+
+/**
+ * Selection of the dead-letter entities to retry, pushed down to the Table service as an OData
+ * filter. Partition keys are the insertion days, so a day range only reads the matching partitions.
+ */
+@Getter
+@Builder(toBuilder = true)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class DeadLetterFilter {
+
+    public static final String FROM_DAY = "fromDay";
+    public static final String TO_DAY = "toDay";
+    public static final String ERROR_TYPE = "errorType";
+    public static final String CREATED_AFTER = "createdAfter";
+    public static final String CREATED_BEFORE = "createdBefore";
+    // created is written as a LocalDateTime, which the SDK stores as UTC
+    private static final DateTimeFormatter ODATA_DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
+
+    /** First insertion day, inclusive */
+    private LocalDate fromDay;
+    /** Last insertion day, inclusive */
+    private LocalDate toDay;
+    private ErrorEnum errorType;
+    /** Dead-letter write time lower bound, inclusive */
+    private LocalDateTime createdAfter;
+    /** Dead-letter write time upper bound, exclusive */
+    private LocalDateTime createdBefore;
+
+    /**
+     * Build the filter from the query parameters of a retry request
+     *
+     * @throws IllegalArgumentException if a parameter is malformed
+     */
+    public static DeadLetterFilter fromQueryParameters(Map<String, String> parameters) {
+        return DeadLetterFilter.builder()
+                .fromDay(parse(parameters, FROM_DAY, LocalDate::parse))
+                .toDay(parse(parameters, TO_DAY, LocalDate::parse))
+                .errorType(parse(parameters, ERROR_TYPE, ErrorEnum::valueOf))
+                .createdAfter(parse(parameters, CREATED_AFTER, LocalDateTime::parse))
+                .createdBefore(parse(parameters, CREATED_BEFORE, LocalDateTime::parse))
+                .build();
+    }
+
+    /**
+     * @return the OData filter expression, null if the whole table is selected
+     */
+    public String toOData() {
+        List<String> conditions = new ArrayList<>();
+        if (fromDay != null) {
+            conditions.add(String.format("PartitionKey ge '%s'", fromDay));
+        }
+        if (toDay != null) {
+            conditions.add(String.format("PartitionKey le '%s'", toDay));
+        }
+        if (errorType != null) {
+            conditions.add(String.format("%s eq '%s'", ErrorTableColumns.COLUMN_FIELD_ERROR_TYPE, errorType.name()));
+        }
+        if (createdAfter != null) {
+            conditions.add(String.format("%s ge datetime'%s'",
+                    ErrorTableColumns.COLUMN_FIELD_CREATED, ODATA_DATE_TIME.format(createdAfter)));
+        }
+        if (createdBefore != null) {
+            conditions.add(String.format("%s lt datetime'%s'",
+                    ErrorTableColumns.COLUMN_FIELD_CREATED, ODATA_DATE_TIME.format(createdBefore)));
+        }
+        return conditions.isEmpty() ? null : String.join(" and ", conditions);
+    }
+
+    private static <T> T parse(Map<String, String> parameters, String name, Function<String, T> parser) {
+        String value = parameters.get(name);
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return parser.apply(value);
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Invalid %s: %s", name, value), e);
+        }
+    }
+}
@@ -1,6 +1,26 @@
 package it.gov.pagopa.fdr.conversion.model;
 
+/**
+ * Type of a conversion failure, recorded in the dead-letter table. Permanent failures will fail
+ * again on every retry of the same blob and are sent to the dead-letter table at once
+ */
 public enum ErrorEnum {
-    GENERIC_ERROR,
-    HTTP_ERROR;
+    GENERIC_ERROR(false),
+    HTTP_ERROR(false),
+    // 4xx response from FdR1 rejecting the flow
+    HTTP_CLIENT_ERROR(true),
+    // 401/403 response from FdR1, the subscription key must be fixed before retrying
+    HTTP_AUTH_ERROR(true),
+    // the FdR3 flow is malformed or inconsistent
+    INVALID_FLOW(true);
+
+    private final boolean permanent;
+
+    ErrorEnum(boolean permanent) {
+        this.permanent = permanent;
+    }
+
+    public boolean isPermanent() {
+        return permanent;
+    }
 }
@@ -0,0 +1,32 @@
+package it.gov.pagopa.fdr.conversion.model;
+
+import java.util.Collection;
+import java.util.List;
+import lombok.*;
+
+/** Aggregated outcome of a retry-all run, failures are listed one by one */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class RetryAllReport {
+
+    private long total;
+    private long processed;
+    private long skipped;
+    private long failed;
+    private List<RetryResult> failures;
+
+    public static RetryAllReport of(Collection<RetryResult> results) {
+        List<RetryResult> failures = results.stream()
+                .filter(r -> r.getOutcome() == RetryResult.Outcome.FAILED)
+                .toList();
+        long processed = results.stream()
+                .filter(r -> r.getOutcome() == RetryResult.Outcome.PROCESSED)
+                .count();
+        return new RetryAllReport(
+                results.size(),
+                processed,
+                results.size() - processed - failures.size(),
+                failures.size(),
+                failures);
+    }
+}
@@ -0,0 +1,37 @@
+package it.gov.pagopa.fdr.conversion.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+
+/** Progress of a background retry-all job, checkpointed after every dead-letter page */
+@Getter
+@Builder(toBuilder = true)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RetryJob {
+
+    public enum Status {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private String jobId;
+    private Status status;
+    /** OData filter of the dead-letter entities to retry, null for the whole table */
+    private String filter;
+    /** Continuation token of the first page not retried yet, null before the first page */
+    private String continuationToken;
+    /** True once the last page has been checkpointed, a resumed job only has to complete */
+    private boolean drained;
+    private long processed;
+    private long succeeded;
+    private long skipped;
+    private long failed;
+    private double throughputPerSecond;
+    /** ISO-8601 instants */
+    private String startedAt;
+    private String updatedAt;
+    private String error;
+    private String eTag;
+}
@@ -0,0 +1,27 @@
+package it.gov.pagopa.fdr.conversion.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+
+/** Outcome of the retry of a single dead-letter entity */
+@Getter
+@Builder(toBuilder = true)
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RetryResult {
+
+    public enum Outcome {
+        /** Converted and removed from the dead-letter table */
+        PROCESSED,
+        /** Not marked for elaboration, left in the dead-letter table */
+        SKIPPED,
+        /** Blob missing or conversion failed, left in the dead-letter table */
+        FAILED
+    }
+
+    private String partitionKey;
+    private String rowKey;
+    private String blobName;
+    private Outcome outcome;
+    private String error;
+}
@@ -0,0 +1,80 @@
+package it.gov.pagopa.fdr.conversion.retry;
+
+import static it.gov.pagopa.fdr.conversion.util.StorageAccountUtil.removeEntity;
+
+import com.azure.data.tables.models.TableEntity;
+import it.gov.pagopa.fdr.conversion.FdrConversionBlobTrigger;
+import it.gov.pagopa.fdr.conversion.model.BlobData;
+import it.gov.pagopa.fdr.conversion.model.ErrorTableColumns;
+import it.gov.pagopa.fdr.conversion.model.RetryResult;
+import it.gov.pagopa.fdr.conversion.util.StorageAccountUtil;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+
+/** Retry of a single dead-letter table entity */
+@Slf4j
+public class DeadLetterRetrier {
+
+  private final FdrConversionBlobTrigger processor;
+
+  public DeadLetterRetrier(FdrConversionBlobTrigger processor) {
+    this.processor = processor;
+  }
+
+  /**
+   * Retry the conversion of the blob of a dead-letter entity, removing the entity on success. Run
+   * by background jobs, after the invocation that started them returned
+   *
+   * @param invocationId id of the invocation that started the retry
+   * @return the outcome, failures are reported and never thrown
+   */
+  public RetryResult retry(TableEntity e, String invocationId) {
+    Map<String, Object> properties = e.getProperties();
+    String blobName = (String) properties.get(ErrorTableColumns.COLUMN_FIELD_BLOB);
+    RetryResult.RetryResultBuilder result =
+        RetryResult.builder()
+            .partitionKey(e.getPartitionKey())
+            .rowKey(e.getRowKey())
+            .blobName(blobName);
+    try {
+      BlobData blobData = StorageAccountUtil.getBlobContent(blobName);
+      if (blobData == null) {
+        log.error(
+            "[fn=ErrorRetryAllFunction][id={}] Blob not found, PartitionKey = {}, RowKey = {}, blobName = {}",
+            invocationId,
+            e.getPartitionKey(),
+            e.getRowKey(),
+            blobName);
+        return result.outcome(RetryResult.Outcome.FAILED).error("Blob not found").build();
+      }
+
+      boolean processed;
+      try (blobData) {
+        processed = this.processor.process(blobData, invocationId);
+      }
+      if (processed) removeEntity(invocationId, blobData.getMetadata());
+
+      log.info(
+          "[fn=ErrorRetryAllFunction][id={}] Retry table entity processed = {}, PartitionKey = {}, RowKey = {}, Properties = {}, blobName = {}",
+          invocationId,
+          processed,
+          e.getPartitionKey(),
+          e.getRowKey(),
+          properties,
+          blobName);
+      return result
+          .outcome(processed ? RetryResult.Outcome.PROCESSED : RetryResult.Outcome.SKIPPED)
+          .build();
+    } catch (Exception ex) {
+      log.error(
+          "[Exception][id={}] Retry of table entity failed, PartitionKey = {}, RowKey = {}, blobName = {}, class = {}, message = {}",
+          invocationId,
+          e.getPartitionKey(),
+          e.getRowKey(),
+          blobName,
+          ex.getClass(),
+          ex.getMessage());
+      return result.outcome(RetryResult.Outcome.FAILED).error(ex.getMessage()).build();
+    }
+  }
+}
@@ -0,0 +1,189 @@
+package it.gov.pagopa.fdr.conversion.retry;
+
+import com.azure.core.http.rest.PagedFlux;
+import com.azure.core.http.rest.PagedResponse;
+import com.azure.data.tables.TableAsyncClient;
+import com.azure.data.tables.models.TableEntity;
+import it.gov.pagopa.fdr.conversion.FdrConversionBlobTrigger;
+import it.gov.pagopa.fdr.conversion.client.ClientRegistry;
+import it.gov.pagopa.fdr.conversion.client.FdR1ClientConfig;
+import it.gov.pagopa.fdr.conversion.model.BlobData;
+import it.gov.pagopa.fdr.conversion.model.ErrorTableColumns;
+import it.gov.pagopa.fdr.conversion.model.RetryResult;
+import it.gov.pagopa.fdr.conversion.util.StorageAccountUtil;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Drains the dead-letter table on the non-blocking Table client. Entities are streamed page by page
+ * as they are consumed and deleted without holding a thread while waiting, so thousands of retries
+ * run on the event loop threads plus the FdR1 workers.
+ *
+ * <p>At most {@code concurrency} entities of a page are retried at the same time, and the next
+ * page is retried while the previous one completes: at most two pages of entities are in memory.
+ * Each blob is streamed from the storage to FdR1 on an FdR1 worker, as by the blob trigger, so the
+ * downloads are bounded by the workers and no blob is ever held in memory. The FdR1 call goes
+ * through the blocking retry client, which normalizes and validates the flow and applies the
+ * breaker and the rate budget, on workers bounded by the FdR1 pool size, since further calls would
+ * wait for a pooled connection anyway.
+ */
+@Slf4j
+public class ReactiveDeadLetterDrain {
+
+  public static final String CONCURRENCY = "RETRY_DRAIN_CONCURRENCY";
+  private static final int DEFAULT_CONCURRENCY = 32;
+  private static final int PAGES_IN_FLIGHT = 2;
+
+  private final TableAsyncClient deadLetterTable;
+  private final Function<String, BlobData> blobs;
+  private final FdrConversionBlobTrigger processor;
+  private final int concurrency;
+  private final Scheduler fdR1Workers;
+
+  /**
+   * @param deadLetterTable dead-letter table
+   * @param blobs opens the FdR3 flow blob of a name with its ETag and streamed content, null if it
+   *     does not exist
+   * @param processor conversion of a blob
+   * @param concurrency max number of entities of a page retried at the same time
+   * @param fdR1Workers scheduler running the FdR1 calls
+   */
+  public ReactiveDeadLetterDrain(
+      TableAsyncClient deadLetterTable,
+      Function<String, BlobData> blobs,
+      FdrConversionBlobTrigger processor,
+      int concurrency,
+      Scheduler fdR1Workers) {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("Drain concurrency must be positive: " + concurrency);
+    }
+    this.deadLetterTable = deadLetterTable;
+    this.blobs = blobs;
+    this.processor = processor;
+    this.concurrency = concurrency;
+    this.fdR1Workers = fdR1Workers;
+  }
+
+  public static ReactiveDeadLetterDrain fromEnv(FdrConversionBlobTrigger processor) {
+    int concurrency =
+        Integer.parseInt(
+            System.getenv().getOrDefault(CONCURRENCY, String.valueOf(DEFAULT_CONCURRENCY)));
+    return new ReactiveDeadLetterDrain(
+        ClientRegistry.errorTableAsyncClient(),
+        StorageAccountUtil::getBlobContent,
+        processor,
+        concurrency,
+        Schedulers.newBoundedElastic(
+            FdR1ClientConfig.fromEnv().getMaxConnections(),
+            Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE,
+            "fdr-retry-drain",
+            60,
+            true));
+  }
+
+  /**
+   * Retry the dead-letter entities selected by the filter, from the page of the continuation token.
+   * Results are handed to the listener page by page, in page order, and not retained. A listener
+   * failure cancels the drain and is emitted as its error.
+   *
+   * @param filter OData filter of the entities, null for the whole table
+   * @param continuationToken page to start from, null for the first one
+   * @param listener checkpoint invoked once per completed page, off the event loop
+   * @param invocationId id of the invocation that started the drain, which has returned meanwhile
+   * @return completes when the last page has been checkpointed
+   */
+  public Mono<Void> drain(
+      String filter,
+      String continuationToken,
+      RetryAllExecutor.PageListener listener,
+      String invocationId) {
+    PagedFlux<TableEntity> entities =
+        deadLetterTable.listEntities(StorageAccountUtil.retryListOptions(filter));
+    Flux<PagedResponse<TableEntity>> pages =
+        continuationToken == null ? entities.byPage() : entities.byPage(continuationToken);
+    return pages
+        .flatMapSequential(page -> retryPage(page, invocationId), PAGES_IN_FLIGHT, 1)
+        // the checkpoint writes the job with the blocking table client
+        .publishOn(Schedulers.boundedElastic(), 1)
+        .doOnNext(page -> listener.onPageCompleted(page.continuationToken(), page.results()))
+        .then();
+  }
+
+  private Mono<CompletedPage> retryPage(PagedResponse<TableEntity> page, String invocationId) {
+    String nextToken = page.getContinuationToken();
+    return Flux.fromIterable(page.getElements())
+        .flatMap(entity -> retry(entity, invocationId), concurrency)
+        .collectList()
+        .map(results -> new CompletedPage(nextToken, results));
+  }
+
+  /**
+   * Stream the blob of the entity to FdR1 on an FdR1 worker and delete the entity on success
+   *
+   * @return the outcome, failures are reported and never emitted as errors
+   */
+  Mono<RetryResult> retry(TableEntity entity, String invocationId) {
+    String blobName = (String) entity.getProperty(ErrorTableColumns.COLUMN_FIELD_BLOB);
+    RetryResult.RetryResultBuilder result =
+        RetryResult.builder()
+            .partitionKey(entity.getPartitionKey())
+            .rowKey(entity.getRowKey())
+            .blobName(blobName);
+    return Mono.fromCallable(() -> convert(blobName, invocationId))
+        .subscribeOn(fdR1Workers)
+        .flatMap(
+            processed ->
+                processed
+                    ? deadLetterTable
+                        .deleteEntity(entity.getPartitionKey(), entity.getRowKey())
+                        .thenReturn(result.outcome(RetryResult.Outcome.PROCESSED).build())
+                    : Mono.just(result.outcome(RetryResult.Outcome.SKIPPED).build()))
+        .doOnNext(
+            r ->
+                log.info(
+                    "[fn=ErrorRetryAllFunction][id={}] Retry table entity drained, outcome = {}, PartitionKey = {}, RowKey = {}, blobName = {}",
+                    invocationId,
+                    r.getOutcome(),
+                    entity.getPartitionKey(),
+                    entity.getRowKey(),
+                    blobName))
+        .onErrorResume(e -> Mono.just(failed(result, entity, blobName, e, invocationId)));
+  }
+
+  // the flow is keyed by its ETag in the conversion ledger, as by the blob trigger and the retrier
+  private boolean convert(String blobName, String invocationId) throws IOException {
+    BlobData blobData = blobs.apply(blobName);
+    if (blobData == null) {
+      throw new FileNotFoundException("Blob not found");
+    }
+    try (blobData) {
+      return processor.process(blobData, invocationId);
+    }
+  }
+
+  private static RetryResult failed(
+      RetryResult.RetryResultBuilder result,
+      TableEntity entity,
+      String blobName,
+      Throwable e,
+      String invocationId) {
+    log.error(
+        "[Exception][id={}] Drain of table entity failed, PartitionKey = {}, RowKey = {}, blobName = {}, class = {}, message = {}",
+        invocationId,
+        entity.getPartitionKey(),
+        entity.getRowKey(),
+        blobName,
+        e.getClass(),
+        e.getMessage());
+    return result.outcome(RetryResult.Outcome.FAILED).error(e.getMessage()).build();
+  }
+
+  private record CompletedPage(String continuationToken, List<RetryResult> results) {}
+}
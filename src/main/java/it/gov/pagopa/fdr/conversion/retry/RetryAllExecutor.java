@@ -0,0 +1,168 @@
+package it.gov.pagopa.fdr.conversion.retry;
+
+import com.azure.core.http.rest.PagedResponse;
+import com.azure.data.tables.models.TableEntity;
+import it.gov.pagopa.fdr.conversion.model.RetryAllReport;
+import it.gov.pagopa.fdr.conversion.model.RetryResult;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+
+/**
+ * Drains the dead-letter table with a bounded number of concurrent retries. The next page is
+ * fetched while the entities of the current one are being retried, and each entity produces its
+ * own {@link RetryResult}, so a single failure never aborts the run.
+ */
+public class RetryAllExecutor {
+
+  public static final String PARALLELISM = "RETRY_ALL_PARALLELISM";
+  private static final int DEFAULT_PARALLELISM = 8;
+
+  private final int parallelism;
+  private final Executor workers;
+  private final Executor prefetcher;
+
+  /**
+   * @param parallelism max number of entities retried at the same time
+   * @param workers executor running the retries, it should provide at least {@code parallelism}
+   *     threads
+   * @param prefetcher executor fetching the pages
+   */
+  public RetryAllExecutor(int parallelism, Executor workers, Executor prefetcher) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Retry-all parallelism must be positive: " + parallelism);
+    }
+    this.parallelism = parallelism;
+    this.workers = workers;
+    this.prefetcher = prefetcher;
+  }
+
+  public static RetryAllExecutor fromEnv() {
+    int parallelism =
+        Integer.parseInt(
+            System.getenv().getOrDefault(PARALLELISM, String.valueOf(DEFAULT_PARALLELISM)));
+    return new RetryAllExecutor(
+        parallelism,
+        Executors.newFixedThreadPool(parallelism, daemon("fdr-retry-all-worker")),
+        Executors.newCachedThreadPool(daemon("fdr-retry-all-prefetch")));
+  }
+
+  /** Notified when every entity of a page has been retried, in page order */
+  @FunctionalInterface
+  public interface PageListener {
+
+    /**
+     * @param continuationToken token of the next page, null if this was the last one
+     * @param results results of the entities of the page
+     */
+    void onPageCompleted(String continuationToken, List<RetryResult> results);
+  }
+
+  /**
+   * Retry every entity of the pages, waiting for all of them to complete
+   *
+   * @param pages dead-letter pages, iterated lazily
+   * @param retry retry of a single entity, expected to report its failures as a {@link
+   *     RetryResult} rather than throwing
+   * @return the aggregated results
+   */
+  public RetryAllReport execute(
+      Iterable<PagedResponse<TableEntity>> pages, Function<TableEntity, RetryResult> retry) {
+    return execute(pages, retry, (continuationToken, results) -> {});
+  }
+
+  /**
+   * Retry every entity of the pages, waiting for all of them to complete. A listener failure stops
+   * the dispatch of the following pages and is rethrown.
+   *
+   * @param pages dead-letter pages, iterated lazily
+   * @param retry retry of a single entity, expected to report its failures as a {@link
+   *     RetryResult} rather than throwing
+   * @param listener checkpoint invoked once per completed page
+   * @return the aggregated results
+   */
+  public RetryAllReport execute(
+      Iterable<PagedResponse<TableEntity>> pages,
+      Function<TableEntity, RetryResult> retry,
+      PageListener listener) {
+    Semaphore slots = new Semaphore(parallelism);
+    List<CompletableFuture<RetryResult>> results = new ArrayList<>();
+    CompletableFuture<Void> checkpoints = CompletableFuture.completedFuture(null);
+    Iterator<PagedResponse<TableEntity>> iterator = pages.iterator();
+
+    CompletableFuture<PagedResponse<TableEntity>> nextPage = fetch(iterator);
+    PagedResponse<TableEntity> page;
+    while ((page = join(nextPage)) != null) {
+      if (checkpoints.isCompletedExceptionally()) {
+        join(checkpoints);
+      }
+      nextPage = fetch(iterator);
+      List<CompletableFuture<RetryResult>> pageResults = new ArrayList<>();
+      for (TableEntity entity : page.getElements()) {
+        acquire(slots);
+        pageResults.add(
+            CompletableFuture.supplyAsync(() -> retry.apply(entity), workers)
+                .whenComplete((result, e) -> slots.release()));
+      }
+      String continuationToken = page.getContinuationToken();
+      checkpoints =
+          checkpoints
+              .thenCombine(
+                  CompletableFuture.allOf(pageResults.toArray(CompletableFuture[]::new)),
+                  (previous, current) -> current)
+              .thenRun(
+                  () ->
+                      listener.onPageCompleted(
+                          continuationToken,
+                          pageResults.stream().map(CompletableFuture::join).toList()));
+      results.addAll(pageResults);
+    }
+    join(checkpoints);
+    return RetryAllReport.of(results.stream().map(RetryAllExecutor::join).toList());
+  }
+
+  private CompletableFuture<PagedResponse<TableEntity>> fetch(
+      Iterator<PagedResponse<TableEntity>> iterator) {
+    // the iterator calls the table service on hasNext, off the dispatching thread
+    return CompletableFuture.supplyAsync(
+        () -> iterator.hasNext() ? iterator.next() : null, prefetcher);
+  }
+
+  private static void acquire(Semaphore slots) {
+    try {
+      slots.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for a retry-all worker", e);
+    }
+  }
+
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      if (e.getCause() instanceof Error error) {
+        throw error;
+      }
+      throw e;
+    }
+  }
+
+  private static ThreadFactory daemon(String name) {
+    return r -> {
+      Thread t = new Thread(r, name);
+      t.setDaemon(true);
+      return t;
+    };
+  }
+}
@@ -0,0 +1,291 @@
+package it.gov.pagopa.fdr.conversion.retry;
+
+import com.azure.core.http.rest.PagedIterable;
+import com.azure.core.http.rest.PagedResponse;
+import com.azure.data.tables.models.TableEntity;
+import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.fdr.conversion.FdrConversionBlobTrigger;
+import it.gov.pagopa.fdr.conversion.exception.RetryJobLeaseLostException;
+import it.gov.pagopa.fdr.conversion.model.DeadLetterFilter;
+import it.gov.pagopa.fdr.conversion.model.RetryJob;
+import it.gov.pagopa.fdr.conversion.model.RetryResult;
+import it.gov.pagopa.fdr.conversion.util.StorageAccountUtil;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs retry-all as background jobs. The job progress is checkpointed after every dead-letter page,
+ * so a job whose instance died is resumed from its continuation token by the next instance that
+ * finds its lease expired. With RETRY_ALL_REACTIVE the entities are drained on the non-blocking
+ * clients by a {@link ReactiveDeadLetterDrain}, with the same checkpoints.
+ *
+ * <p>A page may take longer than the lease when FdR1 is slow, so the lease is also renewed three
+ * times per lease period while a page is retried. A renewal is a conditional save of the last
+ * checkpoint: once another instance has taken the job over, the renewals stop and the next
+ * checkpoint ends the job on this instance.
+ */
+@Slf4j
+public class RetryJobRunner {
+
+  public static final String LEASE_MINUTES = "RETRY_JOB_LEASE_MINUTES";
+  public static final String REACTIVE = "RETRY_ALL_REACTIVE";
+  private static final String DEFAULT_LEASE_MINUTES = "15";
+
+  private final DeadLetterRetrier retrier;
+  private final RetryAllExecutor executor;
+  private final RetryJobStore store;
+  private final Executor jobs;
+  private final Duration lease;
+  private final ReactiveDeadLetterDrain drain;
+  private final ScheduledExecutorService leaseRenewals;
+
+  /**
+   * @param retrier retry of a single entity
+   * @param executor executor of the entity retries
+   * @param store job persistence
+   * @param jobs executor running the jobs in background
+   * @param lease time without renewals after which a running job is taken over
+   */
+  public RetryJobRunner(
+      DeadLetterRetrier retrier,
+      RetryAllExecutor executor,
+      RetryJobStore store,
+      Executor jobs,
+      Duration lease) {
+    this(retrier, executor, store, jobs, lease, null);
+  }
+
+  /**
+   * @param drain drain of the entities on the non-blocking clients, null to retry them with the
+   *     retrier and the executor
+   */
+  public RetryJobRunner(
+      DeadLetterRetrier retrier,
+      RetryAllExecutor executor,
+      RetryJobStore store,
+      Executor jobs,
+      Duration lease,
+      ReactiveDeadLetterDrain drain) {
+    this(
+        retrier,
+        executor,
+        store,
+        jobs,
+        lease,
+        drain,
+        Executors.newSingleThreadScheduledExecutor(daemon("fdr-retry-job-lease")));
+  }
+
+  /**
+   * @param leaseRenewals scheduler renewing the lease of the running jobs
+   */
+  RetryJobRunner(
+      DeadLetterRetrier retrier,
+      RetryAllExecutor executor,
+      RetryJobStore store,
+      Executor jobs,
+      Duration lease,
+      ReactiveDeadLetterDrain drain,
+      ScheduledExecutorService leaseRenewals) {
+    this.retrier = retrier;
+    this.executor = executor;
+    this.store = store;
+    this.jobs = jobs;
+    this.lease = lease;
+    this.drain = drain;
+    this.leaseRenewals = leaseRenewals;
+  }
+
+  public static RetryJobRunner fromEnv(FdrConversionBlobTrigger processor) {
+    boolean reactive = Boolean.parseBoolean(System.getenv().getOrDefault(REACTIVE, "false"));
+    return new RetryJobRunner(
+        new DeadLetterRetrier(processor),
+        RetryAllExecutor.fromEnv(),
+        new RetryJobStore(),
+        Executors.newCachedThreadPool(daemon("fdr-retry-job")),
+        Duration.ofMinutes(
+            Long.parseLong(System.getenv().getOrDefault(LEASE_MINUTES, DEFAULT_LEASE_MINUTES))),
+        reactive ? ReactiveDeadLetterDrain.fromEnv(processor) : null);
+  }
+
+  /**
+   * Create a job and start it in background. The job outlives the invocation, so it keeps its id
+   * only and never its execution context
+   *
+   * @param filter selection of the dead-letter entities to retry
+   */
+  public RetryJob start(DeadLetterFilter filter, ExecutionContext context) {
+    String invocationId = context.getInvocationId();
+    RetryJob job = store.create(filter.toOData());
+    log.info(
+        "[fn=ErrorRetryAllFunction][id={}] Retry job {} started", invocationId, job.getJobId());
+    jobs.execute(() -> run(job, invocationId));
+    return job;
+  }
+
+  public Optional<RetryJob> get(String jobId) {
+    return store.get(jobId);
+  }
+
+  /** Take over the running jobs whose lease expired and resume them from their checkpoint */
+  public List<RetryJob> resumeStale(ExecutionContext context) {
+    String invocationId = context.getInvocationId();
+    return store.findStale(lease).stream()
+        .map(store::save) // fails if another instance claimed it first
+        .flatMap(Optional::stream)
+        .peek(
+            job -> {
+              log.info(
+                  "[fn=ErrorRetryJobResumeFunction][id={}] Retry job {} resumed after {} entities",
+                  invocationId,
+                  job.getJobId(),
+                  job.getProcessed());
+              jobs.execute(() -> run(job, invocationId));
+            })
+        .toList();
+  }
+
+  void run(RetryJob job, String invocationId) {
+    AtomicReference<RetryJob> current = new AtomicReference<>(job);
+    RetryAllExecutor.PageListener checkpoints =
+        (continuationToken, results) ->
+            update(current, j -> checkpoint(j, continuationToken, results));
+    long renewalPeriod = Math.max(1, lease.toMillis() / 3);
+    ScheduledFuture<?> renewals =
+        leaseRenewals.scheduleWithFixedDelay(
+            () -> renewLease(current, invocationId),
+            renewalPeriod,
+            renewalPeriod,
+            TimeUnit.MILLISECONDS);
+    try {
+      try {
+        // a job resumed after its last checkpoint has nothing left to retry
+        if (job.isDrained()) {
+          log.info(
+              "[fn=ErrorRetryAllFunction][id={}] Retry job {} already drained",
+              invocationId,
+              job.getJobId());
+        } else if (drain != null) {
+          drain
+              .drain(job.getFilter(), job.getContinuationToken(), checkpoints, invocationId)
+              .block();
+        } else {
+          retryAll(job, checkpoints, invocationId);
+        }
+      } finally {
+        renewals.cancel(false);
+      }
+
+      RetryJob completed =
+          update(current, j -> j.toBuilder().status(RetryJob.Status.COMPLETED).build());
+      log.info(
+          "[fn=ErrorRetryAllFunction][id={}] Retry job {} completed, processed = {}, succeeded = {}, skipped = {}, failed = {}, throughput = {}/s",
+          invocationId,
+          completed.getJobId(),
+          completed.getProcessed(),
+          completed.getSucceeded(),
+          completed.getSkipped(),
+          completed.getFailed(),
+          completed.getThroughputPerSecond());
+    } catch (RetryJobLeaseLostException e) {
+      log.warn("[fn=ErrorRetryAllFunction][id={}] {}", invocationId, e.getMessage());
+    } catch (Exception e) {
+      log.error(
+          "[Exception][id={}] Retry job {} failed, class = {}, message = {}",
+          invocationId,
+          job.getJobId(),
+          e.getClass(),
+          e.getMessage());
+      synchronized (current) {
+        store.save(
+            current.get().toBuilder().status(RetryJob.Status.FAILED).error(e.getMessage()).build());
+      }
+    }
+  }
+
+  // a renewal running late must not take the ETag of the next checkpoint
+  private RetryJob update(AtomicReference<RetryJob> current, UnaryOperator<RetryJob> change) {
+    synchronized (current) {
+      RetryJob saved = save(change.apply(current.get()));
+      current.set(saved);
+      return saved;
+    }
+  }
+
+  private void renewLease(AtomicReference<RetryJob> current, String invocationId) {
+    try {
+      update(current, UnaryOperator.identity());
+    } catch (RetryJobLeaseLostException e) {
+      log.warn("[fn=ErrorRetryAllFunction][id={}] {}", invocationId, e.getMessage());
+      // stops the renewals, the next checkpoint fails on the ETag as well
+      throw e;
+    } catch (Exception e) {
+      log.warn(
+          "[fn=ErrorRetryAllFunction][id={}] Lease of retry job {} not renewed, class = {}, message = {}",
+          invocationId,
+          current.get().getJobId(),
+          e.getClass(),
+          e.getMessage());
+    }
+  }
+
+  private void retryAll(
+      RetryJob job, RetryAllExecutor.PageListener checkpoints, String invocationId) {
+    PagedIterable<TableEntity> entities = StorageAccountUtil.getTableEntities(job.getFilter());
+    if (entities == null) {
+      throw new IllegalStateException("Dead-letter table not available");
+    }
+    Iterable<PagedResponse<TableEntity>> pages =
+        job.getContinuationToken() == null
+            ? entities.iterableByPage()
+            : entities.iterableByPage(job.getContinuationToken());
+
+    executor.execute(pages, entity -> retrier.retry(entity, invocationId), checkpoints);
+  }
+
+  private RetryJob save(RetryJob job) {
+    return store.save(job).orElseThrow(() -> new RetryJobLeaseLostException(job.getJobId()));
+  }
+
+  private static RetryJob checkpoint(
+      RetryJob job, String continuationToken, List<RetryResult> results) {
+    long succeeded = count(results, RetryResult.Outcome.PROCESSED);
+    long skipped = count(results, RetryResult.Outcome.SKIPPED);
+    long failed = count(results, RetryResult.Outcome.FAILED);
+    long processed = job.getProcessed() + results.size();
+    double seconds =
+        Math.max(1, Duration.between(Instant.parse(job.getStartedAt()), Instant.now()).toSeconds());
+    return job.toBuilder()
+        .continuationToken(continuationToken)
+        .drained(continuationToken == null)
+        .processed(processed)
+        .succeeded(job.getSucceeded() + succeeded)
+        .skipped(job.getSkipped() + skipped)
+        .failed(job.getFailed() + failed)
+        .throughputPerSecond(processed / seconds)
+        .build();
+  }
+
+  private static long count(List<RetryResult> results, RetryResult.Outcome outcome) {
+    return results.stream().filter(r -> r.getOutcome() == outcome).count();
+  }
+
+  private static ThreadFactory daemon(String name) {
+    return r -> {
+      Thread t = new Thread(r, name);
+      t.setDaemon(true);
+      return t;
+    };
+  }
+}
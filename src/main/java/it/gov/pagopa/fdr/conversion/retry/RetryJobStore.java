@@ -0,0 +1,176 @@
+package it.gov.pagopa.fdr.conversion.retry;
+
+import com.azure.core.http.HttpHeaderName;
+import com.azure.core.http.rest.Response;
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.models.ListEntitiesOptions;
+import com.azure.data.tables.models.TableEntity;
+import com.azure.data.tables.models.TableEntityUpdateMode;
+import com.azure.data.tables.models.TableServiceException;
+import it.gov.pagopa.fdr.conversion.model.RetryJob;
+import it.gov.pagopa.fdr.conversion.util.StorageAccountUtil;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Retry-all jobs persisted in their own table. Every update is conditional on the ETag read last,
+ * so an instance that lost a job to another one cannot overwrite its progress.
+ */
+public class RetryJobStore {
+
+  public static final String JOB_TABLE_NAME = "RETRY_JOB_TABLE_NAME";
+  private static final String DEFAULT_JOB_TABLE_NAME = "fdr3retryjobs";
+  private static final String PARTITION_KEY = "retry-all";
+
+  private static final String COLUMN_STATUS = "status";
+  private static final String COLUMN_FILTER = "filter";
+  private static final String COLUMN_CONTINUATION_TOKEN = "continuationToken";
+  private static final String COLUMN_DRAINED = "drained";
+  private static final String COLUMN_PROCESSED = "processed";
+  private static final String COLUMN_SUCCEEDED = "succeeded";
+  private static final String COLUMN_SKIPPED = "skipped";
+  private static final String COLUMN_FAILED = "failed";
+  private static final String COLUMN_THROUGHPUT = "throughputPerSecond";
+  private static final String COLUMN_STARTED_AT = "startedAt";
+  private static final String COLUMN_UPDATED_AT = "updatedAt";
+  private static final String COLUMN_ERROR = "error";
+  // the SDK reads the ETag of conditional updates from this property
+  private static final String ODATA_ETAG = "odata.etag";
+
+  private final String tableName;
+  private TableClient tableClient;
+
+  public RetryJobStore() {
+    this.tableName = System.getenv().getOrDefault(JOB_TABLE_NAME, DEFAULT_JOB_TABLE_NAME);
+  }
+
+  private synchronized TableClient getTableClient() {
+    if (tableClient == null) {
+      StorageAccountUtil.getTableServiceClient().createTableIfNotExists(tableName);
+      tableClient = StorageAccountUtil.getTableServiceClient().getTableClient(tableName);
+    }
+    return tableClient;
+  }
+
+  /**
+   * Create a new running job
+   *
+   * @param filter OData filter of the dead-letter entities to retry, null for the whole table
+   */
+  public RetryJob create(String filter) {
+    String now = Instant.now().toString();
+    RetryJob job =
+        RetryJob.builder()
+            .jobId(UUID.randomUUID().toString())
+            .status(RetryJob.Status.RUNNING)
+            .filter(filter)
+            .startedAt(now)
+            .updatedAt(now)
+            .build();
+    Response<Void> response = getTableClient().createEntityWithResponse(toEntity(job), null, null);
+    return job.toBuilder().eTag(response.getHeaders().getValue(HttpHeaderName.ETAG)).build();
+  }
+
+  public Optional<RetryJob> get(String jobId) {
+    try {
+      return Optional.of(fromEntity(getTableClient().getEntity(PARTITION_KEY, jobId)));
+    } catch (TableServiceException e) {
+      if (e.getResponse().getStatusCode() == 404) {
+        return Optional.empty();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Save the job if nobody else updated it since it was read
+   *
+   * @return the saved job with its new ETag, empty if the job has been updated by someone else
+   */
+  public Optional<RetryJob> save(RetryJob job) {
+    RetryJob updated = job.toBuilder().updatedAt(Instant.now().toString()).build();
+    try {
+      Response<Void> response =
+          getTableClient()
+              .updateEntityWithResponse(
+                  toEntity(updated), TableEntityUpdateMode.REPLACE, true, null, null);
+      return Optional.of(
+          updated.toBuilder().eTag(response.getHeaders().getValue(HttpHeaderName.ETAG)).build());
+    } catch (TableServiceException e) {
+      if (e.getResponse().getStatusCode() == 412) {
+        return Optional.empty();
+      }
+      throw e;
+    }
+  }
+
+  /** Running jobs whose lease expired without a renewal, their instance is assumed gone */
+  public List<RetryJob> findStale(Duration lease) {
+    Instant expired = Instant.now().minus(lease);
+    ListEntitiesOptions options =
+        new ListEntitiesOptions()
+            .setFilter(
+                String.format(
+                    "PartitionKey eq '%s' and %s eq '%s'",
+                    PARTITION_KEY, COLUMN_STATUS, RetryJob.Status.RUNNING));
+    return getTableClient().listEntities(options, null, null).stream()
+        .map(RetryJobStore::fromEntity)
+        .filter(job -> Instant.parse(job.getUpdatedAt()).isBefore(expired))
+        .toList();
+  }
+
+  private static TableEntity toEntity(RetryJob job) {
+    TableEntity entity =
+        new TableEntity(PARTITION_KEY, job.getJobId())
+            .addProperty(COLUMN_STATUS, job.getStatus().name())
+            .addProperty(COLUMN_DRAINED, job.isDrained())
+            .addProperty(COLUMN_PROCESSED, job.getProcessed())
+            .addProperty(COLUMN_SUCCEEDED, job.getSucceeded())
+            .addProperty(COLUMN_SKIPPED, job.getSkipped())
+            .addProperty(COLUMN_FAILED, job.getFailed())
+            .addProperty(COLUMN_THROUGHPUT, job.getThroughputPerSecond())
+            .addProperty(COLUMN_STARTED_AT, job.getStartedAt())
+            .addProperty(COLUMN_UPDATED_AT, job.getUpdatedAt());
+    addIfPresent(entity, COLUMN_FILTER, job.getFilter());
+    addIfPresent(entity, COLUMN_CONTINUATION_TOKEN, job.getContinuationToken());
+    addIfPresent(entity, COLUMN_ERROR, job.getError());
+    addIfPresent(entity, ODATA_ETAG, job.getETag());
+    return entity;
+  }
+
+  private static void addIfPresent(TableEntity entity, String key, String value) {
+    if (value != null) {
+      entity.addProperty(key, value);
+    }
+  }
+
+  private static RetryJob fromEntity(TableEntity entity) {
+    return RetryJob.builder()
+        .jobId(entity.getRowKey())
+        .status(RetryJob.Status.valueOf((String) entity.getProperty(COLUMN_STATUS)))
+        .filter((String) entity.getProperty(COLUMN_FILTER))
+        .continuationToken((String) entity.getProperty(COLUMN_CONTINUATION_TOKEN))
+        .drained(Boolean.TRUE.equals(entity.getProperty(COLUMN_DRAINED)))
+        .processed(asLong(entity.getProperty(COLUMN_PROCESSED)))
+        .succeeded(asLong(entity.getProperty(COLUMN_SUCCEEDED)))
+        .skipped(asLong(entity.getProperty(COLUMN_SKIPPED)))
+        .failed(asLong(entity.getProperty(COLUMN_FAILED)))
+        .throughputPerSecond(asDouble(entity.getProperty(COLUMN_THROUGHPUT)))
+        .startedAt((String) entity.getProperty(COLUMN_STARTED_AT))
+        .updatedAt((String) entity.getProperty(COLUMN_UPDATED_AT))
+        .error((String) entity.getProperty(COLUMN_ERROR))
+        .eTag(entity.getETag())
+        .build();
+  }
+
+  private static long asLong(Object value) {
+    return value instanceof Number number ? number.longValue() : 0L;
+  }
+
+  private static double asDouble(Object value) {
+    return value instanceof Number number ? number.doubleValue() : 0d;
+  }
+}
@@ -0,0 +1,209 @@
+package it.gov.pagopa.fdr.conversion.util;
+
+import it.gov.pagopa.fdr.conversion.model.BlobData;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-process cache of the recently fetched FdR3 blobs, bounded by the total content bytes and
+ * evicting the least recently used entries first. An entry is served only for the ETag it was read
+ * with, so a blob rewritten in the meantime is downloaded again.
+ */
+@Slf4j
+public class BlobContentCache {
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weightBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private record Entry(String eTag, Map<String, String> metadata, byte[] content) {}
+
+    /**
+     * @param maxBytes total content bytes kept in memory, 0 disables the cache
+     * @param maxEntryBytes larger blobs are never cached
+     */
+    public BlobContentCache(long maxBytes, long maxEntryBytes) {
+        if (maxBytes < 0 || maxEntryBytes < 0) {
+            throw new IllegalArgumentException("Blob cache sizes must not be negative");
+        }
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxBytes, maxEntryBytes);
+    }
+
+    /**
+     * @return the ETag of the cached version of the blob, to be validated against the storage
+     */
+    public synchronized Optional<String> cachedETag(String fileName) {
+        Entry entry = entries.get(fileName);
+        return entry == null ? Optional.empty() : Optional.of(entry.eTag());
+    }
+
+    /**
+     * Serve the cached blob if its ETag is the current one, counting a hit
+     *
+     * @return the blob, empty if not cached or cached with another ETag
+     */
+    public Optional<BlobData> get(String fileName, String eTag) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(fileName);
+        }
+        if (entry == null || !entry.eTag().equals(eTag)) {
+            return Optional.empty();
+        }
+        hits.increment();
+        log.info("[BlobContentCache] Hit, blob-name = {}, hits = {}, misses = {}, bytes = {}",
+                fileName, getHits(), getMisses(), getWeightBytes());
+        return Optional.of(BlobData.builder()
+                .fileName(fileName)
+                .metadata(new LinkedHashMap<>(entry.metadata()))
+                .eTag(entry.eTag())
+                .contentLength(entry.content().length)
+                .content(new ByteArrayInputStream(entry.content()))
+                .build());
+    }
+
+    /**
+     * Count a blob downloaded from the storage
+     */
+    public void recordMiss(String fileName) {
+        misses.increment();
+        log.info("[BlobContentCache] Miss, blob-name = {}, hits = {}, misses = {}, bytes = {}",
+                fileName, getHits(), getMisses(), getWeightBytes());
+    }
+
+    /**
+     * Cache the blob once its content is read to the end. The content keeps streaming to the caller,
+     * blobs larger than the entry limit pass through untouched.
+     *
+     * @return the same blob, whose content is copied into the cache while read
+     */
+    public BlobData cacheOnRead(BlobData blobData) {
+        if (blobData.getETag() == null || blobData.getContentLength() > maxEntryBytes) {
+            return blobData;
+        }
+        blobData.setContent(new CachingInputStream(blobData));
+        return blobData;
+    }
+
+    void put(String fileName, String eTag, Map<String, String> metadata, byte[] content) {
+        if (content.length > maxEntryBytes) {
+            return;
+        }
+        synchronized (this) {
+            Entry previous = entries.put(fileName, new Entry(eTag, Map.copyOf(metadata), content));
+            if (previous != null) {
+                weightBytes -= previous.content().length;
+            }
+            weightBytes += content.length;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (weightBytes > maxBytes && eldest.hasNext()) {
+                weightBytes -= eldest.next().content().length;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    public synchronized void invalidate(String fileName) {
+        Entry removed = entries.remove(fileName);
+        if (removed != null) {
+            weightBytes -= removed.content().length;
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public synchronized long getWeightBytes() {
+        return weightBytes;
+    }
+
+    /** Copies the content while it is read, caching it when the end of the stream is reached */
+    private final class CachingInputStream extends FilterInputStream {
+
+        private final String fileName;
+        private final String eTag;
+        private final Map<String, String> metadata;
+        private ByteArrayOutputStream copy;
+
+        private CachingInputStream(BlobData blobData) {
+            super(blobData.getContent());
+            this.fileName = blobData.getFileName();
+            this.eTag = blobData.getETag();
+            this.metadata = blobData.getMetadata() == null ? Map.of() : blobData.getMetadata();
+            this.copy = new ByteArrayOutputStream((int) Math.max(0, blobData.getContentLength()));
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b < 0) {
+                complete();
+            } else if (copy != null) {
+                copy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n < 0) {
+                complete();
+            } else if (copy != null) {
+                copy.write(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes are not copied, the cached content would be incomplete
+            copy = null;
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void complete() {
+            if (copy != null) {
+                put(fileName, eTag, metadata, copy.toByteArray());
+                copy = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // a stream closed before its end is not cached
+            copy = null;
+            super.close();
+        }
+    }
+}
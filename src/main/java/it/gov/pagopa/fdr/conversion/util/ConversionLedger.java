@@ -0,0 +1,130 @@
+package it.gov.pagopa.fdr.conversion.util;
+
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.models.TableEntity;
+import com.azure.data.tables.models.TableEntityUpdateMode;
+import com.azure.data.tables.models.TableServiceException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency ledger of the flows already converted by FdR1, keyed by blob name and version (the
+ * blob ETag, or the content hash when the flow is not read from the storage). A version is recorded
+ * after a successful conversion and checked before posting, so a re-fired trigger or a retry of a
+ * converted flow does not upload it again. Converted versions are kept in an in-memory front cache,
+ * the ledger table is read only for versions not seen by this instance.
+ */
+@Slf4j
+public class ConversionLedger {
+
+    public static final String LEDGER_TABLE_NAME = "CONVERSION_LEDGER_TABLE_NAME";
+    public static final String LEDGER_CACHE_SIZE = "CONVERSION_LEDGER_CACHE_SIZE";
+    private static final String DEFAULT_LEDGER_TABLE_NAME = "fdr3conversionledger";
+    private static final String DEFAULT_LEDGER_CACHE_SIZE = "10000";
+
+    private static final String COLUMN_BLOB = "blob";
+    private static final String COLUMN_CONVERTED_AT = "convertedAt";
+    // existence is all the check needs, no column is transferred
+    private static final List<String> NO_COLUMNS = List.of("PartitionKey");
+
+    private final Supplier<TableClient> tableClient;
+    private final Cache<String, Boolean> converted;
+
+    /**
+     * @param tableClient ledger table client, resolved on the first access
+     * @param cacheSize converted versions kept in memory
+     */
+    public ConversionLedger(Supplier<TableClient> tableClient, long cacheSize) {
+        this.tableClient = tableClient;
+        this.converted = CacheBuilder.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    public static ConversionLedger fromEnv() {
+        String tableName = System.getenv().getOrDefault(LEDGER_TABLE_NAME, DEFAULT_LEDGER_TABLE_NAME);
+        long cacheSize = Long.parseLong(System.getenv().getOrDefault(LEDGER_CACHE_SIZE, DEFAULT_LEDGER_CACHE_SIZE));
+        return new ConversionLedger(new Lazy<>(() -> {
+            StorageAccountUtil.getTableServiceClient().createTableIfNotExists(tableName);
+            return StorageAccountUtil.getTableServiceClient().getTableClient(tableName);
+        }), cacheSize);
+    }
+
+    /**
+     * @return true if this version of the flow has already been converted. A ledger not reachable
+     *     answers false: converting twice is safe, skipping a conversion is not
+     */
+    public boolean isConverted(String blobName, String version) {
+        String key = cacheKey(blobName, version);
+        if (converted.getIfPresent(key) != null) {
+            return true;
+        }
+        try {
+            tableClient.get().getEntityWithResponse(partitionKey(blobName), rowKey(version), NO_COLUMNS, null, null);
+            converted.put(key, Boolean.TRUE);
+            return true;
+        } catch (TableServiceException e) {
+            if (e.getResponse().getStatusCode() != 404) {
+                log.warn("[ConversionLedger] Ledger read failed, blob-name = {}, class = {}, message = {}",
+                        blobName, e.getClass(), e.getMessage());
+            }
+        } catch (RuntimeException e) {
+            log.warn("[ConversionLedger] Ledger read failed, blob-name = {}, class = {}, message = {}",
+                    blobName, e.getClass(), e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Record a converted version of the flow. A failed write is only logged, the conversion itself
+     * succeeded and the worst outcome is a later duplicate post.
+     */
+    public void recordConverted(String blobName, String version) {
+        converted.put(cacheKey(blobName, version), Boolean.TRUE);
+        try {
+            TableEntity entity = new TableEntity(partitionKey(blobName), rowKey(version))
+                    .addProperty(COLUMN_BLOB, blobName)
+                    .addProperty(COLUMN_CONVERTED_AT, Instant.now().toString());
+            tableClient.get().upsertEntityWithResponse(entity, TableEntityUpdateMode.REPLACE, null, null);
+        } catch (RuntimeException e) {
+            log.warn("[ConversionLedger] Ledger write failed, blob-name = {}, class = {}, message = {}",
+                    blobName, e.getClass(), e.getMessage());
+        }
+    }
+
+    /**
+     * @return version of a flow that is not read from the storage: the SHA-256 of its content
+     */
+    public static String contentVersion(byte[] content) {
+        return "sha256-" + HexFormat.of().formatHex(sha256(content));
+    }
+
+    private static String cacheKey(String blobName, String version) {
+        return blobName + '|' + version;
+    }
+
+    // blob names may contain characters not allowed in table keys: '/', '\', '#', '?'
+    private static String partitionKey(String blobName) {
+        return HexFormat.of().formatHex(sha256(blobName.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // ETags are quoted
+    private static String rowKey(String version) {
+        return version.replaceAll("[\"/\\\\#?]", "");
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
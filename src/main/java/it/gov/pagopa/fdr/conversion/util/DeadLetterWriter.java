@@ -0,0 +1,160 @@
+package it.gov.pagopa.fdr.conversion.util;
+
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.models.TableEntity;
+import com.azure.data.tables.models.TableEntityUpdateMode;
+import com.azure.data.tables.models.TableTransactionAction;
+import com.azure.data.tables.models.TableTransactionActionType;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Buffered writer of the dead-letter entities. Entities are grouped by partition key and written
+ * with Table transactions, flushed when a partition reaches the batch size or when the flush
+ * interval elapses, whichever comes first. Each write gets its own outcome: when a transaction is
+ * rejected its entities are written one by one, so a single bad entity fails alone.
+ */
+@Slf4j
+public class DeadLetterWriter {
+
+    /** Table service limits of a single transaction */
+    public static final int MAX_TRANSACTION_SIZE = 100;
+    private static final long MAX_TRANSACTION_BYTES = 3L * 1024 * 1024;
+
+    private final Supplier<TableClient> tableClient;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final ScheduledExecutorService flusher;
+
+    private final Map<String, List<Pending>> buffer = new HashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    private record Pending(TableEntity entity, long bytes, CompletableFuture<Void> outcome) {}
+
+    /**
+     * @param tableClient dead-letter table client, resolved on the first flush
+     * @param batchSize entities per transaction, at most {@value #MAX_TRANSACTION_SIZE}
+     * @param flushInterval max time an entity waits in the buffer
+     */
+    public DeadLetterWriter(Supplier<TableClient> tableClient, int batchSize, Duration flushInterval) {
+        if (batchSize < 1 || batchSize > MAX_TRANSACTION_SIZE) {
+            throw new IllegalArgumentException("Dead-letter batch size must be between 1 and 100: " + batchSize);
+        }
+        this.tableClient = tableClient;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "fdr-dead-letter-writer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Buffer the entity, it is inserted or replaced when its partition is flushed
+     *
+     * @return completed when the entity is stored, exceptionally if the write failed
+     */
+    public CompletableFuture<Void> write(TableEntity entity) {
+        Pending pending = new Pending(entity, estimateBytes(entity), new CompletableFuture<>());
+        List<Pending> full = null;
+        synchronized (this) {
+            List<Pending> partition = buffer.computeIfAbsent(entity.getPartitionKey(), k -> new ArrayList<>());
+            partition.add(pending);
+            if (partition.size() >= batchSize) {
+                full = buffer.remove(entity.getPartitionKey());
+            } else if (scheduledFlush == null) {
+                scheduledFlush = flusher.schedule(this::flush, flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            List<Pending> batch = full;
+            flusher.execute(() -> writePartition(batch));
+        }
+        return pending.outcome();
+    }
+
+    /** Write every buffered entity */
+    public void flush() {
+        List<List<Pending>> partitions;
+        synchronized (this) {
+            partitions = new ArrayList<>(buffer.values());
+            buffer.clear();
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+        }
+        partitions.forEach(this::writePartition);
+    }
+
+    private void writePartition(List<Pending> partition) {
+        List<Pending> transaction = new ArrayList<>();
+        Set<String> rowKeys = new HashSet<>();
+        long bytes = 0;
+        for (Pending pending : partition) {
+            // a transaction can't hold the same entity twice, a later write of the same row goes in the next one
+            boolean full = transaction.size() == MAX_TRANSACTION_SIZE
+                    || bytes + pending.bytes() > MAX_TRANSACTION_BYTES
+                    || rowKeys.contains(pending.entity().getRowKey());
+            if (full && !transaction.isEmpty()) {
+                submit(transaction);
+                transaction = new ArrayList<>();
+                rowKeys.clear();
+                bytes = 0;
+            }
+            transaction.add(pending);
+            rowKeys.add(pending.entity().getRowKey());
+            bytes += pending.bytes();
+        }
+        if (!transaction.isEmpty()) {
+            submit(transaction);
+        }
+    }
+
+    private void submit(List<Pending> transaction) {
+        try {
+            tableClient.get().submitTransaction(transaction.stream()
+                    .map(p -> new TableTransactionAction(TableTransactionActionType.UPSERT_REPLACE, p.entity()))
+                    .toList());
+            transaction.forEach(p -> p.outcome().complete(null));
+        } catch (RuntimeException e) {
+            log.warn("[DeadLetterWriter] Transaction of {} entities rejected, writing them one by one, class = {}, message = {}",
+                    transaction.size(), e.getClass(), e.getMessage());
+            transaction.forEach(this::submitSingle);
+        }
+    }
+
+    private void submitSingle(Pending pending) {
+        try {
+            tableClient.get().upsertEntityWithResponse(pending.entity(), TableEntityUpdateMode.REPLACE, null, null);
+            pending.outcome().complete(null);
+        } catch (RuntimeException e) {
+            pending.outcome().completeExceptionally(e);
+        }
+    }
+
+    private static long estimateBytes(TableEntity entity) {
+        // UTF-16 length of keys and values, a slight overestimate of the JSON payload for ASCII content
+        long bytes = 2L * (entity.getPartitionKey().length() + entity.getRowKey().length());
+        for (Map.Entry<String, Object> property : entity.getProperties().entrySet()) {
+            bytes += 2L * property.getKey().length();
+            if (property.getValue() != null) {
+                bytes += 2L * property.getValue().toString().length();
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,43 @@
+package it.gov.pagopa.fdr.conversion.util;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Value created on the first access and shared afterwards. Concurrent first accesses create it
+ * once, later accesses read a volatile field without locking. A failed creation is not cached: the
+ * next access tries again.
+ */
+public class Lazy<T> implements Supplier<T> {
+
+    private final Supplier<T> factory;
+    private volatile T value;
+
+    public Lazy(Supplier<T> factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public T get() {
+        T result = value;
+        if (result == null) {
+            synchronized (this) {
+                result = value;
+                if (result == null) {
+                    result = Objects.requireNonNull(factory.get(), "Lazy factory returned null");
+                    value = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replace the value, e.g. with a test stand-in
+     *
+     * @param value new value, null to create it again on the next access
+     */
+    public synchronized void set(T value) {
+        this.value = value;
+    }
+}
@@ -3,55 +3,83 @@ package it.gov.pagopa.fdr.conversion.util;
 import com.azure.core.http.rest.PagedIterable;
 import com.azure.data.tables.TableClient;
 import com.azure.data.tables.TableServiceClient;
-import com.azure.data.tables.TableServiceClientBuilder;
+import com.azure.data.tables.models.ListEntitiesOptions;
 import com.azure.data.tables.models.TableEntity;
 import com.azure.storage.blob.BlobClient;
 import com.azure.storage.blob.BlobContainerClient;
-import com.azure.storage.blob.BlobServiceClientBuilder;
+import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.models.BlobRequestConditions;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.models.ConsistentReadControl;
+import com.azure.storage.blob.options.BlobInputStreamOptions;
+import com.azure.storage.blob.specialized.BlobInputStream;
 import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.fdr.conversion.client.ClientRegistry;
+import it.gov.pagopa.fdr.conversion.metrics.StageMetrics;
 import it.gov.pagopa.fdr.conversion.model.BlobData;
 import it.gov.pagopa.fdr.conversion.model.ErrorEnum;
 import it.gov.pagopa.fdr.conversion.model.ErrorTableColumns;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
-import java.util.logging.Logger;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+@Slf4j
 public class StorageAccountUtil {
-    private static final String TABLE_CONNECTION_STRING = System.getenv("TABLE_STORAGE_CONN_STRING");
-    private static final String BLOB_CONNECTION_STRING = System.getenv("FDR_SA_CONNECTION_STRING");
     private static final String ERROR_TABLE_NAME = System.getenv("ERROR_TABLE_NAME");
-    private static final String FDR3_FLOW_BLOB_CONTAINER_NAME = System.getenv("BLOB_STORAGE_FDR3_CONTAINER");
     private static final String SESSION_ID_METADATA_KEY = "sessionId";
     private static final String SESSION_INSERTED_TIMESTAMP_METADATA_KEY = "insertedTimestamp";
-    private static TableServiceClient tableServiceClient;
-    private static BlobContainerClient blobContainerClient;
+    // the retry reads the blob name only, stackTrace and httpErrorResponse are never transferred
+    private static final List<String> RETRY_COLUMNS = List.of("PartitionKey", "RowKey", ErrorTableColumns.COLUMN_FIELD_BLOB);
+    private static final int DEAD_LETTER_BATCH_SIZE = Integer.parseInt(
+            System.getenv().getOrDefault("DEAD_LETTER_BATCH_SIZE", "100"));
+    private static final Duration DEAD_LETTER_FLUSH_INTERVAL = Duration.ofMillis(Long.parseLong(
+            System.getenv().getOrDefault("DEAD_LETTER_FLUSH_INTERVAL_MS", "200")));
+    private static final Duration DEAD_LETTER_WRITE_TIMEOUT = Duration.ofSeconds(30);
+    private static final BlobContentCache BLOB_CACHE = new BlobContentCache(
+            Long.parseLong(System.getenv().getOrDefault("BLOB_CACHE_MAX_BYTES", "67108864")),
+            Long.parseLong(System.getenv().getOrDefault("BLOB_CACHE_MAX_ENTRY_BYTES", "8388608")));
+    private static final Lazy<DeadLetterWriter> DEAD_LETTER_WRITER = new Lazy<>(() -> new DeadLetterWriter(
+            ClientRegistry::errorTableClient, DEAD_LETTER_BATCH_SIZE, DEAD_LETTER_FLUSH_INTERVAL));
 
     public static TableServiceClient getTableServiceClient(){
-        if(tableServiceClient == null){
-            tableServiceClient = new TableServiceClientBuilder()
-                    .connectionString(TABLE_CONNECTION_STRING)
-                    .buildClient();
-            tableServiceClient.createTableIfNotExists(ERROR_TABLE_NAME);
-        }
-        return tableServiceClient;
+        return ClientRegistry.tableServiceClient();
+    }
+
+    // Table service stand-in of the load test
+    static void setTableServiceClientForTest(TableServiceClient testTableServiceClient) {
+        ClientRegistry.setTableServiceClientForTest(testTableServiceClient);
+    }
+
+    private static TableClient getErrorTableClient() {
+        return ClientRegistry.errorTableClient();
     }
 
     private static BlobContainerClient getBlobContainerClient() {
-        if (blobContainerClient == null) {
-            blobContainerClient = new BlobServiceClientBuilder()
-                    .connectionString(BLOB_CONNECTION_STRING)
-                    .buildClient()
-                    .getBlobContainerClient(FDR3_FLOW_BLOB_CONTAINER_NAME);
-        }
-        return blobContainerClient;
+        return ClientRegistry.blobContainerClient();
     }
 
-    public static void sendToErrorTable(ExecutionContext ctx, String blob, Map<String, String> metadata, String message, ErrorEnum errorEnum, String httpErrorResponse, Object e){
+    /**
+     * @param invocationId id of the invocation that converted the flow
+     * @return true if the error has been written to the dead-letter table
+     */
+    public static boolean sendToErrorTable(String invocationId, String blob, Map<String, String> metadata, String message, ErrorEnum errorEnum, String httpErrorResponse, Object e){
+        return writeEntity(invocationId, toErrorEntity(invocationId, blob, metadata, message, errorEnum, httpErrorResponse, e));
+    }
+
+    /**
+     * Build the dead-letter entity of a failed flow, partitioned by the flow insertion day
+     */
+    static TableEntity toErrorEntity(String invocationId, String blob, Map<String, String> metadata, String message, ErrorEnum errorEnum, String httpErrorResponse, Object e){
         String defaultSessionId = "NA_"+UUID.randomUUID();
         String sessionId = metadata.getOrDefault(SESSION_ID_METADATA_KEY, defaultSessionId);
         LocalDateTime now = LocalDateTime.now();
@@ -59,8 +87,8 @@ public class StorageAccountUtil {
         try {
             insertedTime = LocalDateTime.parse(metadata.get(SESSION_INSERTED_TIMESTAMP_METADATA_KEY));
         } catch (Exception iEx) {
-            ctx.getLogger().severe(String.format("[Exception][id=%s] %s failed conversion the process goes on with now as %s, class = %s, message = %s",
-                    ctx.getInvocationId(), SESSION_INSERTED_TIMESTAMP_METADATA_KEY, SESSION_INSERTED_TIMESTAMP_METADATA_KEY, iEx.getClass(), iEx.getMessage()));
+            log.error("[Exception][id={}] {} failed conversion the process goes on with now as {}, class = {}, message = {}",
+                    invocationId, SESSION_INSERTED_TIMESTAMP_METADATA_KEY, SESSION_INSERTED_TIMESTAMP_METADATA_KEY, iEx.getClass(), iEx.getMessage());
         }
         Map<String,Object> errorMap = new LinkedHashMap<>();
         // The id could also be the blob name, since it is unique, however in case we have an error from dead-letter 2 times
@@ -80,60 +108,155 @@ public class StorageAccountUtil {
 
         String partitionKey = insertedTime.toString().substring(0,10);
 
-        createTableEntity(ctx, partitionKey, sessionId, errorMap);
+        TableEntity entity = new TableEntity(partitionKey, sessionId);
+        entity.setProperties(errorMap);
+        return entity;
+    }
+
+    /**
+     * Write the entity through the batched dead-letter writer, waiting for its own outcome
+     *
+     * @return true if the entity has been written
+     */
+    public static boolean createTableEntity(ExecutionContext ctx, String pKey, String rowKey, Map<String,Object> values) {
+        TableEntity entity = new TableEntity(pKey, rowKey);
+        entity.setProperties(values);
+        return writeEntity(ctx.getInvocationId(), entity);
     }
 
-    public static void createTableEntity(ExecutionContext ctx, String pKey, String rowKey, Map<String,Object> values) {
+    private static boolean writeEntity(String invocationId, TableEntity entity) {
+        long start = System.nanoTime();
         try {
-            TableClient tableClient = getTableServiceClient().getTableClient(ERROR_TABLE_NAME);
-            TableEntity entity = new TableEntity(pKey, rowKey);
-            entity.setProperties(values);
-            tableClient.createEntity(entity);
+            DEAD_LETTER_WRITER.get().write(entity).get(DEAD_LETTER_WRITE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("[Exception][id={}] Dead-letter write interrupted", invocationId);
         } catch (Exception e) {
-            ctx.getLogger().severe(String.format("[Exception][id=%s] Dead-letter write failed, class = %s, message = %s", ctx.getInvocationId(), e.getClass(), e.getMessage()));
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            log.error("[Exception][id={}] Dead-letter write failed, class = {}, message = {}", invocationId, cause.getClass(), cause.getMessage());
+        } finally {
+            StageMetrics.recordDeadLetterWrite(System.nanoTime() - start);
         }
+        return false;
     }
 
+    /**
+     * Open the blob with a single ranged download returning the first block together with metadata
+     * and ETag, the following blocks are read on demand and pinned to that ETag. A blob already in
+     * the cache is downloaded only if its ETag changed.
+     *
+     * @return the blob, null if it does not exist
+     */
     public static BlobData getBlobContent(String fileName) {
-        BlobContainerClient blobContainer = getBlobContainerClient();
-        BlobClient blobClient = blobContainer.getBlobClient(fileName);
-        if(!blobClient.exists())
-            return null;
-        Map<String, String> metadata = new HashMap<>(blobClient.getProperties().getMetadata());
+        BlobClient blobClient = getBlobContainerClient().getBlobClient(fileName);
+        Optional<String> cachedETag = BLOB_CACHE.cachedETag(fileName);
+        if (cachedETag.isPresent()) {
+            try {
+                return download(blobClient, fileName, new BlobRequestConditions().setIfNoneMatch(cachedETag.get()));
+            } catch (BlobStorageException e) {
+                if (e.getStatusCode() != 304) {
+                    throw e;
+                }
+                Optional<BlobData> cached = BLOB_CACHE.get(fileName, cachedETag.get());
+                if (cached.isPresent()) {
+                    return cached.get();
+                }
+                // evicted meanwhile, download it unconditionally
+            }
+        }
+        return download(blobClient, fileName, null);
+    }
+
+    private static BlobData download(BlobClient blobClient, String fileName, BlobRequestConditions conditions) {
+        BlobInputStream content;
+        try {
+            content = blobClient.openInputStream(new BlobInputStreamOptions()
+                    .setConsistentReadControl(ConsistentReadControl.ETAG)
+                    .setRequestConditions(conditions));
+        } catch (BlobStorageException e) {
+            if (e.getStatusCode() == 404) {
+                BLOB_CACHE.invalidate(fileName);
+                return null;
+            }
+            throw e;
+        }
+        BLOB_CACHE.recordMiss(fileName);
+        return BLOB_CACHE.cacheOnRead(toBlobData(fileName, content));
+    }
+
+    private static BlobData toBlobData(String fileName, BlobInputStream content) {
+        BlobProperties properties = content.getProperties();
         return BlobData.builder()
                 .fileName(fileName)
-                .metadata(metadata)
-                .content(blobClient.downloadContent().toBytes())
+                .metadata(new HashMap<>(properties.getMetadata()))
+                .eTag(properties.getETag())
+                .contentLength(properties.getBlobSize())
+                .content(content)
                 .build();
     }
 
+    /**
+     * @return cache of the recently fetched blobs, with its hit and miss counters
+     */
+    public static BlobContentCache getBlobCache() {
+        return BLOB_CACHE;
+    }
+
     public static boolean removeEntity(ExecutionContext context, Map<String, String> metadata) {
-        Logger logger = context.getLogger();
+        return removeEntity(context.getInvocationId(), metadata);
+    }
+
+    /**
+     * Remove the dead-letter entity of a converted flow, also from background jobs that outlive the
+     * invocation: the invocation is referenced by its id only
+     *
+     * @return true if the entity has been removed
+     */
+    public static boolean removeEntity(String invocationId, Map<String, String> metadata) {
         String pk = metadata.get(SESSION_INSERTED_TIMESTAMP_METADATA_KEY).substring(0,10);
         String rk = metadata.get(SESSION_ID_METADATA_KEY);
-        TableClient tableClient = getTableServiceClient().getTableClient(ERROR_TABLE_NAME);
+        TableClient tableClient = getErrorTableClient();
 
         try {
             TableEntity entity = tableClient.getEntity(pk, rk);
             if (entity == null) return false;
             tableClient.deleteEntity(pk, rk);
-            logger.info(String.format("[id=%s] Entity deletion from dead letter %s was successful. PartitionKey=%s, RowKey=%s",
-                    context.getInvocationId(), ERROR_TABLE_NAME, pk, rk));
+            log.info("[id={}] Entity deletion from dead letter {} was successful. PartitionKey={}, RowKey={}",
+                    invocationId, ERROR_TABLE_NAME, pk, rk);
         } catch (Exception e) {
-            logger.severe(String.format("[id=%s] Entity deletion from dead letter %s failed. PartitionKey=%s, RowKey=%s",
-                    context.getInvocationId(), ERROR_TABLE_NAME, pk, rk));
+            log.error("[id={}] Entity deletion from dead letter {} failed. PartitionKey={}, RowKey={}",
+                    invocationId, ERROR_TABLE_NAME, pk, rk);
             return false;
         }
         return true;
     }
 
     public static PagedIterable<TableEntity> getTableEntities() {
+        return getTableEntities(null);
+    }
+
+    /**
+     * List the dead-letter entities to retry, fetching only the columns the retry reads
+     *
+     * @param filter OData filter evaluated by the Table service, null to list the whole table
+     */
+    public static PagedIterable<TableEntity> getTableEntities(String filter) {
         try {
-            return getTableServiceClient()
-                    .getTableClient(ERROR_TABLE_NAME)
-                    .listEntities();
+            return getErrorTableClient().listEntities(retryListOptions(filter), null, null);
         } catch (Exception e) {
             return null;
         }
     }
+
+    /**
+     * @param filter OData filter evaluated by the Table service, null to list the whole table
+     * @return the listing options of the dead-letter entities to retry, with only the columns the
+     *     retry reads
+     */
+    public static ListEntitiesOptions retryListOptions(String filter) {
+        return new ListEntitiesOptions()
+                .setFilter(filter)
+                .setSelect(RETRY_COLUMNS);
+    }
 }
@@ -0,0 +1,61 @@
+package it.gov.pagopa.fdr.conversion;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class CdsTrainingTest {
+
+  private static final String BOOTSTRAP = "loader: [loader data: 0x00007f0000000001 of 'bootstrap']";
+  private static final String APP_LOADER =
+      "loader: [loader data: 0x00007f0000000002 for instance a 'java/net/URLClassLoader'{0x00000000a0000000}]";
+
+  @Test
+  void classListNamesBuiltinClassesAndDescribesAppClasses() {
+    List<String> classLoadLog =
+        List.of(
+            "[0.010s][info ][class,load] java.lang.Object source: shared objects file",
+            "[0.010s][debug][class,load]  klass: 0x0000000000000a01 super: 0x0000000000000000 "
+                + BOOTSTRAP,
+            "[0.011s][info ][class,load] java.lang.Runnable source: jrt:/java.base",
+            "[0.011s][debug][class,load]  klass: 0x0000000000000a02 super: 0x0000000000000a01 "
+                + BOOTSTRAP,
+            "[0.200s][info ][class,load] it.gov.pagopa.fdr.conversion.Task source: file:/app/fn.jar",
+            "[0.200s][debug][class,load]  klass: 0x0000000000000b01 super: 0x0000000000000a01"
+                + " interfaces: 0x0000000000000a02 "
+                + APP_LOADER,
+            "[0.201s][info ][class,load] it.gov.pagopa.fdr.conversion.SubTask source: file:/app/fn.jar",
+            "[0.201s][debug][class,load]  klass: 0x0000000000000b02 super: 0x0000000000000b01 "
+                + APP_LOADER);
+
+    assertEquals(
+        List.of(
+            "java/lang/Object id: 1",
+            "java/lang/Runnable id: 2",
+            "it/gov/pagopa/fdr/conversion/Task id: 3 super: 1 interfaces: 2 source: /app/fn.jar",
+            "it/gov/pagopa/fdr/conversion/SubTask id: 4 super: 3 source: /app/fn.jar"),
+        CdsTraining.classList(classLoadLog));
+  }
+
+  @Test
+  void classListLeavesOutGeneratedAndUnresolvableClasses() {
+    List<String> classLoadLog =
+        List.of(
+            "[0.010s][info ][class,load] java.lang.Object source: shared objects file",
+            "[0.010s][debug][class,load]  klass: 0x0000000000000a01 super: 0x0000000000000000 "
+                + BOOTSTRAP,
+            "[0.300s][info ][class,load] it.gov.pagopa.fdr.conversion.Task$$Lambda$1/0x0000000000000c01"
+                + " source: it.gov.pagopa.fdr.conversion.Task",
+            "[0.300s][debug][class,load]  klass: 0x0000000000000c01 super: 0x0000000000000a01 "
+                + APP_LOADER,
+            "[0.301s][info ][class,load] it.gov.pagopa.fdr.conversion.Orphan source: file:/app/fn.jar",
+            "[0.301s][debug][class,load]  klass: 0x0000000000000c02 super: 0x0000000000000fff "
+                + APP_LOADER,
+            "[0.302s][info ][class,load] java.lang.Object source: shared objects file",
+            "[0.302s][debug][class,load]  klass: 0x0000000000000a01 super: 0x0000000000000000 "
+                + BOOTSTRAP);
+
+    assertEquals(List.of("java/lang/Object id: 1"), CdsTraining.classList(classLoadLog));
+  }
+}
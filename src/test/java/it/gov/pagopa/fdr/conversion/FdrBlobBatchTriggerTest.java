@@ -0,0 +1,244 @@
+package it.gov.pagopa.fdr.conversion;
+
+import static it.gov.pagopa.fdr.conversion.util.Utils.createContext;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.options.BlobInputStreamOptions;
+import com.azure.storage.blob.specialized.BlobInputStream;
+import it.gov.pagopa.fdr.conversion.batch.BlobBatchConsumer;
+import it.gov.pagopa.fdr.conversion.batch.InMemoryBlobNotificationSource;
+import it.gov.pagopa.fdr.conversion.client.AppInsightTelemetryClient;
+import it.gov.pagopa.fdr.conversion.client.FdR1Client;
+import it.gov.pagopa.fdr.conversion.converter.Fdr3Payloads;
+import it.gov.pagopa.fdr.conversion.exception.InvalidFdr3FlowException;
+import it.gov.pagopa.fdr.conversion.model.BlobNotificationResult;
+import it.gov.pagopa.fdr.conversion.util.ConversionLedger;
+import it.gov.pagopa.fdr.conversion.util.StorageAccountUtil;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+class FdrBlobBatchTriggerTest {
+
+  private static final byte[] FLOW = Fdr3Payloads.gzippedFlow(1);
+  private static final String CONTAINER = "fdr3-flows";
+
+  private final ExecutorService workers = Executors.newFixedThreadPool(4);
+  private final ConversionLedger conversionLedger = mock(ConversionLedger.class);
+  private final AppInsightTelemetryClient telemetryClient = mock(AppInsightTelemetryClient.class);
+  private FdrBlobBatchTrigger sut;
+
+  @BeforeEach
+  void beforeEach() {
+    FdR1Client fdR1Client =
+        (subscriptionKey, payload) -> {
+          try (InputStream in = payload) {
+            in.transferTo(OutputStream.nullOutputStream());
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        };
+    FdrConversionBlobTrigger.setClientsForTest(fdR1Client, telemetryClient, conversionLedger);
+    Map<String, BlobClient> blobs =
+        Map.of(
+            "flow-1", blob(Map.of("elaborate", "true")),
+            "flow-2", blob(Map.of("elaborate", "true")),
+            "not-elaborated", blob(Map.of()));
+    sut =
+        new FdrBlobBatchTrigger(
+            new FdrConversionBlobTrigger(),
+            blobName -> blobs.getOrDefault(blobName, missingBlob()),
+            new BlobBatchConsumer(4, 2, workers),
+            CONTAINER);
+  }
+
+  @AfterEach
+  void tearDown() {
+    workers.shutdownNow();
+  }
+
+  @Test
+  void consumeReportsTheOutcomeOfEachNotification() {
+    InMemoryBlobNotificationSource source = new InMemoryBlobNotificationSource(2);
+    source.publish("flow-1");
+    source.publish("not-elaborated");
+    source.publish("flow-2");
+    source.publish("missing");
+
+    List<BlobNotificationResult> results = sut.consume(source, createContext(0));
+
+    assertEquals(BlobNotificationResult.Outcome.CONVERTED, outcome(results, "flow-1"));
+    assertEquals(BlobNotificationResult.Outcome.CONVERTED, outcome(results, "flow-2"));
+    assertEquals(BlobNotificationResult.Outcome.SKIPPED, outcome(results, "not-elaborated"));
+    assertEquals(BlobNotificationResult.Outcome.FAILED, outcome(results, "missing"));
+    // the missing blob is delivered twice
+    assertEquals(5, results.size());
+    verify(conversionLedger).recordConverted("flow-1", "\"etag\"");
+    verify(conversionLedger).recordConverted("flow-2", "\"etag\"");
+  }
+
+  @Test
+  void failedFlowIsDeadLetteredOnItsLastDeliveryOnly() {
+    failFdR1Calls();
+    InMemoryBlobNotificationSource source = new InMemoryBlobNotificationSource(2);
+    source.publish("flow-1");
+
+    List<BlobNotificationResult> results;
+    try (MockedStatic<StorageAccountUtil> deadLetter = deadLetterWrites(true)) {
+      results = sut.consume(source, createContext(0));
+    }
+
+    assertEquals(2, results.size());
+    assertEquals(BlobNotificationResult.Outcome.FAILED, results.get(0).getOutcome());
+    assertFalse(results.get(0).isDeadLettered());
+    assertEquals(BlobNotificationResult.Outcome.FAILED, results.get(1).getOutcome());
+    assertTrue(results.get(1).isDeadLettered());
+    // the alert reports the delivery index of the message
+    verify(telemetryClient).createCustomEventForAlert(contains("\"retryIndex\":1"), any());
+  }
+
+  @Test
+  void permanentFailureIsReportedDeadLetteredAndNotDeliveredAgain() {
+    failFdR1Calls(new InvalidFdr3FlowException("Missing field fdr"));
+    InMemoryBlobNotificationSource source = new InMemoryBlobNotificationSource(2);
+    source.publish("flow-1");
+
+    List<BlobNotificationResult> results;
+    try (MockedStatic<StorageAccountUtil> deadLetter = deadLetterWrites(true)) {
+      results = sut.consume(source, createContext(0));
+    }
+
+    assertEquals(1, results.size());
+    assertEquals(BlobNotificationResult.Outcome.FAILED, results.get(0).getOutcome());
+    assertTrue(results.get(0).isDeadLettered());
+    assertEquals("Missing field fdr", results.get(0).getError());
+  }
+
+  @Test
+  void processCompletesIfEveryFailedFlowIsDeadLettered() {
+    failFdR1Calls();
+
+    try (MockedStatic<StorageAccountUtil> deadLetter = deadLetterWrites(true)) {
+      sut.process(new String[] {blobCreated("flow-1")}, new int[] {5}, createContext(0));
+    }
+
+    verify(telemetryClient).createCustomEventForAlert(contains("\"retryIndex\":4"), any());
+  }
+
+  @Test
+  void processThrowsIfAFailedFlowIsNotDeadLettered() {
+    failFdR1Calls();
+    String[] messages = {blobCreated("flow-1"), blobCreated("flow-2")};
+
+    try (MockedStatic<StorageAccountUtil> deadLetter = deadLetterWrites(false)) {
+      assertThrows(
+          IllegalStateException.class,
+          () -> sut.process(messages, new int[] {5, 5}, createContext(0)));
+    }
+  }
+
+  @Test
+  void processThrowsIfTheBlobOfAFlowCannotBeRead() {
+    String[] messages = {blobCreated("flow-1"), blobCreated("missing")};
+
+    assertThrows(
+        IllegalStateException.class, () -> sut.process(messages, null, createContext(0)));
+    verify(conversionLedger).recordConverted("flow-1", "\"etag\"");
+  }
+
+  // the dead-letter writes are mocked on the test thread only, so the blobs are converted on it
+  private void failFdR1Calls() {
+    failFdR1Calls(new IllegalStateException("FdR1 not available"));
+  }
+
+  private void failFdR1Calls(RuntimeException failure) {
+    sut =
+        new FdrBlobBatchTrigger(
+            new FdrConversionBlobTrigger(),
+            blobName -> blob(Map.of("elaborate", "true")),
+            new BlobBatchConsumer(1, 2, Runnable::run),
+            CONTAINER);
+    FdrConversionBlobTrigger.setClientsForTest(
+        (subscriptionKey, payload) -> {
+          throw failure;
+        },
+        telemetryClient,
+        conversionLedger);
+  }
+
+  private static String blobCreated(String blobName) {
+    return "{\"id\":\""
+        + blobName
+        + "\",\"eventType\":\"Microsoft.Storage.BlobCreated\","
+        + "\"subject\":\"/blobServices/default/containers/"
+        + CONTAINER
+        + "/blobs/"
+        + blobName
+        + "\"}";
+  }
+
+  // the dead-letter table is not available to the tests
+  private static MockedStatic<StorageAccountUtil> deadLetterWrites(boolean written) {
+    MockedStatic<StorageAccountUtil> deadLetter = Mockito.mockStatic(StorageAccountUtil.class);
+    deadLetter
+        .when(
+            () ->
+                StorageAccountUtil.sendToErrorTable(
+                    anyString(), anyString(), any(), any(), any(), any(), any()))
+        .thenReturn(written);
+    return deadLetter;
+  }
+
+  private static BlobNotificationResult.Outcome outcome(
+      List<BlobNotificationResult> results, String blobName) {
+    return results.stream()
+        .filter(r -> r.getNotification().getBlobName().equals(blobName))
+        .map(BlobNotificationResult::getOutcome)
+        .reduce((first, last) -> last)
+        .orElseThrow();
+  }
+
+  private static BlobClient blob(Map<String, String> metadata) {
+    BlobClient blobClient = mock(BlobClient.class);
+    BlobProperties properties = mock(BlobProperties.class);
+    when(blobClient.getProperties()).thenReturn(properties);
+    when(properties.getMetadata()).thenReturn(metadata);
+    when(properties.getETag()).thenReturn("\"etag\"");
+    when(properties.getBlobSize()).thenReturn((long) FLOW.length);
+    if (!metadata.isEmpty()) {
+      BlobInputStream blobStream =
+          mock(BlobInputStream.class, delegatesTo(new ByteArrayInputStream(FLOW)));
+      when(blobClient.openInputStream(any(BlobInputStreamOptions.class))).thenReturn(blobStream);
+    }
+    return blobClient;
+  }
+
+  private static BlobClient missingBlob() {
+    BlobClient blobClient = mock(BlobClient.class);
+    when(blobClient.getProperties()).thenThrow(new IllegalStateException("Blob not found"));
+    return blobClient;
+  }
+}
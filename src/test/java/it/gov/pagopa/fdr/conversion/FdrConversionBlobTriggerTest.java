@@ -2,29 +2,58 @@ package it.gov.pagopa.fdr.conversion;
 
 import static it.gov.pagopa.fdr.conversion.util.Utils.createContext;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.AdditionalAnswers.delegatesTo;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.mockserver.integration.ClientAndServer.startClientAndServer;
 import static org.mockserver.matchers.Times.exactly;
 import static org.mockserver.model.HttpRequest.request;
 
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.options.BlobInputStreamOptions;
+import com.azure.storage.blob.specialized.BlobInputStream;
 import com.microsoft.azure.functions.ExecutionContext;
-import feign.Feign;
 import feign.FeignException;
 import it.gov.pagopa.fdr.conversion.client.AppInsightTelemetryClient;
 import it.gov.pagopa.fdr.conversion.client.FdR1Client;
+import it.gov.pagopa.fdr.conversion.client.FdR1HttpClient;
+import it.gov.pagopa.fdr.conversion.converter.Fdr3Payloads;
 import it.gov.pagopa.fdr.conversion.exception.AlertAppException;
+import it.gov.pagopa.fdr.conversion.exception.FlowDeadLetteredException;
+import it.gov.pagopa.fdr.conversion.metrics.SkippedBlobCounter;
+import it.gov.pagopa.fdr.conversion.model.BlobData;
+import it.gov.pagopa.fdr.conversion.util.ConversionLedger;
+import it.gov.pagopa.fdr.conversion.util.StorageAccountUtil;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockserver.client.MockServerClient;
@@ -38,9 +67,11 @@ public class FdrConversionBlobTriggerTest {
 
   private static final String TEST_URL = "http://localhost:8080";
   private static final Map<String, String> METADATA = Map.of("elaborate", "true");
+  private static final byte[] FLOW = Fdr3Payloads.gzippedFlow(1);
   private ExecutionContext context;
 
   private AppInsightTelemetryClient aiTelemetryClientMock;
+  private ConversionLedger conversionLedgerMock;
   private FdrConversionBlobTrigger sut;
 
   @SystemStub
@@ -56,15 +87,17 @@ public class FdrConversionBlobTriggerTest {
     environmentVariables.set("APPLICATIONINSIGHTS_CONNECTION_STRING", "InstrumentationKey=00000000-0000-0000-0000-000000000000");
     environmentVariables.set("FDR_FASE1_BASE_URL", TEST_URL);
     aiTelemetryClientMock = Mockito.mock(AppInsightTelemetryClient.class);
+    conversionLedgerMock = Mockito.mock(ConversionLedger.class);
 
-    FdrConversionBlobTrigger.setClientsForTest(Feign.builder().target(FdR1Client.class, TEST_URL), aiTelemetryClientMock);
+    FdrConversionBlobTrigger.setClientsForTest(
+        new FdR1HttpClient(TEST_URL), aiTelemetryClientMock, conversionLedgerMock);
     sut = new FdrConversionBlobTrigger();
     context = createContext(1);
   }
 
   @Test
   void processOk() {
-    byte[] content = "test".getBytes();
+    byte[] content = FLOW;
     createMockClient(200);
 
     boolean processResult = assertDoesNotThrow(() -> sut.process(content, "blob-name-1", METADATA, context));
@@ -72,22 +105,69 @@ public class FdrConversionBlobTriggerTest {
     assertTrue(processResult);
 
     verify(aiTelemetryClientMock, never()).createCustomEventForAlert(anyString(), any());
+    verify(conversionLedgerMock)
+        .recordConverted("blob-name-1", ConversionLedger.contentVersion(content));
   }
 
   @Test
   void processFail() {
-    byte[] content = "test".getBytes();
+    byte[] content = FLOW;
     createMockClient(500);
 
     assertThrows(FeignException.class, () -> sut.process(content, "blob-name-1", METADATA, context));
 
     verify(aiTelemetryClientMock, never()).createCustomEventForAlert(anyString(), any());
+    verify(conversionLedgerMock, never()).recordConverted(anyString(), anyString());
+  }
+
+  @Test
+  void processPermanentFailureNotRetried() {
+    byte[] content = FLOW;
+    createMockClient(422);
+
+    try (MockedStatic<StorageAccountUtil> deadLetter = deadLetterWrites(true)) {
+      boolean processResult =
+          assertDoesNotThrow(() -> sut.process(content, "blob-name-1", METADATA, context));
+
+      assertFalse(processResult);
+    }
+    verify(aiTelemetryClientMock).createCustomEventForAlert(anyString(), any());
+    verify(conversionLedgerMock, never()).recordConverted(anyString(), anyString());
+  }
+
+  @Test
+  void processPermanentFailureRetriedIfNotDeadLettered() {
+    byte[] content = FLOW;
+    createMockClient(422);
+
+    try (MockedStatic<StorageAccountUtil> deadLetter = deadLetterWrites(false)) {
+      assertThrows(
+          FeignException.class, () -> sut.process(content, "blob-name-1", METADATA, context));
+    }
+  }
+
+  @Test
+  void processInvalidFlowRejectedWithoutRetry() throws IOException {
+    ByteArrayOutputStream invalid = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(invalid)) {
+      gzip.write("{\"fdr\":\"2025-03-1488888888888-750729191\",\"payments\":[]}".getBytes());
+    }
+
+    try (MockedStatic<StorageAccountUtil> deadLetter = deadLetterWrites(true)) {
+      boolean processResult =
+          assertDoesNotThrow(
+              () -> sut.process(invalid.toByteArray(), "blob-name-1", METADATA, context));
+
+      assertFalse(processResult);
+    }
+    verify(aiTelemetryClientMock).createCustomEventForAlert(anyString(), any());
+    verify(conversionLedgerMock, never()).recordConverted(anyString(), anyString());
   }
 
   @Test
   void retryTest() {
     context = createContext(9);
-    byte[] content = "todo".getBytes();
+    byte[] content = FLOW;
     createMockClient(500);
 
     assertThrows(FeignException.class, () -> sut.process(content, "blob-name-1", METADATA, context));
@@ -95,6 +175,123 @@ public class FdrConversionBlobTriggerTest {
     verify(aiTelemetryClientMock).createCustomEventForAlert(anyString(), any());
   }
 
+  @Test
+  void lastRetryFailureDeadLettered() {
+    context = createContext(4);
+    byte[] content = FLOW;
+    createMockClient(500);
+
+    try (MockedStatic<StorageAccountUtil> deadLetter = deadLetterWrites(true)) {
+      FlowDeadLetteredException e =
+          assertThrows(
+              FlowDeadLetteredException.class,
+              () -> sut.process(content, "blob-name-1", METADATA, context));
+
+      assertTrue(e.getCause() instanceof FeignException);
+    }
+  }
+
+  @Test
+  void processBlobDataOk() {
+    BlobData blobData =
+        BlobData.builder()
+            .fileName("blob-name-1")
+            .metadata(METADATA)
+            .contentLength(FLOW.length)
+            .content(new ByteArrayInputStream(FLOW))
+            .build();
+    createMockClient(200);
+
+    boolean processResult = assertDoesNotThrow(() -> sut.process(blobData, context));
+
+    assertTrue(processResult);
+  }
+
+  @Test
+  void processBlobClientOk() {
+    BlobClient blobClient = Mockito.mock(BlobClient.class);
+    BlobProperties properties = Mockito.mock(BlobProperties.class);
+    when(blobClient.getProperties()).thenReturn(properties);
+    when(properties.getMetadata()).thenReturn(METADATA);
+    BlobInputStream blobStream =
+        Mockito.mock(BlobInputStream.class, delegatesTo(new ByteArrayInputStream(FLOW)));
+    when(blobClient.openInputStream(any(BlobInputStreamOptions.class))).thenReturn(blobStream);
+    createMockClient(200);
+
+    boolean processResult = assertDoesNotThrow(() -> sut.process(blobClient, "blob-name-1", context));
+
+    assertTrue(processResult);
+  }
+
+  @Test
+  void processBlobClientAlreadyConvertedWithoutDownload() {
+    BlobClient blobClient = Mockito.mock(BlobClient.class);
+    BlobProperties properties = Mockito.mock(BlobProperties.class);
+    when(blobClient.getProperties()).thenReturn(properties);
+    when(properties.getMetadata()).thenReturn(METADATA);
+    when(properties.getETag()).thenReturn("\"0x8DC1\"");
+    when(conversionLedgerMock.isConverted("blob-name-1", "\"0x8DC1\"")).thenReturn(true);
+
+    boolean processResult = assertDoesNotThrow(() -> sut.process(blobClient, "blob-name-1", context));
+
+    assertTrue(processResult);
+    verify(blobClient, never()).openInputStream(any(BlobInputStreamOptions.class));
+    verify(conversionLedgerMock, never()).recordConverted(anyString(), eq("\"0x8DC1\""));
+  }
+
+  @Test
+  void processBlobClientSkippedWithoutDownload() {
+    BlobClient blobClient = Mockito.mock(BlobClient.class);
+    BlobProperties properties = Mockito.mock(BlobProperties.class);
+    when(blobClient.getProperties()).thenReturn(properties);
+    when(properties.getMetadata()).thenReturn(Map.of("elaborate", "false"));
+    when(properties.getBlobSize()).thenReturn(1024L);
+    long skippedBytes = SkippedBlobCounter.getSkippedBytes();
+
+    boolean processResult = assertDoesNotThrow(() -> sut.process(blobClient, "blob-name-1", context));
+
+    assertFalse(processResult);
+    verify(blobClient, never()).openInputStream(any(BlobInputStreamOptions.class));
+    assertEquals(skippedBytes + 1024L, SkippedBlobCounter.getSkippedBytes());
+  }
+
+  @Test
+  void processConcurrentInvocations() throws Exception {
+    int parallelism = 16;
+    // every call waits for all the others: it completes only if the invocations run together
+    CyclicBarrier allInFlight = new CyclicBarrier(parallelism);
+    FdR1Client fdR1Client =
+        (subscriptionKey, payload) -> {
+          try (InputStream in = payload) {
+            in.transferTo(OutputStream.nullOutputStream());
+            allInFlight.await(10, TimeUnit.SECONDS);
+          } catch (Exception e) {
+            throw new IllegalStateException(e);
+          }
+        };
+    FdrConversionBlobTrigger.setClientsForTest(fdR1Client, aiTelemetryClientMock, conversionLedgerMock);
+    ExecutorService invocations = Executors.newFixedThreadPool(parallelism);
+    try {
+      List<Future<Boolean>> results = new ArrayList<>();
+      for (int i = 0; i < parallelism; i++) {
+        String blobName = "blob-name-" + i;
+        results.add(
+            invocations.submit(() -> sut.process(FLOW, blobName, METADATA, createContext(0))));
+      }
+      for (Future<Boolean> result : results) {
+        assertTrue(result.get(30, TimeUnit.SECONDS));
+      }
+    } finally {
+      invocations.shutdownNow();
+    }
+
+    for (int i = 0; i < parallelism; i++) {
+      verify(conversionLedgerMock)
+          .recordConverted("blob-name-" + i, ConversionLedger.contentVersion(FLOW));
+    }
+    verify(aiTelemetryClientMock, never()).createCustomEventForAlert(anyString(), any());
+  }
+
   @Test
   void alertAppExceptionTest() {
     RuntimeException e = new RuntimeException();
@@ -106,6 +303,18 @@ message=it.gov.pagopa.fdr.conversion.exception.AlertAppException: message""";
     Assertions.assertEquals(expected, alertAppException.toString());
   }
 
+  // the dead-letter table is not available to the tests
+  private static MockedStatic<StorageAccountUtil> deadLetterWrites(boolean written) {
+    MockedStatic<StorageAccountUtil> deadLetter = Mockito.mockStatic(StorageAccountUtil.class);
+    deadLetter
+        .when(
+            () ->
+                StorageAccountUtil.sendToErrorTable(
+                    anyString(), anyString(), any(), any(), any(), any(), any()))
+        .thenReturn(written);
+    return deadLetter;
+  }
+
   public static void createMockClient(Integer status) {
     new MockServerClient("127.0.0.1", 8080)
         .when(
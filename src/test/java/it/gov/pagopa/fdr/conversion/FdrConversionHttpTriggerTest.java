@@ -61,14 +61,12 @@ class FdrConversionHttpTriggerTest {
       mockedStorageUtil
           .when(() -> StorageAccountUtil.getBlobContent(anyString()))
           .thenReturn(mockBlobData);
-      byte[] content = "test".getBytes();
       HashMap<String, String> metadata = new HashMap<>();
-      when(mockBlobData.getContent()).thenReturn(content);
       when(mockBlobData.getMetadata()).thenReturn(metadata);
 
       doReturn(true)
           .when(fdrConversionBlobTrigger)
-          .process(content, TEST_BLOB, metadata, mockContext);
+          .process(mockBlobData, mockContext);
 
       HttpResponseMessage response = function.process(mockRequest, TEST_BLOB, mockContext);
       assertEquals(HttpStatus.OK, response.getStatus());
@@ -84,14 +82,10 @@ class FdrConversionHttpTriggerTest {
       mockedStorageUtil
           .when(() -> StorageAccountUtil.getBlobContent(anyString()))
           .thenReturn(mockBlobData);
-      byte[] content = "test".getBytes();
-      HashMap<String, String> metadata = new HashMap<>();
-      when(mockBlobData.getContent()).thenReturn(content);
-      when(mockBlobData.getMetadata()).thenReturn(metadata);
 
       doReturn(false)
           .when(fdrConversionBlobTrigger)
-          .process(content, TEST_BLOB, metadata, mockContext);
+          .process(mockBlobData, mockContext);
 
       HttpResponseMessage response = function.process(mockRequest, TEST_BLOB, mockContext);
       assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatus());
@@ -13,16 +13,23 @@ import com.microsoft.azure.functions.HttpRequestMessage;
 import com.microsoft.azure.functions.HttpResponseMessage;
 import com.microsoft.azure.functions.HttpStatus;
 import it.gov.pagopa.fdr.conversion.model.BlobData;
+import it.gov.pagopa.fdr.conversion.model.RetryJob;
+import it.gov.pagopa.fdr.conversion.retry.DeadLetterRetrier;
+import it.gov.pagopa.fdr.conversion.retry.RetryAllExecutor;
+import it.gov.pagopa.fdr.conversion.retry.RetryJobRunner;
+import it.gov.pagopa.fdr.conversion.retry.RetryJobStore;
 import it.gov.pagopa.fdr.conversion.util.HttpResponseMessageMock;
 import it.gov.pagopa.fdr.conversion.util.StorageAccountUtil;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.stubbing.Answer;
@@ -31,6 +38,8 @@ import org.mockito.stubbing.Answer;
 class FdrRetryAllHttpTriggerTest {
 
   private static final String TEST_BLOB = "test-blob";
+  private static final String JOB_ID = "job-1";
+  private static final String INVOCATION_ID = "invocation-1";
 
   @Mock private ExecutionContext mockContext;
   @Mock private FdrConversionBlobTrigger fdrConversionBlobTrigger;
@@ -39,12 +48,14 @@ class FdrRetryAllHttpTriggerTest {
   @Mock private BlobData mockBlobData;
   @Mock private PagedIterable<TableEntity> mockPagedIterable;
   @Mock private PagedResponse<TableEntity> mockPage;
+  @Mock private RetryJobStore mockStore;
 
-  @InjectMocks private FdrRetryAllHttpTrigger function;
+  private FdrRetryAllHttpTrigger function;
 
   @BeforeEach
   void setUp() {
-    doAnswer(
+    lenient()
+        .doAnswer(
             (Answer<HttpResponseMessage.Builder>)
                 invocation -> {
                   HttpStatus status = (HttpStatus) invocation.getArguments()[0];
@@ -53,6 +64,21 @@ class FdrRetryAllHttpTriggerTest {
                 })
         .when(mockRequest)
         .createResponseBuilder(any(HttpStatus.class));
+    lenient()
+        .when(mockStore.save(any(RetryJob.class)))
+        .thenAnswer(invocation -> Optional.of(invocation.getArgument(0)));
+    lenient().when(mockStore.create(any())).thenReturn(newJob());
+    lenient().when(mockContext.getInvocationId()).thenReturn(INVOCATION_ID);
+
+    // static mocks are thread-local: jobs and retries run on the calling thread
+    function =
+        new FdrRetryAllHttpTrigger(
+            new RetryJobRunner(
+                new DeadLetterRetrier(fdrConversionBlobTrigger),
+                new RetryAllExecutor(1, Runnable::run, Runnable::run),
+                mockStore,
+                Runnable::run,
+                Duration.ofMinutes(15)));
   }
 
   @Test
@@ -62,24 +88,29 @@ class FdrRetryAllHttpTriggerTest {
       // Mock the behavior of blob retrieval and processing
       Iterable<TableEntity> iterableFromStreamDirect = getTableEntities();
 
-      mockedStorageUtil.when(StorageAccountUtil::getTableEntities).thenReturn(mockPagedIterable);
+      mockedStorageUtil
+          .when(() -> StorageAccountUtil.getTableEntities(null))
+          .thenReturn(mockPagedIterable);
       when(mockPagedIterable.iterableByPage()).thenReturn(Collections.singletonList(mockPage));
       when(mockPage.getElements()).thenReturn(IterableStream.of(iterableFromStreamDirect));
       mockedStorageUtil
           .when(() -> StorageAccountUtil.getBlobContent(TEST_BLOB))
           .thenReturn(mockBlobData);
-      byte[] content = "test".getBytes();
       HashMap<String, String> metadata = new HashMap<>();
-      when(mockBlobData.getContent()).thenReturn(content);
       when(mockBlobData.getMetadata()).thenReturn(metadata);
 
       doReturn(true)
           .when(fdrConversionBlobTrigger)
-          .process(content, TEST_BLOB, metadata, mockContext);
+          .process(mockBlobData, INVOCATION_ID);
 
       HttpResponseMessage response = function.process(mockRequest, mockContext);
 
-      assertEquals(HttpStatus.OK, response.getStatus());
+      assertEquals(HttpStatus.ACCEPTED, response.getStatus());
+      assertEquals("errors/retry/" + JOB_ID, response.getHeader("Location"));
+      RetryJob job = lastSavedJob();
+      assertEquals(RetryJob.Status.COMPLETED, job.getStatus());
+      assertEquals(1, job.getProcessed());
+      assertEquals(1, job.getSucceeded());
     }
   }
 
@@ -90,24 +121,25 @@ class FdrRetryAllHttpTriggerTest {
       // Mock the behavior of blob retrieval and processing
       Iterable<TableEntity> iterableFromStreamDirect = getTableEntities();
 
-      mockedStorageUtil.when(StorageAccountUtil::getTableEntities).thenReturn(mockPagedIterable);
+      mockedStorageUtil
+          .when(() -> StorageAccountUtil.getTableEntities(null))
+          .thenReturn(mockPagedIterable);
       when(mockPagedIterable.iterableByPage()).thenReturn(Collections.singletonList(mockPage));
       when(mockPage.getElements()).thenReturn(IterableStream.of(iterableFromStreamDirect));
       mockedStorageUtil
           .when(() -> StorageAccountUtil.getBlobContent(TEST_BLOB))
           .thenReturn(mockBlobData);
-      byte[] content = "test".getBytes();
-      HashMap<String, String> metadata = new HashMap<>();
-      when(mockBlobData.getContent()).thenReturn(content);
-      when(mockBlobData.getMetadata()).thenReturn(metadata);
 
       doReturn(false)
           .when(fdrConversionBlobTrigger)
-          .process(content, TEST_BLOB, metadata, mockContext);
+          .process(mockBlobData, INVOCATION_ID);
 
       HttpResponseMessage response = function.process(mockRequest, mockContext);
 
-      assertEquals(HttpStatus.OK, response.getStatus());
+      assertEquals(HttpStatus.ACCEPTED, response.getStatus());
+      RetryJob job = lastSavedJob();
+      assertEquals(RetryJob.Status.COMPLETED, job.getStatus());
+      assertEquals(1, job.getSkipped());
     }
   }
 
@@ -117,15 +149,27 @@ class FdrRetryAllHttpTriggerTest {
     try (var mockedStorageUtil = mockStatic(StorageAccountUtil.class)) {
       // Simulate an exception in the method
       mockedStorageUtil
-          .when(StorageAccountUtil::getTableEntities)
+          .when(() -> StorageAccountUtil.getTableEntities(null))
           .thenThrow(new RuntimeException("Test Exception"));
 
       HttpResponseMessage response = function.process(mockRequest, mockContext);
 
-      assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatus());
+      assertEquals(HttpStatus.ACCEPTED, response.getStatus());
+      RetryJob job = lastSavedJob();
+      assertEquals(RetryJob.Status.FAILED, job.getStatus());
+      assertEquals("Test Exception", job.getError());
     }
   }
 
+  @Test
+  void testJobNotCreated() {
+    when(mockStore.create(null)).thenThrow(new RuntimeException("Table not reachable"));
+
+    HttpResponseMessage response = function.process(mockRequest, mockContext);
+
+    assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatus());
+  }
+
   @Test
   void testBlobNull() {
     // Mock static methods using mockStatic
@@ -133,17 +177,158 @@ class FdrRetryAllHttpTriggerTest {
       // Simulate an exception in the method
       Iterable<TableEntity> iterableFromStreamDirect = getTableEntities();
 
-      mockedStorageUtil.when(StorageAccountUtil::getTableEntities).thenReturn(mockPagedIterable);
+      mockedStorageUtil
+          .when(() -> StorageAccountUtil.getTableEntities(null))
+          .thenReturn(mockPagedIterable);
       when(mockPagedIterable.iterableByPage()).thenReturn(Collections.singletonList(mockPage));
       when(mockPage.getElements()).thenReturn(IterableStream.of(iterableFromStreamDirect));
       mockedStorageUtil.when(() -> StorageAccountUtil.getBlobContent(TEST_BLOB)).thenReturn(null);
 
       HttpResponseMessage response = function.process(mockRequest, mockContext);
 
-      assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatus());
+      assertEquals(HttpStatus.ACCEPTED, response.getStatus());
+      RetryJob job = lastSavedJob();
+      assertEquals(RetryJob.Status.COMPLETED, job.getStatus());
+      assertEquals(1, job.getFailed());
+    }
+  }
+
+  @Test
+  void testFailureDoesNotAbortBatch() throws IOException {
+    try (var mockedStorageUtil = mockStatic(StorageAccountUtil.class)) {
+      TableEntity failing = new TableEntity("partitionKey", "rowKey-1");
+      failing.addProperty("blob", "failing-blob");
+      TableEntity ok = new TableEntity("partitionKey", "rowKey-2");
+      ok.addProperty("blob", TEST_BLOB);
+
+      mockedStorageUtil
+          .when(() -> StorageAccountUtil.getTableEntities(null))
+          .thenReturn(mockPagedIterable);
+      when(mockPagedIterable.iterableByPage()).thenReturn(Collections.singletonList(mockPage));
+      when(mockPage.getElements()).thenReturn(IterableStream.of(List.of(failing, ok)));
+      mockedStorageUtil
+          .when(() -> StorageAccountUtil.getBlobContent("failing-blob"))
+          .thenThrow(new RuntimeException("Download failed"));
+      mockedStorageUtil
+          .when(() -> StorageAccountUtil.getBlobContent(TEST_BLOB))
+          .thenReturn(mockBlobData);
+      HashMap<String, String> metadata = new HashMap<>();
+      when(mockBlobData.getMetadata()).thenReturn(metadata);
+      doReturn(true)
+          .when(fdrConversionBlobTrigger)
+          .process(mockBlobData, INVOCATION_ID);
+
+      function.process(mockRequest, mockContext);
+
+      RetryJob job = lastSavedJob();
+      assertEquals(2, job.getProcessed());
+      assertEquals(1, job.getSucceeded());
+      assertEquals(1, job.getFailed());
+      mockedStorageUtil.verify(() -> StorageAccountUtil.removeEntity(INVOCATION_ID, metadata));
+    }
+  }
+
+  @Test
+  void testFilteredJob() {
+    when(mockRequest.getQueryParameters())
+        .thenReturn(Map.of("fromDay", "2025-03-01", "errorType", "HTTP_ERROR"));
+    String filter = "PartitionKey ge '2025-03-01' and errorType eq 'HTTP_ERROR'";
+    RetryJob filtered = newJob().toBuilder().filter(filter).build();
+    when(mockStore.create(filter)).thenReturn(filtered);
+
+    try (var mockedStorageUtil = mockStatic(StorageAccountUtil.class)) {
+      mockedStorageUtil
+          .when(() -> StorageAccountUtil.getTableEntities(filter))
+          .thenReturn(mockPagedIterable);
+      when(mockPagedIterable.iterableByPage()).thenReturn(Collections.emptyList());
+
+      HttpResponseMessage response = function.process(mockRequest, mockContext);
+
+      assertEquals(HttpStatus.ACCEPTED, response.getStatus());
+      assertEquals(RetryJob.Status.COMPLETED, lastSavedJob().getStatus());
+    }
+  }
+
+  @Test
+  void testInvalidFilter() {
+    when(mockRequest.getQueryParameters()).thenReturn(Map.of("errorType", "UNKNOWN"));
+
+    HttpResponseMessage response = function.process(mockRequest, mockContext);
+
+    assertEquals(HttpStatus.BAD_REQUEST, response.getStatus());
+    verify(mockStore, never()).create(any());
+  }
+
+  @Test
+  void testStatus() {
+    RetryJob job = newJob().toBuilder().processed(10).succeeded(9).failed(1).build();
+    when(mockStore.get(JOB_ID)).thenReturn(Optional.of(job));
+
+    HttpResponseMessage response = function.status(mockRequest, JOB_ID, mockContext);
+
+    assertEquals(HttpStatus.OK, response.getStatus());
+    assertEquals(job, response.getBody());
+  }
+
+  @Test
+  void testStatusNotFound() {
+    when(mockStore.get(JOB_ID)).thenReturn(Optional.empty());
+
+    HttpResponseMessage response = function.status(mockRequest, JOB_ID, mockContext);
+
+    assertEquals(HttpStatus.NOT_FOUND, response.getStatus());
+  }
+
+  @Test
+  void testResumeFromCheckpoint() {
+    try (var mockedStorageUtil = mockStatic(StorageAccountUtil.class)) {
+      RetryJob stale =
+          newJob().toBuilder().continuationToken("next-page").processed(1000).succeeded(1000).build();
+      when(mockStore.findStale(Duration.ofMinutes(15))).thenReturn(List.of(stale));
+      mockedStorageUtil
+          .when(() -> StorageAccountUtil.getTableEntities(null))
+          .thenReturn(mockPagedIterable);
+      when(mockPagedIterable.iterableByPage("next-page"))
+          .thenReturn(Collections.singletonList(mockPage));
+      when(mockPage.getElements()).thenReturn(IterableStream.of(getTableEntities()));
+      mockedStorageUtil.when(() -> StorageAccountUtil.getBlobContent(TEST_BLOB)).thenReturn(null);
+
+      function.resume("timer", mockContext);
+
+      RetryJob job = lastSavedJob();
+      assertEquals(RetryJob.Status.COMPLETED, job.getStatus());
+      assertEquals(1001, job.getProcessed());
+      assertEquals(1000, job.getSucceeded());
+      assertEquals(1, job.getFailed());
     }
   }
 
+  @Test
+  void testResumeLostToAnotherInstance() {
+    RetryJob stale = newJob().toBuilder().continuationToken("next-page").build();
+    when(mockStore.findStale(Duration.ofMinutes(15))).thenReturn(List.of(stale));
+    when(mockStore.save(stale)).thenReturn(Optional.empty());
+
+    function.resume("timer", mockContext);
+
+    verify(mockStore, times(1)).save(any(RetryJob.class));
+  }
+
+  private RetryJob lastSavedJob() {
+    ArgumentCaptor<RetryJob> saved = ArgumentCaptor.forClass(RetryJob.class);
+    verify(mockStore, atLeastOnce()).save(saved.capture());
+    return saved.getValue();
+  }
+
+  private static RetryJob newJob() {
+    return RetryJob.builder()
+        .jobId(JOB_ID)
+        .status(RetryJob.Status.RUNNING)
+        .startedAt(Instant.now().toString())
+        .updatedAt(Instant.now().toString())
+        .build();
+  }
+
   private Iterable<TableEntity> getTableEntities() {
     TableEntity mockedEntity = new TableEntity("partitionKey", "rowKey");
     mockedEntity.addProperty("blob", TEST_BLOB);
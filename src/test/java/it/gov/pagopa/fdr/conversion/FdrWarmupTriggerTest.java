@@ -0,0 +1,44 @@
+package it.gov.pagopa.fdr.conversion;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import it.gov.pagopa.fdr.conversion.client.AppInsightTelemetryClient;
+import it.gov.pagopa.fdr.conversion.client.ClientRegistry;
+import it.gov.pagopa.fdr.conversion.client.FdR1Client;
+import it.gov.pagopa.fdr.conversion.util.ConversionLedger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class FdrWarmupTriggerTest {
+
+  @Mock private FdR1Client fdR1Client;
+  @Mock private AppInsightTelemetryClient telemetryClient;
+  @Mock private ConversionLedger conversionLedger;
+
+  @Test
+  void sampleFlowGoesThroughTheHotPath() {
+    assertDoesNotThrow(FdrWarmupTrigger::exerciseHotPath);
+  }
+
+  @Test
+  void warmUpRunsOnceAndRecordsTheColdStart() {
+    ClientRegistry.setClientsForTest(fdR1Client, telemetryClient, conversionLedger);
+    FdrWarmupTrigger.resetForTest();
+
+    FdrWarmupTrigger.warmUp();
+    FdrWarmupTrigger.warmUp();
+
+    verify(telemetryClient).trackMetric(eq(FdrWarmupTrigger.WARMUP_DURATION), anyDouble());
+    verify(telemetryClient).trackMetric(eq(FdrWarmupTrigger.COLD_START_DURATION), anyDouble());
+    // the real FdR1 client is never called by the warm-up
+    verify(fdR1Client, never()).postConversion(any(), any());
+  }
+}
@@ -0,0 +1,113 @@
+package it.gov.pagopa.fdr.conversion.batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.gov.pagopa.fdr.conversion.model.BlobNotification;
+import it.gov.pagopa.fdr.conversion.model.BlobNotificationResult;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class BlobBatchConsumerTest {
+
+  private static final int PARALLELISM = 4;
+
+  private final ExecutorService workers = Executors.newFixedThreadPool(PARALLELISM);
+  private final BlobBatchConsumer sut = new BlobBatchConsumer(PARALLELISM, 10, workers);
+
+  @AfterEach
+  void tearDown() {
+    workers.shutdownNow();
+  }
+
+  @Test
+  void consumeBoundsConcurrencyAndSettlesEachNotification() {
+    InMemoryBlobNotificationSource source = new InMemoryBlobNotificationSource(1);
+    IntStream.range(0, 35).forEach(i -> source.publish("blob-" + i));
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+
+    List<BlobNotificationResult> results =
+        sut.consume(
+            source,
+            notification -> {
+              maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+              sleep(5);
+              running.decrementAndGet();
+              return result(notification, BlobNotificationResult.Outcome.CONVERTED);
+            });
+
+    assertEquals(35, results.size());
+    assertEquals(35, source.getSettled().size());
+    assertEquals(0, source.size());
+    assertTrue(maxRunning.get() <= PARALLELISM, "max running " + maxRunning.get());
+    assertTrue(maxRunning.get() > 1, "conversions never overlapped");
+  }
+
+  @Test
+  void consumeConvertsRedeliveredNotificationsUntilTheLastDelivery() {
+    InMemoryBlobNotificationSource source = new InMemoryBlobNotificationSource(3);
+    source.publish("blob-ok");
+    source.publish("blob-flaky");
+    source.publish("blob-broken");
+
+    List<BlobNotificationResult> results =
+        sut.consume(
+            source,
+            notification -> {
+              boolean failed =
+                  notification.getBlobName().equals("blob-broken")
+                      || (notification.getBlobName().equals("blob-flaky")
+                          && notification.getDeliveryCount() == 1);
+              return result(
+                  notification,
+                  failed
+                      ? BlobNotificationResult.Outcome.FAILED
+                      : BlobNotificationResult.Outcome.CONVERTED);
+            });
+
+    assertEquals(6, results.size());
+    assertEquals(2, outcomes(results, "blob-flaky").size());
+    assertEquals(BlobNotificationResult.Outcome.CONVERTED, outcomes(results, "blob-flaky").get(1));
+    assertEquals(3, outcomes(results, "blob-broken").size());
+    assertTrue(
+        results.stream()
+            .filter(r -> r.getNotification().getBlobName().equals("blob-broken"))
+            .anyMatch(r -> r.getNotification().isLastDelivery()));
+    assertEquals(0, source.size());
+  }
+
+  @Test
+  void constructorRejectsNonPositiveSizes() {
+    assertThrows(IllegalArgumentException.class, () -> new BlobBatchConsumer(0, 10, workers));
+    assertThrows(IllegalArgumentException.class, () -> new BlobBatchConsumer(1, 0, workers));
+    assertThrows(IllegalArgumentException.class, () -> new InMemoryBlobNotificationSource(0));
+  }
+
+  private static BlobNotificationResult result(
+      BlobNotification notification, BlobNotificationResult.Outcome outcome) {
+    return BlobNotificationResult.builder().notification(notification).outcome(outcome).build();
+  }
+
+  private static List<BlobNotificationResult.Outcome> outcomes(
+      List<BlobNotificationResult> results, String blobName) {
+    return results.stream()
+        .filter(r -> r.getNotification().getBlobName().equals(blobName))
+        .map(BlobNotificationResult::getOutcome)
+        .toList();
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package it.gov.pagopa.fdr.conversion.batch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.gov.pagopa.fdr.conversion.model.BlobNotification;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class EventGridBatchNotificationSourceTest {
+
+  private static final String BLOBS = "/blobServices/default/containers/fdr3-flows/blobs/";
+
+  @Test
+  void receiveReturnsTheBlobCreatedEventsOfTheContainer() {
+    String[] messages = {
+      "{\"id\":\"e1\",\"eventType\":\"Microsoft.Storage.BlobCreated\",\"subject\":\""
+          + BLOBS
+          + "flow-1.json.zip\"}",
+      // CloudEvents schema, several events in a message
+      "[{\"id\":\"e2\",\"type\":\"Microsoft.Storage.BlobCreated\",\"subject\":\""
+          + BLOBS
+          + "flow-2.json.zip\"},"
+          + "{\"id\":\"e3\",\"type\":\"Microsoft.Storage.BlobDeleted\",\"subject\":\""
+          + BLOBS
+          + "flow-3.json.zip\"}]",
+      "{\"id\":\"e4\",\"eventType\":\"Microsoft.Storage.BlobCreated\","
+          + "\"subject\":\"/blobServices/default/containers/other/blobs/flow-4.json.zip\"}",
+      "not json"
+    };
+
+    EventGridBatchNotificationSource sut =
+        new EventGridBatchNotificationSource(messages, new int[] {1, 3, 1, 1}, "fdr3-flows");
+
+    List<BlobNotification> first = sut.receive(1);
+    List<BlobNotification> second = sut.receive(10);
+    assertEquals(1, first.size());
+    assertEquals("e1", first.get(0).getMessageId());
+    assertEquals("flow-1.json.zip", first.get(0).getBlobName());
+    assertTrue(first.get(0).isLastDelivery());
+    assertEquals(1, second.size());
+    assertEquals("flow-2.json.zip", second.get(0).getBlobName());
+    assertEquals(3, second.get(0).getDeliveryCount());
+    assertTrue(sut.receive(10).isEmpty());
+  }
+}
@@ -0,0 +1,78 @@
+package it.gov.pagopa.fdr.conversion.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class AimdLimiterTest {
+
+  private static final long FAST = Duration.ofMillis(100).toNanos();
+  private static final long SLOW = Duration.ofSeconds(2).toNanos();
+
+  private final List<Integer> limits = new ArrayList<>();
+  private final AimdLimiter sut = new AimdLimiter(1, 8, Duration.ofSeconds(1), limits::add);
+
+  @Test
+  void acquireBoundedByLimit() throws InterruptedException {
+    for (int i = 0; i < 8; i++) {
+      assertTrue(sut.acquire(Duration.ZERO));
+    }
+
+    assertFalse(sut.acquire(Duration.ofMillis(10)));
+    assertEquals(8, sut.getInFlight());
+  }
+
+  @Test
+  void slowCallsDecreaseMultiplicatively() throws InterruptedException {
+    sut.acquire(Duration.ZERO);
+    sut.release(SLOW, false);
+    sut.acquire(Duration.ZERO);
+    sut.release(FAST, true);
+
+    assertEquals(List.of(6, 4), limits);
+    assertEquals(4, sut.getLimit());
+  }
+
+  @Test
+  void fastCallsAtTheLimitIncreaseAdditively() throws InterruptedException {
+    sut.acquire(Duration.ZERO);
+    sut.release(SLOW, false);
+    sut.acquire(Duration.ZERO);
+    sut.release(SLOW, false);
+    assertEquals(4, sut.getLimit());
+
+    // a full window of calls at the limit raises it by one
+    for (int round = 0; round < 2; round++) {
+      for (int i = 0; i < 4; i++) {
+        assertTrue(sut.acquire(Duration.ZERO));
+      }
+      for (int i = 0; i < 4; i++) {
+        sut.release(FAST, false);
+      }
+    }
+
+    assertEquals(5, sut.getLimit());
+  }
+
+  @Test
+  void neverBelowMinimum() throws InterruptedException {
+    for (int i = 0; i < 20; i++) {
+      sut.acquire(Duration.ZERO);
+      sut.release(FAST, true);
+    }
+
+    assertEquals(1, sut.getLimit());
+  }
+
+  @Test
+  void invalidLimits() {
+    assertThrows(
+        IllegalArgumentException.class, () -> new AimdLimiter(2, 1, Duration.ofSeconds(1), l -> {}));
+  }
+}
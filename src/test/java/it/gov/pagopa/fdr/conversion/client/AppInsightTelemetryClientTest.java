@@ -1,14 +1,22 @@
 package it.gov.pagopa.fdr.conversion.client;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyDouble;
 import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import com.microsoft.applicationinsights.TelemetryClient;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -17,12 +25,76 @@ class AppInsightTelemetryClientTest {
 
   @Mock private TelemetryClient telemetryClientMock;
 
-  @InjectMocks private AppInsightTelemetryClient sut;
+  private AppInsightTelemetryClient sut;
+
+  @BeforeEach
+  void setUp() {
+    sut = new AppInsightTelemetryClient(telemetryClientMock, 10);
+  }
+
+  @AfterEach
+  void tearDown() {
+    sut.close();
+  }
 
   @Test
   void createCustomEventForAlertWithSuccess() {
     assertDoesNotThrow(() -> sut.createCustomEventForAlert("error detail", new Exception("test")));
 
-    verify(telemetryClientMock).trackEvent(eq("FDR_JSON_TO_XML_ALERT"), anyMap(), eq(null));
+    verify(telemetryClientMock, timeout(1000))
+        .trackEvent(eq("FDR_JSON_TO_XML_ALERT"), anyMap(), eq(null));
+  }
+
+  @Test
+  void trackAggregateSendsPreAggregatedMetric() {
+    sut.trackAggregate("FDR1_CALL_LATENCY_MS", 600, 3, 100, 300);
+
+    verify(telemetryClientMock, timeout(1000))
+        .trackMetric("FDR1_CALL_LATENCY_MS", 600, 3, 100.0, 300.0, null, null);
+  }
+
+  @Test
+  void overloadDropsMetricsBeforeAlertsAndCountsThem() throws InterruptedException {
+    CountDownLatch sending = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(
+            invocation -> {
+              sending.countDown();
+              release.await();
+              return null;
+            })
+        .when(telemetryClientMock)
+        .trackMetric("BLOCKING", 1);
+    sut.trackMetric("BLOCKING", 1);
+    assertTrue(sending.await(1, TimeUnit.SECONDS));
+
+    // capacity 10, metrics are queued up to 8
+    for (int i = 0; i < 10; i++) {
+      sut.trackMetric("METRIC", i);
+    }
+    for (int i = 0; i < 3; i++) {
+      sut.createCustomEventForAlert("error detail", new Exception("test"));
+    }
+    assertEquals(3, sut.getDropped());
+
+    release.countDown();
+    verify(telemetryClientMock, timeout(1000).times(2))
+        .trackEvent(eq("FDR_JSON_TO_XML_ALERT"), anyMap(), eq(null));
+    verify(telemetryClientMock, timeout(1000))
+        .trackMetric(AppInsightTelemetryClient.METRIC_DROPPED, 3);
+  }
+
+  @Test
+  void closeSendsQueuedTelemetry() {
+    sut.trackMetric("METRIC", 1);
+    sut.trackMetric("METRIC", 2);
+
+    sut.close();
+
+    verify(telemetryClientMock, times(2)).trackMetric(eq("METRIC"), anyDouble());
+    verify(telemetryClientMock).flush();
+
+    sut.trackMetric("METRIC", 3);
+    verify(telemetryClientMock, times(2)).trackMetric(anyString(), anyDouble());
   }
 }
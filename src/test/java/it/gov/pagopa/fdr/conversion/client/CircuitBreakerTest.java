@@ -0,0 +1,104 @@
+package it.gov.pagopa.fdr.conversion.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+
+  private final AtomicLong now = new AtomicLong();
+  private final List<CircuitBreaker.State> transitions = new ArrayList<>();
+  private final CircuitBreaker sut =
+      new CircuitBreaker(4, 50, Duration.ofSeconds(30), 2, now::get, transitions::add);
+
+  @Test
+  void opensWhenFailureRateReached() {
+    sut.onSuccess();
+    sut.onFailure();
+    sut.onSuccess();
+    assertEquals(CircuitBreaker.State.CLOSED, sut.getState());
+
+    sut.onFailure();
+
+    assertEquals(CircuitBreaker.State.OPEN, sut.getState());
+    assertFalse(sut.tryAcquirePermission());
+  }
+
+  @Test
+  void staysClosedBelowFailureRate() {
+    for (int i = 0; i < 10; i++) {
+      sut.onSuccess();
+      sut.onSuccess();
+      sut.onSuccess();
+      sut.onFailure();
+    }
+
+    assertEquals(CircuitBreaker.State.CLOSED, sut.getState());
+    assertTrue(sut.tryAcquirePermission());
+  }
+
+  @Test
+  void halfOpenProbesCloseTheCircuit() {
+    open();
+    now.addAndGet(Duration.ofSeconds(30).toNanos());
+
+    assertTrue(sut.tryAcquirePermission());
+    assertTrue(sut.tryAcquirePermission());
+    assertFalse(sut.tryAcquirePermission());
+    assertEquals(CircuitBreaker.State.HALF_OPEN, sut.getState());
+    sut.onSuccess();
+    sut.onSuccess();
+
+    assertEquals(CircuitBreaker.State.CLOSED, sut.getState());
+    assertEquals(
+        List.of(
+            CircuitBreaker.State.OPEN, CircuitBreaker.State.HALF_OPEN, CircuitBreaker.State.CLOSED),
+        transitions);
+  }
+
+  @Test
+  void halfOpenFailureReopensTheCircuit() {
+    open();
+    now.addAndGet(Duration.ofSeconds(30).toNanos());
+
+    assertTrue(sut.tryAcquirePermission());
+    sut.onFailure();
+
+    assertEquals(CircuitBreaker.State.OPEN, sut.getState());
+    now.addAndGet(Duration.ofSeconds(29).toNanos());
+    assertFalse(sut.tryAcquirePermission());
+  }
+
+  @Test
+  void cancelledProbeGivesBackItsSlot() {
+    open();
+    now.addAndGet(Duration.ofSeconds(30).toNanos());
+    assertTrue(sut.tryAcquirePermission());
+    assertTrue(sut.tryAcquirePermission());
+
+    sut.onCancelled();
+
+    assertTrue(sut.tryAcquirePermission());
+  }
+
+  @Test
+  void invalidSettings() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new CircuitBreaker(0, 50, Duration.ofSeconds(1), 1, now::get, s -> {}));
+  }
+
+  private void open() {
+    for (int i = 0; i < 4; i++) {
+      sut.onFailure();
+    }
+    assertEquals(CircuitBreaker.State.OPEN, sut.getState());
+  }
+}
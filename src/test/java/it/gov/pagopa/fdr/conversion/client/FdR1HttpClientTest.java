@@ -0,0 +1,138 @@
+package it.gov.pagopa.fdr.conversion.client;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockserver.integration.ClientAndServer.startClientAndServer;
+import static org.mockserver.model.HttpRequest.request;
+
+import feign.FeignException;
+import feign.RetryableException;
+import java.io.ByteArrayInputStream;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockserver.integration.ClientAndServer;
+import org.mockserver.model.BinaryBody;
+import org.mockserver.model.HttpResponse;
+import org.mockserver.verify.VerificationTimes;
+
+class FdR1HttpClientTest {
+
+  private static ClientAndServer mockServer;
+
+  private FdR1HttpClient sut;
+
+  @BeforeAll
+  static void beforeAll() {
+    mockServer = startClientAndServer(0);
+  }
+
+  @AfterAll
+  static void afterAll() {
+    mockServer.stop();
+  }
+
+  @BeforeEach
+  void beforeEach() {
+    mockServer.reset();
+    sut = new FdR1HttpClient("http://localhost:" + mockServer.getPort());
+  }
+
+  @Test
+  void postConversionStreamsBody() {
+    mockServer
+        .when(request().withMethod("POST").withPath("/convert/fdr3"))
+        .respond(HttpResponse.response().withStatusCode(200));
+
+    assertDoesNotThrow(
+        () -> sut.postConversion("key", new ByteArrayInputStream("payload".getBytes())));
+
+    mockServer.verify(
+        request()
+            .withMethod("POST")
+            .withPath("/convert/fdr3")
+            .withHeader("Content-Type", "application/zip")
+            .withHeader("Ocp-Apim-Subscription-Key", "key")
+            .withBody(BinaryBody.binary("payload".getBytes())),
+        VerificationTimes.exactly(1));
+  }
+
+  @Test
+  void postConversionMapsErrorStatus() {
+    mockServer
+        .when(request().withMethod("POST").withPath("/convert/fdr3"))
+        .respond(HttpResponse.response().withStatusCode(400).withBody("bad flow"));
+
+    FeignException e =
+        assertThrows(
+            FeignException.class,
+            () -> sut.postConversion("key", new ByteArrayInputStream("payload".getBytes())));
+
+    assertEquals(400, e.status());
+    assertEquals("bad flow", e.contentUTF8());
+  }
+
+  @Test
+  void postConversionDeadlineExceeded() {
+    mockServer
+        .when(request().withMethod("POST").withPath("/convert/fdr3"))
+        .respond(HttpResponse.response().withStatusCode(200).withDelay(TimeUnit.SECONDS, 2));
+    sut =
+        new FdR1HttpClient(
+            FdR1ClientConfig.builder()
+                .baseUrl("http://localhost:" + mockServer.getPort())
+                .deadline(Duration.ofMillis(300))
+                .build());
+
+    RetryableException e =
+        assertThrows(
+            RetryableException.class,
+            () -> sut.postConversion("key", new ByteArrayInputStream("payload".getBytes())));
+
+    assertEquals("FdR1 call deadline exceeded", e.getMessage());
+  }
+
+  @Test
+  void primeOpensConnectionWithoutPayload() throws Exception {
+    // no expectation: the status does not matter
+    assertEquals(404, sut.prime());
+
+    mockServer.verify(
+        request().withMethod("HEAD").withPath("/convert/fdr3"), VerificationTimes.exactly(1));
+    mockServer.verify(request().withMethod("POST"), VerificationTimes.never());
+  }
+
+  @Test
+  void configFromEnv() {
+    FdR1ClientConfig config =
+        FdR1ClientConfig.fromEnv(
+            Map.of(
+                FdR1ClientConfig.BASE_URL, "http://fdr1",
+                FdR1ClientConfig.HTTP_VERSION, "HTTP_1_1",
+                FdR1ClientConfig.CONNECT_TIMEOUT_MS, "1000",
+                FdR1ClientConfig.DEADLINE_MS, "30000",
+                FdR1ClientConfig.POOL_MAX_CONNECTIONS, "4"));
+
+    assertEquals("http://fdr1", config.getBaseUrl());
+    assertEquals(HttpClient.Version.HTTP_1_1, config.getHttpVersion());
+    assertEquals(Duration.ofSeconds(1), config.getConnectTimeout());
+    assertEquals(Duration.ofSeconds(60), config.getReadTimeout());
+    assertEquals(Duration.ofSeconds(30), config.getDeadline());
+    assertEquals(4, config.getMaxConnections());
+  }
+
+  @Test
+  void postConversionMapsConnectionFailure() {
+    sut = new FdR1HttpClient("http://localhost:1");
+
+    assertThrows(
+        RetryableException.class,
+        () -> sut.postConversion("key", new ByteArrayInputStream("payload".getBytes())));
+  }
+}
@@ -0,0 +1,98 @@
+package it.gov.pagopa.fdr.conversion.client;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import feign.RetryableException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class FdR1RateLimiterTest {
+
+  private final List<byte[]> posted = new ArrayList<>();
+  private final FdR1Client delegate =
+      (subscriptionKey, payload) -> {
+        try {
+          posted.add(payload.readAllBytes());
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      };
+
+  @Test
+  void retriesCannotTakeTheLiveShare() {
+    FdR1RateLimiter sut =
+        new FdR1RateLimiter(
+            config().rateLimitRequestsPerSecond(2).rateLimitLiveShare(50).build());
+    FdR1Client live = sut.limit(delegate, FdR1RateLimiter.Priority.LIVE);
+    FdR1Client retry = sut.limit(delegate, FdR1RateLimiter.Priority.RETRY);
+
+    // capacity 3, 1 reserved: the retries get 2 calls, live still gets the reserved one
+    retry.postConversion("key", payload(4));
+    retry.postConversion("key", payload(4));
+    assertThrows(RetryableException.class, () -> retry.postConversion("key", payload(4)));
+    assertDoesNotThrow(() -> live.postConversion("key", payload(4)));
+
+    assertEquals(3, posted.size());
+  }
+
+  @Test
+  void bytesAreStreamedUnchanged() {
+    FdR1RateLimiter sut =
+        new FdR1RateLimiter(config().rateLimitBytesPerSecond(1024 * 1024).build());
+    byte[] content = payload(100_000).readAllBytes();
+
+    sut.limit(delegate, FdR1RateLimiter.Priority.RETRY)
+        .postConversion("key", new ByteArrayInputStream(content));
+
+    assertArrayEquals(content, posted.get(0));
+  }
+
+  @Test
+  void bytesNotReturnedByTheReadsAreNotCharged() {
+    FdR1RateLimiter sut =
+        new FdR1RateLimiter(config().rateLimitBytesPerSecond(1000).rateLimitLiveShare(0).build());
+
+    // each read takes the whole budget: the first one gets 400 bytes, the one at the end of the
+    // stream none, and both would wait for a second of refill if charged in full
+    assertDoesNotThrow(
+        () ->
+            sut.limit(delegate, FdR1RateLimiter.Priority.RETRY)
+                .postConversion("key", payload(400)));
+
+    assertEquals(400, posted.get(0).length);
+  }
+
+  @Test
+  void unlimitedByDefault() {
+    FdR1Client client =
+        new FdR1RateLimiter(config().build()).limit(delegate, FdR1RateLimiter.Priority.RETRY);
+
+    for (int i = 0; i < 100; i++) {
+      client.postConversion("key", payload(4));
+    }
+
+    assertEquals(100, posted.size());
+  }
+
+  private static FdR1ClientConfig.FdR1ClientConfigBuilder config() {
+    return FdR1ClientConfig.builder()
+        .baseUrl("http://localhost:8080")
+        .deadline(Duration.ofMillis(50));
+  }
+
+  private static ByteArrayInputStream payload(int size) {
+    byte[] content = new byte[size];
+    for (int i = 0; i < size; i++) {
+      content[i] = (byte) i;
+    }
+    return new ByteArrayInputStream(content);
+  }
+}
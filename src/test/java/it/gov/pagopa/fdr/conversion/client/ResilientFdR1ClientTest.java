@@ -0,0 +1,141 @@
+package it.gov.pagopa.fdr.conversion.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import feign.FeignException;
+import feign.Request;
+import feign.RetryableException;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class ResilientFdR1ClientTest {
+
+  private static final FdR1ClientConfig CONFIG =
+      FdR1ClientConfig.builder()
+          .baseUrl("http://localhost:8080")
+          .breakerWindow(4)
+          .breakerFailureRate(50)
+          .breakerOpenTime(Duration.ofMinutes(5))
+          .maxConnections(4)
+          .build();
+
+  private static final Duration LATENCY_THRESHOLD = Duration.ofMillis(50);
+  private static final FdR1ClientConfig LATENCY_CONFIG =
+      CONFIG.toBuilder().limitLatencyThreshold(LATENCY_THRESHOLD).build();
+
+  private final FdR1Client delegate = mock(FdR1Client.class);
+  private final AppInsightTelemetryClient telemetryClient = mock(AppInsightTelemetryClient.class);
+  private final ResilientFdR1Client sut = new ResilientFdR1Client(delegate, CONFIG, telemetryClient);
+
+  @Test
+  void backendFailuresOpenTheCircuit() {
+    doThrow(serverError(503)).when(delegate).postConversion(anyString(), any());
+
+    for (int i = 0; i < 4; i++) {
+      assertThrows(FeignException.class, () -> sut.postConversion("key", payload()));
+    }
+    RetryableException e =
+        assertThrows(RetryableException.class, () -> sut.postConversion("key", payload()));
+
+    assertEquals("FdR1 circuit open, call not performed", e.getMessage());
+    assertEquals(CircuitBreaker.State.OPEN, sut.getCircuitState());
+    verify(delegate, times(4)).postConversion(anyString(), any());
+    verify(telemetryClient)
+        .trackMetric(ResilientFdR1Client.METRIC_CIRCUIT_STATE, CircuitBreaker.State.OPEN.ordinal());
+    verify(telemetryClient, times(3))
+        .trackMetric(eq(ResilientFdR1Client.METRIC_CONCURRENCY_LIMIT), anyDouble());
+  }
+
+  @Test
+  void rejectedFlowsDoNotOpenTheCircuit() {
+    doThrow(serverError(400)).when(delegate).postConversion(anyString(), any());
+
+    for (int i = 0; i < 8; i++) {
+      assertThrows(FeignException.class, () -> sut.postConversion("key", payload()));
+    }
+
+    assertEquals(CircuitBreaker.State.CLOSED, sut.getCircuitState());
+    assertEquals(4, sut.getConcurrencyLimit());
+    verify(delegate, times(8)).postConversion(anyString(), any());
+  }
+
+  @Test
+  void slowUploadDoesNotShrinkTheLimit() {
+    ResilientFdR1Client client = new ResilientFdR1Client(delegate, LATENCY_CONFIG, telemetryClient);
+    doAnswer(invocation -> drain(invocation.getArgument(1)))
+        .when(delegate)
+        .postConversion(anyString(), any());
+
+    // as a payload waiting on the rate budget: every read takes longer than the threshold
+    client.postConversion("key", slowPayload());
+
+    assertEquals(4, client.getConcurrencyLimit());
+  }
+
+  @Test
+  void slowResponseShrinksTheLimit() {
+    ResilientFdR1Client client = new ResilientFdR1Client(delegate, LATENCY_CONFIG, telemetryClient);
+    doAnswer(
+            invocation -> {
+              drain(invocation.getArgument(1));
+              Thread.sleep(2 * LATENCY_THRESHOLD.toMillis());
+              return null;
+            })
+        .when(delegate)
+        .postConversion(anyString(), any());
+
+    client.postConversion("key", payload());
+
+    assertEquals(3, client.getConcurrencyLimit());
+  }
+
+  private static Object drain(InputStream payload) throws IOException {
+    payload.transferTo(OutputStream.nullOutputStream());
+    return null;
+  }
+
+  private static InputStream slowPayload() {
+    return new FilterInputStream(payload()) {
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        try {
+          Thread.sleep(2 * LATENCY_THRESHOLD.toMillis());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException(e);
+        }
+        return super.read(b, off, 2);
+      }
+    };
+  }
+
+  private static InputStream payload() {
+    return new ByteArrayInputStream("test".getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static FeignException serverError(int status) {
+    Request request =
+        Request.create(
+            Request.HttpMethod.POST, "http://localhost:8080", Map.of(), Request.Body.empty(), null);
+    return FeignException.errorStatus(
+        "FdR1Client#postConversion(String,InputStream)",
+        feign.Response.builder().status(status).headers(Map.of()).request(request).build());
+  }
+}
@@ -0,0 +1,52 @@
+package it.gov.pagopa.fdr.conversion.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTest {
+
+  private final AtomicLong now = new AtomicLong();
+  // 10 tokens/s, 3 of them reserved: capacity 13
+  private final TokenBucket sut = new TokenBucket(10, 30, now::get);
+
+  @Test
+  void unreservedCallersLeaveTheReserve() {
+    for (int i = 0; i < 10; i++) {
+      assertEquals(0, sut.tryAcquire(1, false));
+    }
+
+    assertTrue(sut.tryAcquire(1, false) > 0);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(0, sut.tryAcquire(1, true));
+    }
+    assertTrue(sut.tryAcquire(1, true) > 0);
+  }
+
+  @Test
+  void refillsAtRate() {
+    assertEquals(0, sut.tryAcquire(13, true));
+
+    long wait = sut.tryAcquire(2, true);
+    assertEquals(Duration.ofMillis(200).toNanos(), wait);
+
+    now.addAndGet(wait);
+    assertEquals(0, sut.tryAcquire(2, true));
+  }
+
+  @Test
+  void maxAmount() {
+    assertEquals(13, sut.maxAmount(true));
+    assertEquals(10, sut.maxAmount(false));
+  }
+
+  @Test
+  void invalidSettings() {
+    assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 30, now::get));
+    assertThrows(IllegalArgumentException.class, () -> new TokenBucket(10, 100, now::get));
+  }
+}
@@ -0,0 +1,38 @@
+package it.gov.pagopa.fdr.conversion.converter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class ConversionModeTest {
+
+  @Test
+  void remoteIsTheDefault() {
+    assertEquals(ConversionMode.REMOTE, ConversionMode.fromEnv(Map.of()));
+  }
+
+  @Test
+  void localIsSelectedWithTheXmlUploadPath() {
+    Map<String, String> env =
+        Map.of("FDR_CONVERSION_MODE", "LOCAL", "FDR_FASE1_XML_PATH", "/convert/fdr1-xml");
+
+    assertEquals(ConversionMode.LOCAL, ConversionMode.fromEnv(env));
+  }
+
+  @Test
+  void localIsRejectedWithoutAValidXmlUploadPath() {
+    IllegalStateException missing =
+        assertThrows(
+            IllegalStateException.class,
+            () -> ConversionMode.fromEnv(Map.of("FDR_CONVERSION_MODE", "LOCAL")));
+    assertTrue(missing.getMessage().contains("FDR_FASE1_XML_PATH"));
+
+    Map<String, String> placeholder =
+        Map.of(
+            "FDR_CONVERSION_MODE", "LOCAL", "FDR_FASE1_XML_PATH", "insert-fdr1-xml-upload-path");
+    assertThrows(IllegalStateException.class, () -> ConversionMode.fromEnv(placeholder));
+  }
+}
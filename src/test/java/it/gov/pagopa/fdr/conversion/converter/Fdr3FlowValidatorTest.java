@@ -0,0 +1,72 @@
+package it.gov.pagopa.fdr.conversion.converter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.gov.pagopa.fdr.conversion.exception.InvalidFdr3FlowException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+
+class Fdr3FlowValidatorTest {
+
+  private final Fdr3FlowValidator sut = new Fdr3FlowValidator();
+  private final byte[] flow = Fdr3Payloads.gzippedFlow(256);
+
+  @Test
+  void validFlowPassesThroughUnchanged() throws IOException {
+    try (InputStream validating = sut.validating(new ByteArrayInputStream(flow))) {
+      assertArrayEquals(flow, validating.readAllBytes());
+    }
+  }
+
+  @Test
+  void inconsistentTotalsFailInPlaceOfTheEndOfStream() throws IOException {
+    String json = new String(gunzip(flow), StandardCharsets.UTF_8);
+    byte[] inconsistent = gzip(json.replaceFirst("\"computedTotPayments\":\\d+", "\"computedTotPayments\":1"));
+
+    InvalidFdr3FlowException e =
+        assertThrows(
+            InvalidFdr3FlowException.class,
+            () -> sut.validating(new ByteArrayInputStream(inconsistent)).readAllBytes());
+    assertTrue(e.getMessage().startsWith("Declared 1 payments"));
+  }
+
+  @Test
+  void truncatedFlowFails() {
+    byte[] truncated = Arrays.copyOf(flow, flow.length / 2);
+
+    assertThrows(
+        InvalidFdr3FlowException.class,
+        () -> sut.validating(new ByteArrayInputStream(truncated)).readAllBytes());
+  }
+
+  @Test
+  void malformedJsonFails() throws IOException {
+    byte[] malformed = gzip("{\"fdr\":");
+
+    assertThrows(
+        InvalidFdr3FlowException.class, () -> sut.validate(new GZIPInputStream(new ByteArrayInputStream(malformed))));
+  }
+
+  private static byte[] gzip(String content) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] gunzip(byte[] content) throws IOException {
+    try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(content))) {
+      return gzip.readAllBytes();
+    }
+  }
+}
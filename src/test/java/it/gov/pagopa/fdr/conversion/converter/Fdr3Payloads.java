@@ -0,0 +1,49 @@
+package it.gov.pagopa.fdr.conversion.converter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/** Synthetic FdR3 flows of a given uncompressed size, gzipped as they are stored in the blob */
+public final class Fdr3Payloads {
+
+  private static final String HEADER =
+      """
+      {"fdr":"2025-03-1488888888888-750729191","fdrDate":1741943375.807000000,"revision":1,
+       "sender":{"type":"LEGAL_PERSON","id":"88888888888","pspName":"denMitt_1","pspId":"88888888888"},
+       "receiver":{"id":"codIdUniv_2","organizationName":"denRic_2","organizationId":"15376371009"},
+       "regulation":"118312461614721","regulationDate":"2025-03-13T23:00:00Z",
+       "computedTotPayments":%d,"computedSumPayments":%d,
+       "payments":[
+      """;
+  private static final String PAYMENT =
+      "{\"index\":%d,\"iuv\":\"iuv-%010d\",\"iur\":\"iur-%010d\",\"pay\":1,"
+          + "\"payDate\":\"2025-03-14T00:00:00Z\",\"payStatus\":\"EXECUTED\",\"idTransfer\":1}";
+
+  private Fdr3Payloads() {}
+
+  /**
+   * @param sizeKb approximate size of the uncompressed JSON
+   * @return the gzipped FdR3 flow
+   */
+  public static byte[] gzippedFlow(int sizeKb) {
+    int payments = Math.max(1, sizeKb * 1024 / PAYMENT.length());
+    ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+    try (OutputStream out = new GZIPOutputStream(gzipped)) {
+      out.write(String.format(HEADER, payments, payments).getBytes(StandardCharsets.UTF_8));
+      for (int i = 1; i <= payments; i++) {
+        if (i > 1) {
+          out.write(',');
+        }
+        out.write(String.format(PAYMENT, i, i, i).getBytes(StandardCharsets.UTF_8));
+      }
+      out.write("]}".getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return gzipped.toByteArray();
+  }
+}
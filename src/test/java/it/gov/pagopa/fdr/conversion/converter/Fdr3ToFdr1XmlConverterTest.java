@@ -0,0 +1,103 @@
+package it.gov.pagopa.fdr.conversion.converter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import it.gov.pagopa.fdr.conversion.exception.InvalidFdr3FlowException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+class Fdr3ToFdr1XmlConverterTest {
+
+  private static final String FLOW =
+      """
+      {"fdr":"2025-03-1488888888888-750729191","fdrDate":1741943375.807000000,"revision":1,
+       "sender":{"type":"LEGAL_PERSON","id":"88888888888","pspName":"denMitt_1","pspId":"88888888888"},
+       "receiver":{"id":"codIdUniv_2","organizationName":"denRic_2","organizationId":"15376371009"},
+       "regulation":"118312461614721","regulationDate":"2025-03-13T23:00:00Z",
+       "computedTotPayments":2,"computedSumPayments":10.5,
+       "payments":[
+        {"index":1,"iuv":"iuv-1","iur":"iur-1","pay":10,"payDate":"2025-03-14T00:00:00Z","payStatus":"EXECUTED","idTransfer":1},
+        {"index":2,"iuv":"iuv-2","iur":"iur-2","pay":0.5,"payDate":"2025-03-14T00:00:00Z","payStatus":"NO_RPT","idTransfer":2}
+       ]}
+      """;
+
+  private final Fdr3ToFdr1XmlConverter sut = new Fdr3ToFdr1XmlConverter();
+
+  @Test
+  void convertOk() throws Exception {
+    Document xml = convert(FLOW);
+
+    Element root = xml.getDocumentElement();
+    assertEquals("FlussoRiversamento", root.getLocalName());
+    assertEquals(Fdr3ToFdr1XmlConverter.FDR1_NAMESPACE, root.getNamespaceURI());
+    assertEquals("2025-03-1488888888888-750729191", text(xml, "identificativoFlusso"));
+    assertEquals("2025-03-14T10:09:35", text(xml, "dataOraFlusso"));
+    assertEquals("2025-03-14", text(xml, "dataRegolamento"));
+    assertEquals("G", text(xml, "tipoIdentificativoUnivoco"));
+    assertEquals("15376371009", xml.getElementsByTagNameNS("*", "codiceIdentificativoUnivoco").item(1).getTextContent());
+    assertEquals("2", text(xml, "numeroTotalePagamenti"));
+    assertEquals("10.50", text(xml, "importoTotalePagamenti"));
+    assertEquals(2, xml.getElementsByTagNameNS("*", "datiSingoliPagamenti").getLength());
+    assertEquals("9", xml.getElementsByTagNameNS("*", "codiceEsitoSingoloPagamento").item(1).getTextContent());
+  }
+
+  @Test
+  void convertTestResource() throws Exception {
+    try (InputStream resource = getClass().getResourceAsStream("/test-1-content.json.zip")) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      sut.convert(new GZIPInputStream(resource), out);
+
+      Document xml = parse(out.toByteArray());
+      assertEquals("1", text(xml, "numeroTotalePagamenti"));
+      assertEquals("10.00", text(xml, "importoTotalePagamenti"));
+      assertEquals("114425659460192", text(xml, "identificativoUnivocoRiscossione"));
+    }
+  }
+
+  @Test
+  void convertTotalsMismatch() {
+    String flow = FLOW.replace("\"computedTotPayments\":2", "\"computedTotPayments\":3");
+
+    InvalidFdr3FlowException e = assertThrows(InvalidFdr3FlowException.class, () -> convert(flow));
+    assertEquals("Declared 3 payments but found 2", e.getMessage());
+  }
+
+  @Test
+  void convertTotalsAfterPayments() {
+    String flow = FLOW.replace("\"computedTotPayments\":2,\"computedSumPayments\":10.5,", "");
+
+    assertThrows(InvalidFdr3FlowException.class, () -> convert(flow));
+  }
+
+  @Test
+  void convertMissingRequiredField() {
+    String flow = FLOW.replace("\"iur\":\"iur-2\",", "");
+
+    InvalidFdr3FlowException e = assertThrows(InvalidFdr3FlowException.class, () -> convert(flow));
+    assertEquals("Missing required field iur", e.getMessage());
+  }
+
+  private Document convert(String flow) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    sut.convert(new ByteArrayInputStream(flow.getBytes(StandardCharsets.UTF_8)), out);
+    return parse(out.toByteArray());
+  }
+
+  private static Document parse(byte[] xml) throws Exception {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+  }
+
+  private static String text(Document xml, String element) {
+    return xml.getElementsByTagNameNS("*", element).item(0).getTextContent();
+  }
+}
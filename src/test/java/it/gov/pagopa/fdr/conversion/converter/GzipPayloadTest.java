@@ -0,0 +1,74 @@
+package it.gov.pagopa.fdr.conversion.converter;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+
+class GzipPayloadTest {
+
+  private final byte[] gzipped = Fdr3Payloads.gzippedFlow(64);
+
+  @Test
+  void gzipPayloadIsSentAsIs() throws IOException {
+    try (GzipPayload payload = GzipPayload.of(new ByteArrayInputStream(gzipped))) {
+      assertEquals(GzipPayload.Format.GZIP, payload.getFormat());
+      assertArrayEquals(gzipped, payload.readAllBytes());
+      assertEquals(0, payload.getCompressedBytes());
+    }
+  }
+
+  @Test
+  void doubleGzipPayloadIsUnwrappedOnce() throws IOException {
+    try (GzipPayload payload = GzipPayload.of(new ByteArrayInputStream(gzip(gzipped)))) {
+      assertEquals(GzipPayload.Format.DOUBLE_GZIP, payload.getFormat());
+      assertArrayEquals(gzipped, payload.readAllBytes());
+    }
+  }
+
+  @Test
+  void plainPayloadIsGzippedWhileRead() throws IOException {
+    byte[] plain = gunzip(gzipped);
+
+    try (GzipPayload payload = GzipPayload.of(new ByteArrayInputStream(plain), 1)) {
+      assertEquals(GzipPayload.Format.PLAIN, payload.getFormat());
+      byte[] sent = payload.readAllBytes();
+
+      assertArrayEquals(plain, gunzip(sent));
+      assertEquals(plain.length, payload.getRawBytes());
+      assertEquals(sent.length, payload.getCompressedBytes());
+      assertTrue(sent.length < plain.length / 4);
+    }
+  }
+
+  @Test
+  void shortPlainPayloadIsGzipped() throws IOException {
+    byte[] plain = "{".getBytes(StandardCharsets.UTF_8);
+
+    try (GzipPayload payload = GzipPayload.of(new ByteArrayInputStream(plain))) {
+      assertEquals(GzipPayload.Format.PLAIN, payload.getFormat());
+      assertArrayEquals(plain, gunzip(payload.readAllBytes()));
+    }
+  }
+
+  private static byte[] gzip(byte[] content) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(content);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] gunzip(byte[] content) throws IOException {
+    try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(content))) {
+      return gzip.readAllBytes();
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package it.gov.pagopa.fdr.conversion.converter;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.gov.pagopa.fdr.conversion.client.FdR1Client;
+import it.gov.pagopa.fdr.conversion.exception.InvalidFdr3FlowException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+
+class LocalConversionFdR1ClientTest {
+
+  @Test
+  void postConversionUploadsGzippedXml() throws IOException {
+    AtomicReference<byte[]> uploaded = new AtomicReference<>();
+    LocalConversionFdR1Client sut =
+        new LocalConversionFdR1Client((key, payload) -> uploaded.set(readAll(payload)));
+
+    try (InputStream fdr3 = getClass().getResourceAsStream("/test-1-content.json.zip")) {
+      assertDoesNotThrow(() -> sut.postConversion("key", fdr3));
+    }
+
+    String xml =
+        new String(
+            new GZIPInputStream(new ByteArrayInputStream(uploaded.get())).readAllBytes(),
+            StandardCharsets.UTF_8);
+    assertTrue(xml.contains("<identificativoFlusso>2025-03-1488888888888-750729191</identificativoFlusso>"));
+    assertTrue(xml.endsWith("</FlussoRiversamento>"));
+  }
+
+  @Test
+  void postConversionReportsConversionFailure() throws IOException {
+    FdR1Client uploader = (key, payload) -> readAll(payload);
+    LocalConversionFdR1Client sut = new LocalConversionFdR1Client(uploader);
+
+    InputStream fdr3 = gzip("{\"fdr\":\"flow\",\"payments\":[]}");
+
+    assertThrows(InvalidFdr3FlowException.class, () -> sut.postConversion("key", fdr3));
+  }
+
+  @Test
+  void postConversionReportsUploadFailure() throws IOException {
+    FdR1Client uploader =
+        (key, payload) -> {
+          throw new IllegalStateException("FdR1 down");
+        };
+    LocalConversionFdR1Client sut = new LocalConversionFdR1Client(uploader);
+
+    try (InputStream fdr3 = getClass().getResourceAsStream("/test-1-content.json.zip")) {
+      IllegalStateException e =
+          assertThrows(IllegalStateException.class, () -> sut.postConversion("key", fdr3));
+      assertEquals("FdR1 down", e.getMessage());
+    }
+  }
+
+  private static InputStream gzip(String content) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+    return new ByteArrayInputStream(out.toByteArray());
+  }
+
+  private static byte[] readAll(InputStream payload) {
+    try {
+      return payload.readAllBytes();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
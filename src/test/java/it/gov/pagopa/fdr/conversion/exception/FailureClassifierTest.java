@@ -0,0 +1,80 @@
+package it.gov.pagopa.fdr.conversion.exception;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import feign.FeignException;
+import feign.Request;
+import feign.Response;
+import feign.RetryableException;
+import it.gov.pagopa.fdr.conversion.model.ErrorEnum;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.zip.ZipException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class FailureClassifierTest {
+
+    private static final Request REQUEST =
+            Request.create(
+                    Request.HttpMethod.POST,
+                    "http://localhost:8080/convert/fdr3",
+                    Map.of(),
+                    Request.Body.empty(),
+                    null);
+
+    @ParameterizedTest
+    @CsvSource({
+        "400, HTTP_CLIENT_ERROR",
+        "413, HTTP_CLIENT_ERROR",
+        "422, HTTP_CLIENT_ERROR",
+        "401, HTTP_AUTH_ERROR",
+        "403, HTTP_AUTH_ERROR",
+        "408, HTTP_ERROR",
+        "429, HTTP_ERROR",
+        "500, HTTP_ERROR",
+        "503, HTTP_ERROR"
+    })
+    void classifiesFdR1Status(int status, ErrorEnum expected) {
+        assertEquals(expected, FailureClassifier.classify(httpError(status)));
+    }
+
+    @Test
+    void retryableExceptionIsTransient() {
+        RetryableException e =
+                new RetryableException(
+                        -1, "timeout", Request.HttpMethod.POST, null, (Long) null, REQUEST);
+
+        assertEquals(ErrorEnum.HTTP_ERROR, FailureClassifier.classify(e));
+        assertEquals(false, FailureClassifier.classify(e).isPermanent());
+    }
+
+    @Test
+    void invalidFlowIsPermanentAlsoWhenWrapped() {
+        assertEquals(
+                ErrorEnum.INVALID_FLOW,
+                FailureClassifier.classify(new InvalidFdr3FlowException("FdR3 flow without payments")));
+        assertEquals(
+                ErrorEnum.INVALID_FLOW,
+                FailureClassifier.classify(
+                        new UncheckedIOException(new JsonParseException(null, "Unexpected character"))));
+        assertEquals(
+                ErrorEnum.INVALID_FLOW,
+                FailureClassifier.classify(
+                        new UncheckedIOException(new ZipException("Not in GZIP format"))));
+    }
+
+    @Test
+    void otherFailuresAreTransient() {
+        assertEquals(ErrorEnum.GENERIC_ERROR, FailureClassifier.classify(new IllegalStateException()));
+        assertEquals(ErrorEnum.GENERIC_ERROR, FailureClassifier.classify(new OutOfMemoryError()));
+    }
+
+    private static FeignException httpError(int status) {
+        return FeignException.errorStatus(
+                "FdR1Client#postConversion(String,InputStream)",
+                Response.builder().status(status).headers(Map.of()).request(REQUEST).build());
+    }
+}
@@ -0,0 +1,67 @@
+package it.gov.pagopa.fdr.conversion.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class HistogramTest {
+
+  private final Histogram sut = new Histogram("TEST");
+
+  @Test
+  void smallValuesAreExact() {
+    for (int i = 0; i < 10; i++) {
+      sut.record(i);
+    }
+
+    Histogram.Snapshot snapshot = sut.snapshotAndReset();
+    assertEquals(10, snapshot.getCount());
+    assertEquals(45, snapshot.getSum());
+    assertEquals(0, snapshot.getMin());
+    assertEquals(9, snapshot.getMax());
+    assertEquals(4, snapshot.getPercentile(50));
+    assertEquals(9, snapshot.getPercentile(99));
+  }
+
+  @Test
+  void percentilesWithinBucketPrecision() {
+    for (int i = 1; i <= 10_000; i++) {
+      sut.record(i);
+    }
+
+    Histogram.Snapshot snapshot = sut.snapshotAndReset();
+    assertWithin(5_000, snapshot.getPercentile(50));
+    assertWithin(9_500, snapshot.getPercentile(95));
+    assertWithin(9_900, snapshot.getPercentile(99));
+    assertEquals(10_000, snapshot.getPercentile(100));
+  }
+
+  @Test
+  void snapshotStartsANewInterval() {
+    sut.record(100);
+    sut.snapshotAndReset();
+
+    Histogram.Snapshot snapshot = sut.snapshotAndReset();
+    assertEquals(0, snapshot.getCount());
+    assertEquals(0, snapshot.getMin());
+    assertEquals(0, snapshot.getMax());
+    assertEquals(0, snapshot.getPercentile(99));
+  }
+
+  @Test
+  void everyValueHasABucket() {
+    long[] values = {0, 15, 16, 17, 1L << 40, Long.MAX_VALUE};
+    for (long value : values) {
+      int bucket = Histogram.bucket(value);
+      assertTrue(bucket < Histogram.BUCKETS);
+      assertTrue(Histogram.upperBound(bucket) >= value);
+    }
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(
+        Math.abs(actual - expected) <= expected / 8,
+        () -> "expected about " + expected + " but was " + actual);
+  }
+}
@@ -0,0 +1,56 @@
+package it.gov.pagopa.fdr.conversion.metrics;
+
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import it.gov.pagopa.fdr.conversion.client.AppInsightTelemetryClient;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class StageMetricsTest {
+
+  @Mock private AppInsightTelemetryClient telemetryClient;
+
+  @BeforeEach
+  void startFromAnEmptyInterval() {
+    StageMetrics.flush(Mockito.mock(AppInsightTelemetryClient.class));
+  }
+
+  @Test
+  void flushSendsAggregatesAndPercentiles() {
+    StageMetrics.recordReceived(1000, 0);
+    StageMetrics.recordReceived(3000, 2);
+    StageMetrics.recordFdR1Call(TimeUnit.MILLISECONDS.toNanos(250));
+    StageMetrics.recordProcessed(1000);
+    StageMetrics.recordSkipped();
+
+    StageMetrics.flush(telemetryClient);
+
+    verify(telemetryClient).trackAggregate(StageMetrics.BLOB_SIZE, 4000, 2, 1000, 3000);
+    verify(telemetryClient).trackAggregate(StageMetrics.RETRY_INDEX, 2, 2, 0, 2);
+    verify(telemetryClient).trackAggregate(StageMetrics.FDR1_CALL_LATENCY, 250, 1, 250, 250);
+    verify(telemetryClient).trackMetric(StageMetrics.FDR1_CALL_LATENCY + "_P99", 250);
+    verify(telemetryClient).trackMetric(StageMetrics.PROCESSED_BLOBS, 1);
+    verify(telemetryClient).trackMetric(StageMetrics.SKIPPED_BLOBS, 1);
+    verify(telemetryClient).trackMetric(eq(StageMetrics.PROCESSED_BYTES_PER_SECOND), anyDouble());
+  }
+
+  @Test
+  void emptyHistogramsAreNotSent() {
+    StageMetrics.flush(telemetryClient);
+
+    verify(telemetryClient, never())
+        .trackAggregate(anyString(), anyDouble(), Mockito.anyLong(), anyDouble(), anyDouble());
+    verify(telemetryClient).trackMetric(StageMetrics.PROCESSED_BLOBS, 0);
+    verify(telemetryClient).trackMetric(StageMetrics.SKIPPED_BLOBS, 0);
+  }
+}
@@ -0,0 +1,47 @@
+package it.gov.pagopa.fdr.conversion.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class DeadLetterFilterTest {
+
+  @Test
+  void toODataAllConditions() {
+    DeadLetterFilter filter =
+        DeadLetterFilter.fromQueryParameters(
+            Map.of(
+                "fromDay", "2025-03-01",
+                "toDay", "2025-03-31",
+                "errorType", "GENERIC_ERROR",
+                "createdAfter", "2025-03-10T00:00:00",
+                "createdBefore", "2025-03-11T12:30:00"));
+
+    assertEquals(
+        "PartitionKey ge '2025-03-01' and PartitionKey le '2025-03-31'"
+            + " and errorType eq 'GENERIC_ERROR'"
+            + " and created ge datetime'2025-03-10T00:00:00Z'"
+            + " and created lt datetime'2025-03-11T12:30:00Z'",
+        filter.toOData());
+  }
+
+  @Test
+  void toODataWholeTable() {
+    assertNull(DeadLetterFilter.fromQueryParameters(Map.of()).toOData());
+    assertNull(DeadLetterFilter.fromQueryParameters(Map.of("fromDay", " ")).toOData());
+  }
+
+  @Test
+  void fromQueryParametersInvalid() {
+    Map<String, String> parameters = Map.of("toDay", "31/03/2025");
+
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> DeadLetterFilter.fromQueryParameters(parameters));
+    assertEquals("Invalid toDay: 31/03/2025", e.getMessage());
+  }
+}
@@ -0,0 +1,220 @@
+package it.gov.pagopa.fdr.conversion.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.azure.core.http.HttpHeaders;
+import com.azure.core.http.rest.PagedFlux;
+import com.azure.core.http.rest.PagedResponse;
+import com.azure.core.http.rest.PagedResponseBase;
+import com.azure.data.tables.TableAsyncClient;
+import com.azure.data.tables.models.ListEntitiesOptions;
+import com.azure.data.tables.models.TableEntity;
+import it.gov.pagopa.fdr.conversion.FdrConversionBlobTrigger;
+import it.gov.pagopa.fdr.conversion.model.BlobData;
+import it.gov.pagopa.fdr.conversion.model.ErrorTableColumns;
+import it.gov.pagopa.fdr.conversion.model.RetryResult;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+class ReactiveDeadLetterDrainTest {
+
+  private static final int CONCURRENCY = 4;
+
+  private static final String INVOCATION_ID = "invocation-1";
+
+  private final TableAsyncClient table = mock(TableAsyncClient.class);
+  private final Map<String, BlobData> blobs = new ConcurrentHashMap<>();
+  private final List<String> opened = Collections.synchronizedList(new ArrayList<>());
+  private final List<String> openedOn = Collections.synchronizedList(new ArrayList<>());
+  private final FdrConversionBlobTrigger processor = mock(FdrConversionBlobTrigger.class);
+  private final Scheduler fdR1Workers = Schedulers.newBoundedElastic(8, 100, "test-drain");
+  private final ReactiveDeadLetterDrain sut =
+      new ReactiveDeadLetterDrain(
+          table,
+          blobName -> {
+            opened.add(blobName);
+            openedOn.add(Thread.currentThread().getName());
+            return blobs.get(blobName);
+          },
+          processor,
+          CONCURRENCY,
+          fdR1Workers);
+
+  @BeforeEach
+  void setUp() {
+    lenient().when(table.deleteEntity(anyString(), anyString())).thenReturn(Mono.empty());
+  }
+
+  @AfterEach
+  void tearDown() {
+    fdR1Workers.dispose();
+  }
+
+  @Test
+  void drainRetriesEveryPageAndCheckpointsInOrder() throws Exception {
+    listing(List.of(entity("1"), entity("2")), "page-2", List.of(entity("3")));
+    blob("blob-1");
+    blob("blob-2");
+    when(processor.process(blobNamed("blob-1"), eq(INVOCATION_ID))).thenReturn(true);
+    when(processor.process(blobNamed("blob-2"), eq(INVOCATION_ID))).thenReturn(false);
+    List<String> tokens = new ArrayList<>();
+    List<RetryResult> results = new ArrayList<>();
+
+    sut.drain(
+            null,
+            null,
+            (token, page) -> {
+              tokens.add(token);
+              results.addAll(page);
+            },
+            INVOCATION_ID)
+        .block();
+
+    assertEquals(2, tokens.size());
+    assertEquals("page-2", tokens.get(0));
+    assertNull(tokens.get(1));
+    assertEquals(RetryResult.Outcome.PROCESSED, outcome(results, "blob-1"));
+    assertEquals(RetryResult.Outcome.SKIPPED, outcome(results, "blob-2"));
+    assertEquals(RetryResult.Outcome.FAILED, outcome(results, "blob-3"));
+    verify(table).deleteEntity("2025-01-01", "1");
+    verify(table, never()).deleteEntity("2025-01-01", "2");
+    verify(table, never()).deleteEntity("2025-01-01", "3");
+    assertEquals("Blob not found", error(results, "blob-3"));
+  }
+
+  @Test
+  void blobsAreStreamedOnTheFdR1WorkersWithTheirETag() throws Exception {
+    listing(List.of(entity("1"), entity("2")), null, List.of());
+    blob("blob-1");
+    blob("blob-2");
+    when(processor.process(any(BlobData.class), eq(INVOCATION_ID))).thenReturn(true);
+
+    sut.drain(null, null, (token, page) -> {}, INVOCATION_ID).block();
+
+    // the ledger key of the blob trigger and of the retrier, not a hash of the content
+    verify(processor)
+        .process(
+            argThat(blobData -> "etag-blob-1".equals(blobData.getETag())), eq(INVOCATION_ID));
+    assertEquals(2, openedOn.size());
+    assertTrue(openedOn.stream().allMatch(name -> name.startsWith("test-drain")), openedOn::toString);
+  }
+
+  @Test
+  void drainBoundsTheConcurrentRetries() throws Exception {
+    List<TableEntity> entities =
+        IntStream.range(0, 40).mapToObj(i -> entity(String.valueOf(i))).toList();
+    listing(entities, null, List.of());
+    entities.forEach(e -> blob((String) e.getProperty(ErrorTableColumns.COLUMN_FIELD_BLOB)));
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    when(processor.process(any(BlobData.class), eq(INVOCATION_ID)))
+        .thenAnswer(
+            invocation -> {
+              maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+              Thread.sleep(5);
+              running.decrementAndGet();
+              return true;
+            });
+    List<RetryResult> results = new ArrayList<>();
+
+    sut.drain(null, null, (token, page) -> results.addAll(page), INVOCATION_ID).block();
+
+    assertEquals(40, results.size());
+    assertTrue(maxRunning.get() <= CONCURRENCY, "max running " + maxRunning.get());
+    assertTrue(maxRunning.get() > 1, "retries never overlapped");
+  }
+
+  @Test
+  void drainResumesFromTheContinuationTokenAndStopsOnListenerFailure() throws Exception {
+    listing(List.of(entity("1")), "page-2", List.of(entity("2")));
+    blob("blob-2");
+    when(processor.process(blobNamed("blob-2"), eq(INVOCATION_ID))).thenReturn(true);
+
+    Mono<Void> drain =
+        sut.drain(
+            null,
+            "page-2",
+            (token, page) -> {
+              throw new IllegalStateException("lease lost");
+            },
+            INVOCATION_ID);
+
+    assertThrows(IllegalStateException.class, drain::block);
+    assertEquals(List.of("blob-2"), opened);
+  }
+
+  private void listing(List<TableEntity> first, String nextToken, List<TableEntity> second) {
+    PagedFlux<TableEntity> entities =
+        new PagedFlux<>(
+            () -> Mono.just(page(first, nextToken)), token -> Mono.just(page(second, null)));
+    when(table.listEntities(any(ListEntitiesOptions.class))).thenReturn(entities);
+  }
+
+  private static PagedResponse<TableEntity> page(List<TableEntity> entities, String nextToken) {
+    return new PagedResponseBase<Void, TableEntity>(
+        null, 200, new HttpHeaders(), entities, nextToken, null);
+  }
+
+  private static TableEntity entity(String rowKey) {
+    TableEntity entity = new TableEntity("2025-01-01", rowKey);
+    entity.addProperty(ErrorTableColumns.COLUMN_FIELD_BLOB, "blob-" + rowKey);
+    return entity;
+  }
+
+  private void blob(String blobName) {
+    blobs.put(
+        blobName,
+        BlobData.builder()
+            .fileName(blobName)
+            .content(new ByteArrayInputStream("flow".getBytes(StandardCharsets.UTF_8)))
+            .contentLength(4)
+            .eTag("etag-" + blobName)
+            .metadata(Map.of("elaborate", "true"))
+            .build());
+  }
+
+  private static BlobData blobNamed(String blobName) {
+    return argThat(blobData -> blobData != null && blobName.equals(blobData.getFileName()));
+  }
+
+  private static String error(List<RetryResult> results, String blobName) {
+    return results.stream()
+        .filter(r -> r.getBlobName().equals(blobName))
+        .map(RetryResult::getError)
+        .findFirst()
+        .orElseThrow();
+  }
+
+  private static RetryResult.Outcome outcome(List<RetryResult> results, String blobName) {
+    return results.stream()
+        .filter(r -> r.getBlobName().equals(blobName))
+        .map(RetryResult::getOutcome)
+        .findFirst()
+        .orElseThrow();
+  }
+}
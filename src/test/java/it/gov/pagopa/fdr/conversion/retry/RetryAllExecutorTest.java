@@ -0,0 +1,215 @@
+package it.gov.pagopa.fdr.conversion.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.azure.core.http.rest.PagedResponse;
+import com.azure.core.util.IterableStream;
+import com.azure.data.tables.models.TableEntity;
+import it.gov.pagopa.fdr.conversion.model.RetryAllReport;
+import it.gov.pagopa.fdr.conversion.model.RetryResult;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class RetryAllExecutorTest {
+
+  private static final int PARALLELISM = 4;
+
+  private final ExecutorService workers = Executors.newFixedThreadPool(PARALLELISM);
+  private final ExecutorService prefetcher = Executors.newSingleThreadExecutor();
+  private final RetryAllExecutor sut = new RetryAllExecutor(PARALLELISM, workers, prefetcher);
+
+  @AfterEach
+  void tearDown() {
+    workers.shutdownNow();
+    prefetcher.shutdownNow();
+  }
+
+  @Test
+  void executeBoundsConcurrencyAndAggregatesResults() {
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+
+    RetryAllReport report =
+        sut.execute(
+            pages(3, 20),
+            entity -> {
+              maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+              sleep(5);
+              running.decrementAndGet();
+              int index = Integer.parseInt(entity.getRowKey());
+              RetryResult.Outcome outcome =
+                  index % 10 == 0 ? RetryResult.Outcome.FAILED : RetryResult.Outcome.PROCESSED;
+              return RetryResult.builder().rowKey(entity.getRowKey()).outcome(outcome).build();
+            });
+
+    assertEquals(60, report.getTotal());
+    assertEquals(54, report.getProcessed());
+    assertEquals(6, report.getFailed());
+    assertEquals(0, report.getSkipped());
+    assertEquals(6, report.getFailures().size());
+    assertTrue(maxRunning.get() <= PARALLELISM, "max running " + maxRunning.get());
+    assertTrue(maxRunning.get() > 1, "retries never overlapped");
+  }
+
+  @Test
+  void executePrefetchesNextPage() {
+    CountDownLatch secondPageFetched = new CountDownLatch(1);
+    List<PagedResponse<TableEntity>> pages = new ArrayList<>(pages(2, 1));
+    Iterable<PagedResponse<TableEntity>> observed =
+        () ->
+            new Iterator<>() {
+              private final Iterator<PagedResponse<TableEntity>> delegate = pages.iterator();
+              private int served;
+
+              @Override
+              public boolean hasNext() {
+                return delegate.hasNext();
+              }
+
+              @Override
+              public PagedResponse<TableEntity> next() {
+                if (++served == 2) {
+                  secondPageFetched.countDown();
+                }
+                return delegate.next();
+              }
+            };
+
+    RetryAllReport report =
+        sut.execute(
+            observed,
+            entity -> {
+              // the first entity completes only once the second page has been fetched
+              boolean prefetched = await(secondPageFetched);
+              return RetryResult.builder()
+                  .outcome(prefetched ? RetryResult.Outcome.PROCESSED : RetryResult.Outcome.FAILED)
+                  .build();
+            });
+
+    assertEquals(2, report.getProcessed());
+  }
+
+  @Test
+  void executePropagatesPageFailure() {
+    Iterable<PagedResponse<TableEntity>> failing =
+        () ->
+            new Iterator<>() {
+              @Override
+              public boolean hasNext() {
+                throw new IllegalStateException("Table not reachable");
+              }
+
+              @Override
+              public PagedResponse<TableEntity> next() {
+                throw new UnsupportedOperationException();
+              }
+            };
+
+    IllegalStateException e =
+        assertThrows(
+            IllegalStateException.class,
+            () -> sut.execute(failing, entity -> RetryResult.builder().build()));
+    assertEquals("Table not reachable", e.getMessage());
+  }
+
+  @Test
+  void executeCheckpointsPagesInOrder() {
+    List<PagedResponse<TableEntity>> pages = pages(3, 10);
+    for (int p = 0; p < pages.size(); p++) {
+      String continuationToken = p < pages.size() - 1 ? "page-" + (p + 1) : null;
+      when(pages.get(p).getContinuationToken()).thenReturn(continuationToken);
+    }
+    List<String> checkpoints = new ArrayList<>();
+    List<Integer> sizes = new ArrayList<>();
+
+    sut.execute(
+        pages,
+        entity -> {
+          // later entities complete first, checkpoints must still follow the page order
+          sleep(30 - Integer.parseInt(entity.getRowKey()));
+          return RetryResult.builder().outcome(RetryResult.Outcome.PROCESSED).build();
+        },
+        (continuationToken, results) -> {
+          checkpoints.add(continuationToken);
+          sizes.add(results.size());
+        });
+
+    assertEquals(Arrays.asList("page-1", "page-2", null), checkpoints);
+    assertEquals(List.of(10, 10, 10), sizes);
+  }
+
+  @Test
+  void executeStopsOnCheckpointFailure() {
+    AtomicInteger retried = new AtomicInteger();
+    RetryAllExecutor sequential = new RetryAllExecutor(1, Runnable::run, Runnable::run);
+
+    IllegalStateException e =
+        assertThrows(
+            IllegalStateException.class,
+            () ->
+                sequential.execute(
+                    pages(3, 5),
+                    entity -> {
+                      retried.incrementAndGet();
+                      return RetryResult.builder().outcome(RetryResult.Outcome.PROCESSED).build();
+                    },
+                    (continuationToken, results) -> {
+                      throw new IllegalStateException("Lease lost");
+                    }));
+    assertEquals("Lease lost", e.getMessage());
+    assertEquals(5, retried.get());
+  }
+
+  @Test
+  void invalidParallelism() {
+    assertThrows(
+        IllegalArgumentException.class, () -> new RetryAllExecutor(0, workers, prefetcher));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<PagedResponse<TableEntity>> pages(int pages, int pageSize) {
+    List<PagedResponse<TableEntity>> result = new ArrayList<>();
+    for (int p = 0; p < pages; p++) {
+      int first = p * pageSize;
+      List<TableEntity> entities =
+          IntStream.range(first, first + pageSize)
+              .mapToObj(i -> new TableEntity("partitionKey", String.valueOf(i)))
+              .toList();
+      PagedResponse<TableEntity> page = mock(PagedResponse.class);
+      when(page.getElements()).thenReturn(IterableStream.of(entities));
+      result.add(page);
+    }
+    return result;
+  }
+
+  private static boolean await(CountDownLatch latch) {
+    try {
+      return latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package it.gov.pagopa.fdr.conversion.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.azure.core.http.rest.PagedIterable;
+import com.azure.core.http.rest.PagedResponse;
+import com.azure.core.util.IterableStream;
+import com.azure.data.tables.models.TableEntity;
+import it.gov.pagopa.fdr.conversion.model.RetryJob;
+import it.gov.pagopa.fdr.conversion.model.RetryResult;
+import it.gov.pagopa.fdr.conversion.util.StorageAccountUtil;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.MockedStatic;
+
+class RetryJobRunnerTest {
+
+  private static final String INVOCATION_ID = "invocation-1";
+  private static final Duration LEASE = Duration.ofMillis(300);
+
+  private final ScheduledExecutorService leaseRenewals =
+      Executors.newSingleThreadScheduledExecutor();
+  private final DeadLetterRetrier retrier = mock(DeadLetterRetrier.class);
+  private final RetryJobStore store = mock(RetryJobStore.class);
+
+  // static mocks are thread-local: the job and its retries run on the calling thread
+  private final RetryJobRunner sut =
+      new RetryJobRunner(
+          retrier,
+          new RetryAllExecutor(1, Runnable::run, Runnable::run),
+          store,
+          Runnable::run,
+          LEASE,
+          null,
+          leaseRenewals);
+
+  @AfterEach
+  void tearDown() {
+    leaseRenewals.shutdownNow();
+  }
+
+  @Test
+  void leaseIsRenewedWhileAPageIsRetried() {
+    when(store.save(any(RetryJob.class)))
+        .thenAnswer(invocation -> Optional.of(invocation.getArgument(0)));
+    when(retrier.retry(any(TableEntity.class), anyString())).thenAnswer(invocation -> slowRetry());
+
+    try (MockedStatic<StorageAccountUtil> storage = lastPage()) {
+      sut.run(newJob(), INVOCATION_ID);
+    }
+
+    ArgumentCaptor<RetryJob> saved = ArgumentCaptor.forClass(RetryJob.class);
+    // a checkpoint and the completion, the rest are renewals within the page
+    verify(store, atLeast(4)).save(saved.capture());
+    RetryJob completed = saved.getValue();
+    assertEquals(RetryJob.Status.COMPLETED, completed.getStatus());
+    assertEquals(1, completed.getSucceeded());
+    assertTrue(completed.isDrained());
+  }
+
+  @Test
+  void renewalsStopOnceTheLeaseIsLost() {
+    when(store.save(any(RetryJob.class))).thenReturn(Optional.empty());
+    when(retrier.retry(any(TableEntity.class), anyString())).thenAnswer(invocation -> slowRetry());
+
+    try (MockedStatic<StorageAccountUtil> storage = lastPage()) {
+      sut.run(newJob(), INVOCATION_ID);
+    }
+
+    // the renewal that found the job taken over and the checkpoint of the page
+    ArgumentCaptor<RetryJob> saved = ArgumentCaptor.forClass(RetryJob.class);
+    verify(store, times(2)).save(saved.capture());
+    assertTrue(
+        saved.getAllValues().stream().allMatch(j -> j.getStatus() == RetryJob.Status.RUNNING));
+  }
+
+  @Test
+  void drainedJobIsCompletedWithoutRetrying() {
+    when(store.save(any(RetryJob.class)))
+        .thenAnswer(invocation -> Optional.of(invocation.getArgument(0)));
+    RetryJob drained = newJob().toBuilder().processed(1000).succeeded(1000).drained(true).build();
+
+    try (MockedStatic<StorageAccountUtil> storage = mockStatic(StorageAccountUtil.class)) {
+      sut.run(drained, INVOCATION_ID);
+
+      storage.verify(() -> StorageAccountUtil.getTableEntities(any()), never());
+    }
+
+    ArgumentCaptor<RetryJob> saved = ArgumentCaptor.forClass(RetryJob.class);
+    verify(store).save(saved.capture());
+    assertEquals(RetryJob.Status.COMPLETED, saved.getValue().getStatus());
+    assertEquals(1000, saved.getValue().getProcessed());
+    verify(retrier, never()).retry(any(TableEntity.class), anyString());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static MockedStatic<StorageAccountUtil> lastPage() {
+    PagedResponse<TableEntity> page = mock(PagedResponse.class);
+    when(page.getElements()).thenReturn(IterableStream.of(List.of(new TableEntity("pk", "rk"))));
+    PagedIterable<TableEntity> entities = mock(PagedIterable.class);
+    when(entities.iterableByPage()).thenReturn(List.of(page));
+    MockedStatic<StorageAccountUtil> storage = mockStatic(StorageAccountUtil.class);
+    storage.when(() -> StorageAccountUtil.getTableEntities(null)).thenReturn(entities);
+    return storage;
+  }
+
+  // longer than the lease, as a page retried against a slow FdR1
+  private static RetryResult slowRetry() throws InterruptedException {
+    Thread.sleep(LEASE.toMillis() * 3);
+    return RetryResult.builder().rowKey("rk").outcome(RetryResult.Outcome.PROCESSED).build();
+  }
+
+  private static RetryJob newJob() {
+    return RetryJob.builder()
+        .jobId("job-1")
+        .status(RetryJob.Status.RUNNING)
+        .startedAt(Instant.now().toString())
+        .updatedAt(Instant.now().toString())
+        .build();
+  }
+}
@@ -0,0 +1,98 @@
+package it.gov.pagopa.fdr.conversion.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import it.gov.pagopa.fdr.conversion.model.BlobData;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class BlobContentCacheTest {
+
+  @Test
+  void cacheOnReadStoresFullyReadContent() throws IOException {
+    BlobContentCache cache = new BlobContentCache(1024, 512);
+
+    byte[] read = readAll(cache.cacheOnRead(blob("flow.json.zip", "etag-1", 100)));
+
+    assertEquals(100, read.length);
+    assertEquals("etag-1", cache.cachedETag("flow.json.zip").orElseThrow());
+    BlobData cached = cache.get("flow.json.zip", "etag-1").orElseThrow();
+    assertArrayEquals(read, readAll(cached));
+    assertEquals("2025-03-14T10:00:00", cached.getMetadata().get("insertedTimestamp"));
+    assertEquals(1, cache.getHits());
+    assertEquals(100, cache.getWeightBytes());
+  }
+
+  @Test
+  void getRejectsStaleETag() throws IOException {
+    BlobContentCache cache = new BlobContentCache(1024, 512);
+    readAll(cache.cacheOnRead(blob("flow.json.zip", "etag-1", 100)));
+
+    assertTrue(cache.get("flow.json.zip", "etag-2").isEmpty());
+    assertEquals(0, cache.getHits());
+  }
+
+  @Test
+  void evictsLeastRecentlyUsedByBytes() throws IOException {
+    BlobContentCache cache = new BlobContentCache(300, 300);
+    readAll(cache.cacheOnRead(blob("a", "etag-a", 100)));
+    readAll(cache.cacheOnRead(blob("b", "etag-b", 100)));
+    readAll(cache.cacheOnRead(blob("c", "etag-c", 100)));
+    cache.get("a", "etag-a");
+
+    readAll(cache.cacheOnRead(blob("d", "etag-d", 150)));
+
+    assertTrue(cache.cachedETag("a").isPresent());
+    assertFalse(cache.cachedETag("b").isPresent());
+    assertFalse(cache.cachedETag("c").isPresent());
+    assertTrue(cache.cachedETag("d").isPresent());
+    assertEquals(250, cache.getWeightBytes());
+    assertEquals(2, cache.getEvictions());
+  }
+
+  @Test
+  void skipsOversizedAndPartiallyReadBlobs() throws IOException {
+    BlobContentCache cache = new BlobContentCache(1024, 100);
+
+    readAll(cache.cacheOnRead(blob("huge", "etag-1", 101)));
+    try (BlobData partial = cache.cacheOnRead(blob("partial", "etag-2", 50))) {
+      partial.getContent().read(new byte[10]);
+    }
+
+    assertFalse(cache.cachedETag("huge").isPresent());
+    assertFalse(cache.cachedETag("partial").isPresent());
+    assertEquals(0, cache.getWeightBytes());
+  }
+
+  @Test
+  void invalidSizes() {
+    assertThrows(IllegalArgumentException.class, () -> new BlobContentCache(-1, 0));
+  }
+
+  private static BlobData blob(String fileName, String eTag, int size) {
+    byte[] content = new byte[size];
+    for (int i = 0; i < size; i++) {
+      content[i] = (byte) i;
+    }
+    return BlobData.builder()
+        .fileName(fileName)
+        .eTag(eTag)
+        .metadata(Map.of("insertedTimestamp", "2025-03-14T10:00:00"))
+        .contentLength(size)
+        .content(new ByteArrayInputStream(content))
+        .build();
+  }
+
+  private static byte[] readAll(BlobData blobData) throws IOException {
+    try (InputStream content = blobData.getContent()) {
+      return content.readAllBytes();
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package it.gov.pagopa.fdr.conversion.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.azure.core.http.HttpResponse;
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.models.TableEntityUpdateMode;
+import com.azure.data.tables.models.TableServiceException;
+import org.junit.jupiter.api.Test;
+
+class ConversionLedgerTest {
+
+  private static final String BLOB = "2025-03-14/flow.json.zip";
+  private static final String ETAG = "\"0x8DC1\"";
+
+  private final TableClient tableClient = mock(TableClient.class);
+  private final ConversionLedger sut = new ConversionLedger(() -> tableClient, 100);
+
+  @Test
+  void isConvertedReadsLedgerOnceThenCache() {
+    assertTrue(sut.isConverted(BLOB, ETAG));
+    assertTrue(sut.isConverted(BLOB, ETAG));
+
+    verify(tableClient, times(1))
+        .getEntityWithResponse(anyString(), eq("0x8DC1"), anyList(), any(), any());
+  }
+
+  @Test
+  void isConvertedFalseWhenMissing() {
+    TableServiceException error = tableError(404);
+    when(tableClient.getEntityWithResponse(anyString(), anyString(), anyList(), any(), any()))
+        .thenThrow(error);
+
+    assertFalse(sut.isConverted(BLOB, ETAG));
+  }
+
+  @Test
+  void isConvertedFalseWhenLedgerUnavailable() {
+    TableServiceException error = tableError(503);
+    when(tableClient.getEntityWithResponse(anyString(), anyString(), anyList(), any(), any()))
+        .thenThrow(error);
+
+    assertFalse(sut.isConverted(BLOB, ETAG));
+  }
+
+  @Test
+  void recordConvertedWritesLedgerAndCache() {
+    sut.recordConverted(BLOB, ETAG);
+
+    assertTrue(sut.isConverted(BLOB, ETAG));
+    verify(tableClient)
+        .upsertEntityWithResponse(
+            argThat(
+                e ->
+                    e.getRowKey().equals("0x8DC1")
+                        && e.getPartitionKey().matches("[0-9a-f]{64}")
+                        && BLOB.equals(e.getProperty("blob"))),
+            eq(TableEntityUpdateMode.REPLACE),
+            any(),
+            any());
+    verify(tableClient, never()).getEntityWithResponse(anyString(), anyString(), anyList(), any(), any());
+  }
+
+  @Test
+  void contentVersionIsStable() {
+    assertEquals(
+        ConversionLedger.contentVersion("test".getBytes()),
+        ConversionLedger.contentVersion("test".getBytes()));
+    assertTrue(ConversionLedger.contentVersion("test".getBytes()).startsWith("sha256-"));
+  }
+
+  private static TableServiceException tableError(int status) {
+    HttpResponse response = mock(HttpResponse.class);
+    when(response.getStatusCode()).thenReturn(status);
+    return new TableServiceException("error", response);
+  }
+}
@@ -0,0 +1,134 @@
+package it.gov.pagopa.fdr.conversion.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.azure.data.tables.TableClient;
+import com.azure.data.tables.models.TableEntity;
+import com.azure.data.tables.models.TableEntityUpdateMode;
+import com.azure.data.tables.models.TableTransactionAction;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class DeadLetterWriterTest {
+
+  private final TableClient tableClient = mock(TableClient.class);
+  private final List<List<TableTransactionAction>> transactions =
+      Collections.synchronizedList(new ArrayList<>());
+
+  @Test
+  void writeFlushesFullPartitions() throws Exception {
+    recordTransactions();
+    DeadLetterWriter writer = new DeadLetterWriter(() -> tableClient, 100, Duration.ofHours(1));
+
+    List<CompletableFuture<Void>> outcomes = new ArrayList<>();
+    for (int i = 0; i < 250; i++) {
+      outcomes.add(writer.write(entity("2025-03-14", "row-" + i)));
+    }
+    CompletableFuture.allOf(outcomes.subList(0, 200).toArray(CompletableFuture[]::new))
+        .get(5, TimeUnit.SECONDS);
+
+    assertEquals(2, transactions.size());
+    assertEquals(100, transactions.get(0).size());
+    assertTrue(outcomes.subList(200, 250).stream().noneMatch(CompletableFuture::isDone));
+
+    writer.flush();
+    assertEquals(List.of(100, 100, 50), transactions.stream().map(List::size).toList());
+  }
+
+  @Test
+  void writeFlushesAfterIntervalGroupedByPartition() throws Exception {
+    recordTransactions();
+    DeadLetterWriter writer = new DeadLetterWriter(() -> tableClient, 100, Duration.ofMillis(50));
+
+    CompletableFuture<Void> first = writer.write(entity("2025-03-13", "row-1"));
+    CompletableFuture<Void> second = writer.write(entity("2025-03-14", "row-2"));
+    CompletableFuture<Void> third = writer.write(entity("2025-03-14", "row-3"));
+    CompletableFuture.allOf(first, second, third).get(5, TimeUnit.SECONDS);
+
+    assertEquals(2, transactions.size());
+    assertTrue(
+        transactions.stream()
+            .allMatch(
+                t ->
+                    t.stream()
+                            .map(a -> a.getEntity().getPartitionKey())
+                            .distinct()
+                            .count()
+                        == 1));
+  }
+
+  @Test
+  void writeSplitsDuplicatedRows() {
+    recordTransactions();
+    DeadLetterWriter writer = new DeadLetterWriter(() -> tableClient, 100, Duration.ofHours(1));
+
+    writer.write(entity("2025-03-14", "row-1"));
+    writer.write(entity("2025-03-14", "row-1"));
+    writer.flush();
+
+    assertEquals(List.of(1, 1), transactions.stream().map(List::size).toList());
+  }
+
+  @Test
+  void writeReportsPerEntityOutcome() {
+    when(tableClient.submitTransaction(anyList())).thenThrow(new IllegalStateException("rejected"));
+    TableEntity bad = entity("2025-03-14", "bad");
+    doThrow(new IllegalArgumentException("Property value too large"))
+        .when(tableClient)
+        .upsertEntityWithResponse(eq(bad), eq(TableEntityUpdateMode.REPLACE), any(), any());
+    DeadLetterWriter writer = new DeadLetterWriter(() -> tableClient, 100, Duration.ofHours(1));
+
+    CompletableFuture<Void> good = writer.write(entity("2025-03-14", "good"));
+    CompletableFuture<Void> failed = writer.write(bad);
+    writer.flush();
+
+    assertTrue(good.isDone() && !good.isCompletedExceptionally());
+    ExecutionException e = assertThrows(ExecutionException.class, failed::get);
+    assertEquals("Property value too large", e.getCause().getMessage());
+    verify(tableClient, times(2))
+        .upsertEntityWithResponse(any(), eq(TableEntityUpdateMode.REPLACE), any(), any());
+  }
+
+  @Test
+  void flushEmptyBuffer() {
+    DeadLetterWriter writer = new DeadLetterWriter(() -> tableClient, 100, Duration.ofHours(1));
+
+    writer.flush();
+
+    verify(tableClient, never()).submitTransaction(anyList());
+  }
+
+  @Test
+  void invalidBatchSize() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new DeadLetterWriter(() -> tableClient, 101, Duration.ofHours(1)));
+  }
+
+  private void recordTransactions() {
+    when(tableClient.submitTransaction(argThat(actions -> transactions.add(List.copyOf(actions)))))
+        .thenReturn(null);
+  }
+
+  private static TableEntity entity(String partitionKey, String rowKey) {
+    return new TableEntity(partitionKey, rowKey).addProperty("blob", rowKey + ".json.zip");
+  }
+}
@@ -0,0 +1,85 @@
+package it.gov.pagopa.fdr.conversion.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class LazyTest {
+
+    @Test
+    void concurrentFirstAccessesCreateOnce() throws Exception {
+        int parallelism = 16;
+        AtomicInteger created = new AtomicInteger();
+        Lazy<Object> sut = new Lazy<>(() -> {
+            created.incrementAndGet();
+            sleep(50);
+            return new Object();
+        });
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService threads = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<Object>> values = new ArrayList<>();
+            for (int i = 0; i < parallelism; i++) {
+                values.add(threads.submit(() -> {
+                    start.await();
+                    return sut.get();
+                }));
+            }
+            start.countDown();
+
+            Object first = values.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<Object> value : values) {
+                assertSame(first, value.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    void failedCreationIsRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+        Lazy<String> sut = new Lazy<>(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("storage not reachable");
+            }
+            return "client";
+        });
+
+        assertThrows(IllegalStateException.class, sut::get);
+        assertEquals("client", sut.get());
+        assertEquals("client", sut.get());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void setReplacesTheValue() {
+        AtomicInteger created = new AtomicInteger();
+        Lazy<Integer> sut = new Lazy<>(created::incrementAndGet);
+
+        sut.set(42);
+        assertEquals(42, sut.get());
+        sut.set(null);
+        assertEquals(1, sut.get());
+        assertEquals(1, created.get());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}